@@ -20,11 +20,6 @@ set -e
 
 JFG_DIR=$(dirname "$0")
 
-if [ ! -x "$FLAMEGRAPH_DIR/flamegraph.pl" ]; then
-  (>&2 echo "Please clone https://github.com/brendangregg/FlameGraph and set FLAMEGRAPH_DIR to the root directory")
-  exit 1
-fi
-
 function help {
     echo ""
     echo "Usage: "
@@ -57,5 +52,5 @@ fi
 
 jfr_filename=$(basename $jfr_file)
 
-# Use folded output type
-${JFG_DIR}/jfr-flame-graph -ot folded $* | $FLAMEGRAPH_DIR/flamegraph.pl --title "Flame Graph: $jfr_filename"
\ No newline at end of file
+# Use svg output type
+${JFG_DIR}/jfr-flame-graph -ot svg -ti "Flame Graph: $jfr_filename" $*
\ No newline at end of file
@@ -95,29 +95,21 @@ fi
 
 jfr_filename=$(basename $jfr_file)
 
-details=$(${JFG_DIR}/jfr-flame-graph -ot folded $decompress -f $jfr_file -j -t)
-
-echo "$details"
-
-startTimestamp=$(echo $details | sed -r 's/.*Min Start Event\s*: ([0-9]*).*/\1/')
-endTimestamp=$(echo $details | sed -r 's/.*Max End Event\s*: ([0-9]*).*/\1/')
-
 interval=$(($minutes * 60))
 
-i=$startTimestamp
-end=$endTimestamp
-
 dateformat="%Y-%m-%d %I:%M:%S %p"
 
-set +e
+echo Generating folded output for each interval of $minutes minutes
+
+# Read the JFR file once and write the folded output of each interval to the output directory.
+# Each line of the output has the start, end and the folded output file of an interval.
+intervals=$(${JFG_DIR}/jfr-flame-graph -ot folded $decompress -f $jfr_file -in $interval -o $output_dir $ignore_lines)
 
-while [ $i -lt $end ]; do
-    s=$i
-    i=$(($i+$interval))
-    e=$i
+set +e
 
-    if [ $e -gt $end ]; then
-        e=$end
+while read -r s e folded_file; do
+    if [[ -z $folded_file ]]; then
+        continue
     fi
 
     title="Flame Graph for $jfr_filename from $(date --date @$s +"$dateformat") to $(date --date @$e +"$dateformat")"
@@ -126,28 +118,23 @@ while [ $i -lt $end ]; do
 
     output_file=flamegraph-$s-$e.svg
 
-    # Use folded output type
-    flamegraph_output_command="${JFG_DIR}/jfr-flame-graph"
-    flamegraph_output_args=(-ot folded $decompress -f $jfr_file -st $s -et $e $ignore_lines)
     framegraph_generate_command="$FLAMEGRAPH_DIR/flamegraph.pl"
     framegraph_generate_args=(--title "$title" --width 1600)
 
-    if [[ "$save_folded_output" = true ]]; then
-        $($flamegraph_output_command "${flamegraph_output_args[@]}" > $output_dir/$output_file.folded)
-        cat $output_dir/$output_file.folded | $framegraph_generate_command "${framegraph_generate_args[@]}" > $output_dir/$output_file
-    else
-        $flamegraph_output_command "${flamegraph_output_args[@]}" | $framegraph_generate_command "${framegraph_generate_args[@]}" > $output_dir/$output_file
-    fi
+    $framegraph_generate_command "${framegraph_generate_args[@]}" < $folded_file > $output_dir/$output_file
 
-    flamegraph_status=("${PIPESTATUS[@]}")
-    if [ ${flamegraph_status[1]} -eq 0 ]
+    if [ $? -eq 0 ]
     then
         # Create array
         output_files+=($output_file)
     else
         rm $output_dir/$output_file
     fi
-done
+
+    if [[ "$save_folded_output" != true ]]; then
+        rm $folded_file
+    fi
+done <<< "$intervals"
 
 #Generate HTML
 index_file=$output_dir/index.html
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.List;
+
+/**
+ * Benchmarks for formatting the method names, which is done once for each method missing in the frame name cache.
+ */
+@State(Scope.Thread)
+public class FrameNameBenchmark {
+
+    @Param({"false", "true"})
+    public boolean showReturnValue;
+
+    private FrameNameCache frameNameCache;
+    private int methodIndex;
+    private int descriptorIndex;
+
+    @Setup
+    public void setUp() {
+        frameNameCache = new FrameNameCache(new FrameTable(), false, false, false, showReturnValue);
+    }
+
+    @Benchmark
+    public String formatMethod(RecordingState recordingState) {
+        int index = methodIndex;
+        methodIndex = (index + 1) % recordingState.methods.size();
+        return frameNameCache.formatMethod(recordingState.methods.get(index));
+    }
+
+    @Benchmark
+    public List<String> decodeDescriptors(RecordingState recordingState) {
+        int index = descriptorIndex;
+        descriptorIndex = (index + 1) % recordingState.descriptors.size();
+        String descriptor = recordingState.descriptors.get(index);
+        return FrameNameCache.decodeDescriptors(descriptor.substring(1, descriptor.lastIndexOf(')')), "");
+    }
+}
@@ -0,0 +1,125 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.Writer;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Benchmarks for the output writers.
+ */
+@State(Scope.Thread)
+public class OutputWriterBenchmark {
+
+    private static final Instant TIMESTAMP = Instant.ofEpochSecond(1_500_000_000L);
+
+    private FrameStack frameStack;
+    private FoldedOutputWriter foldedOutputWriter;
+    private JsonOutputWriter jsonOutputWriter;
+    private SvgOutputWriter svgOutputWriter;
+    private int index;
+
+    /**
+     * Discards the output.
+     */
+    private static final class NullWriter extends Writer {
+        @Override
+        public void write(char[] cbuf, int off, int len) {
+        }
+
+        @Override
+        public void write(String str, int off, int len) {
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+
+    @Setup(Level.Iteration)
+    public void setUp(RecordingState recordingState) {
+        frameStack = new FrameStack(recordingState.frameTable);
+        foldedOutputWriter = new FoldedOutputWriter();
+        foldedOutputWriter.initialize(new OutputWriterParameters());
+        jsonOutputWriter = new JsonOutputWriter();
+        jsonOutputWriter.initialize(new OutputWriterParameters());
+        svgOutputWriter = new SvgOutputWriter();
+        svgOutputWriter.initialize(new OutputWriterParameters());
+        for (int i = 0; i < recordingState.stacks.length; i++) {
+            frameStack.set(recordingState.stacks[i]);
+            jsonOutputWriter.processEvent(TIMESTAMP, TIMESTAMP, Duration.ZERO, frameStack, recordingState.values[i]);
+            svgOutputWriter.processEvent(TIMESTAMP, TIMESTAMP, Duration.ZERO, frameStack, recordingState.values[i]);
+        }
+        index = 0;
+    }
+
+    /**
+     * Add the stack of an event to the folded output.
+     */
+    @Benchmark
+    public void foldedProcessEvent(RecordingState recordingState) {
+        int i = index;
+        index = (i + 1) % recordingState.stacks.length;
+        frameStack.set(recordingState.stacks[i]);
+        foldedOutputWriter.processEvent(TIMESTAMP, TIMESTAMP, Duration.ZERO, frameStack, recordingState.values[i]);
+    }
+
+    /**
+     * Add the stack of an event to the JSON output.
+     */
+    @Benchmark
+    public void jsonProcessEvent(RecordingState recordingState) {
+        int i = index;
+        index = (i + 1) % recordingState.stacks.length;
+        frameStack.set(recordingState.stacks[i]);
+        jsonOutputWriter.processEvent(TIMESTAMP, TIMESTAMP, Duration.ZERO, frameStack, recordingState.values[i]);
+    }
+
+    /**
+     * Serialize the JSON output of all events.
+     */
+    @Benchmark
+    public void jsonWriteOutput(RecordingState recordingState, EventCounter eventCounter) throws IOException {
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new NullWriter())) {
+            jsonOutputWriter.writeOutput(bufferedWriter);
+        }
+        eventCounter.events += recordingState.stacks.length;
+    }
+
+    /**
+     * Lay out and write the SVG output of all events.
+     */
+    @Benchmark
+    public void svgWriteOutput(RecordingState recordingState, EventCounter eventCounter) throws IOException {
+        try (BufferedWriter bufferedWriter = new BufferedWriter(new NullWriter())) {
+            svgOutputWriter.writeOutput(bufferedWriter);
+        }
+        eventCounter.events += recordingState.stacks.length;
+    }
+}
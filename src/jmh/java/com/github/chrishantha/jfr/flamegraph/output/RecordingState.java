@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * The synthetic recording and the data read from it, shared by the benchmarks.
+ * <p>
+ * The recording is created by the {@code generateSyntheticRecording} task and its path is passed in the
+ * {@value #RECORDING_PROPERTY} system property.
+ */
+@State(Scope.Benchmark)
+public class RecordingState {
+
+    /**
+     * System property with the path of the synthetic recording
+     */
+    public static final String RECORDING_PROPERTY = "jfr.flamegraph.benchmark.recording";
+
+    Path recordingPath;
+    List<RecordedStackTrace> stackTraces;
+    List<RecordedMethod> methods;
+    List<String> descriptors;
+    FrameTable frameTable;
+    int[][] stacks;
+    long[] values;
+
+    @Setup(Level.Trial)
+    public void setUp() throws IOException {
+        String recording = System.getProperty(RECORDING_PROPERTY);
+        if (recording == null) {
+            throw new IllegalStateException("The " + RECORDING_PROPERTY + " system property is not set");
+        }
+        recordingPath = Paths.get(recording);
+        stackTraces = new ArrayList<>();
+        List<Long> eventValues = new ArrayList<>();
+        try (RecordingFile recordingFile = new RecordingFile(recordingPath)) {
+            while (recordingFile.hasMoreEvents()) {
+                RecordedEvent event = recordingFile.readEvent();
+                if (SyntheticRecording.EVENT_NAME.equals(event.getEventType().getName())
+                        && event.getStackTrace() != null) {
+                    stackTraces.add(event.getStackTrace());
+                    eventValues.add(event.getLong("value"));
+                }
+            }
+        }
+        if (stackTraces.isEmpty()) {
+            throw new IllegalStateException("No synthetic events in " + recordingPath);
+        }
+
+        Map<RecordedMethod, Boolean> uniqueMethods = new IdentityHashMap<>();
+        methods = new ArrayList<>();
+        descriptors = new ArrayList<>();
+        for (RecordedStackTrace stackTrace : stackTraces) {
+            for (RecordedFrame frame : stackTrace.getFrames()) {
+                RecordedMethod method = frame.getMethod();
+                if (method != null && uniqueMethods.put(method, Boolean.TRUE) == null) {
+                    methods.add(method);
+                    descriptors.add(method.getDescriptor().replace("/", "."));
+                }
+            }
+        }
+
+        frameTable = new FrameTable();
+        FrameNameCache frameNameCache = new FrameNameCache(frameTable, false, false, false, false);
+        FrameStack frameStack = new FrameStack(frameTable);
+        stacks = new int[stackTraces.size()][];
+        values = new long[stackTraces.size()];
+        for (int i = 0; i < stacks.length; i++) {
+            JFRToFlameGraphWriter.fillStack(stackTraces.get(i), frameNameCache, frameStack);
+            stacks[i] = frameStack.toFrameIds();
+            values[i] = eventValues.get(i);
+        }
+    }
+
+    /**
+     * @return The number of events with a stack trace
+     */
+    int getEventCount() {
+        return stackTraces.size();
+    }
+}
@@ -0,0 +1,80 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordingFile;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.io.IOException;
+
+/**
+ * Benchmarks for reading the stack traces of the events.
+ */
+@State(Scope.Thread)
+public class StackBenchmark {
+
+    private FrameNameCache frameNameCache;
+    private FrameStack frameStack;
+    private int index;
+
+    @Setup(Level.Iteration)
+    public void setUp(RecordingState recordingState) {
+        FrameTable frameTable = new FrameTable();
+        frameNameCache = new FrameNameCache(frameTable, false, false, false, false);
+        frameStack = new FrameStack(frameTable);
+        index = 0;
+    }
+
+    /**
+     * Parse the recording and fill the stack of each event, as done for each chunk in a conversion.
+     */
+    @Benchmark
+    public int parseRecording(RecordingState recordingState, EventCounter eventCounter) throws IOException {
+        FrameTable frameTable = new FrameTable();
+        FrameNameCache frameNameCache = new FrameNameCache(frameTable, false, false, false, false);
+        FrameStack frameStack = new FrameStack(frameTable);
+        int frames = 0;
+        try (RecordingFile recordingFile = new RecordingFile(recordingState.recordingPath)) {
+            while (recordingFile.hasMoreEvents()) {
+                RecordedEvent event = recordingFile.readEvent();
+                RecordedStackTrace stackTrace = event.getStackTrace();
+                if (stackTrace != null) {
+                    JFRToFlameGraphWriter.fillStack(stackTrace, frameNameCache, frameStack);
+                    frames += frameStack.getDepth();
+                    eventCounter.events++;
+                }
+            }
+        }
+        return frames;
+    }
+
+    /**
+     * Fill the stack of an event, which is already parsed, with a warm frame name cache.
+     */
+    @Benchmark
+    public int fillStack(RecordingState recordingState) {
+        RecordedStackTrace stackTrace = recordingState.stackTraces.get(index);
+        index = (index + 1) % recordingState.getEventCount();
+        JFRToFlameGraphWriter.fillStack(stackTrace, frameNameCache, frameStack);
+        return frameStack.getDepth();
+    }
+}
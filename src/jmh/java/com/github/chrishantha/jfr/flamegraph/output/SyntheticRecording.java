@@ -0,0 +1,124 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Recording;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Random;
+
+/**
+ * Generate a JFR recording with synthetic stack trace events for the benchmarks.
+ * <p>
+ * Each event is committed from a pseudo random call path through methods with different signatures, so that the
+ * recording has deep and varied stack traces. The same seed always creates the same call paths.
+ */
+public final class SyntheticRecording {
+
+    /**
+     * Name of the synthetic event
+     */
+    public static final String EVENT_NAME = "com.github.chrishantha.jfr.flamegraph.SyntheticSample";
+
+    private static final int DEFAULT_EVENT_COUNT = 100_000;
+
+    private static final int MAX_DEPTH = 48;
+
+    @Name(EVENT_NAME)
+    @Label("Synthetic Sample")
+    static final class SyntheticSample extends Event {
+        @Label("Value")
+        long value;
+    }
+
+    private final Random random = new Random(42);
+
+    private SyntheticRecording() {
+    }
+
+    /**
+     * @param args The recording file and optionally the number of events
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: SyntheticRecording <recording file> [event count]");
+            System.exit(1);
+        }
+        Path path = Paths.get(args[0]);
+        int eventCount = args.length > 1 ? Integer.parseInt(args[1]) : DEFAULT_EVENT_COUNT;
+        Path parent = path.toAbsolutePath().getParent();
+        if (parent != null) {
+            Files.createDirectories(parent);
+        }
+        new SyntheticRecording().record(path, eventCount);
+    }
+
+    private void record(Path path, int eventCount) throws IOException {
+        try (Recording recording = new Recording()) {
+            recording.enable(SyntheticSample.class).withStackTrace();
+            recording.start();
+            for (int i = 0; i < eventCount; i++) {
+                dispatch(random.nextInt(MAX_DEPTH) + 1);
+            }
+            recording.stop();
+            recording.dump(path);
+        }
+    }
+
+    private void dispatch(int depth) {
+        if (depth == 0) {
+            SyntheticSample sample = new SyntheticSample();
+            sample.value = random.nextInt(1024);
+            sample.commit();
+            return;
+        }
+        switch (random.nextInt(4)) {
+            case 0:
+                withPrimitives(depth - 1, depth, 1L);
+                break;
+            case 1:
+                withObjects(depth - 1, "frame", null);
+                break;
+            case 2:
+                withArrays(depth - 1, null, null);
+                break;
+            default:
+                dispatch(depth - 1);
+                break;
+        }
+    }
+
+    private int withPrimitives(int depth, int i, long l) {
+        dispatch(depth);
+        return i;
+    }
+
+    private String withObjects(int depth, String s, Object o) {
+        dispatch(depth);
+        return s;
+    }
+
+    private int[][] withArrays(int depth, int[][] values, String[] names) {
+        dispatch(depth);
+        return values;
+    }
+}
@@ -0,0 +1,75 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * Adds a frame to the bottom of each stack before passing the event to another output writer.
+ */
+final class BottomFrameOutputWriter implements FlameGraphOutputWriter {
+
+    private final FlameGraphOutputWriter flameGraphOutputWriter;
+    private final int bottomFrameId;
+    private FrameStack bottomFrameStack;
+
+    BottomFrameOutputWriter(FlameGraphOutputWriter flameGraphOutputWriter, int bottomFrameId) {
+        this.flameGraphOutputWriter = flameGraphOutputWriter;
+        this.bottomFrameId = bottomFrameId;
+    }
+
+    /**
+     * @param bottomFrameId The frame ID to add, or -1 to return the output writers
+     */
+    static FlameGraphOutputWriter[] addBottomFrame(FlameGraphOutputWriter[] flameGraphOutputWriters,
+                                                   int bottomFrameId) {
+        if (bottomFrameId < 0) {
+            return flameGraphOutputWriters;
+        }
+        FlameGraphOutputWriter[] bottomFrameWriters = new FlameGraphOutputWriter[flameGraphOutputWriters.length];
+        for (int i = 0; i < bottomFrameWriters.length; i++) {
+            bottomFrameWriters[i] = new BottomFrameOutputWriter(flameGraphOutputWriters[i], bottomFrameId);
+        }
+        return bottomFrameWriters;
+    }
+
+    @Override
+    public void initialize(OutputWriterParameters parameters) {
+        flameGraphOutputWriter.initialize(parameters);
+    }
+
+    @Override
+    public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, FrameStack stack,
+                             long value) {
+        if (bottomFrameStack == null) {
+            bottomFrameStack = new FrameStack(stack.getFrameTable());
+        }
+        bottomFrameStack.clear();
+        bottomFrameStack.push(bottomFrameId);
+        for (int i = 0; i < stack.getDepth(); i++) {
+            bottomFrameStack.push(stack.getFrameId(i));
+        }
+        flameGraphOutputWriter.processEvent(startTimestamp, endTimestamp, duration, bottomFrameStack, value);
+    }
+
+    @Override
+    public void writeOutput(BufferedWriter bufferedWriter) throws IOException {
+        flameGraphOutputWriter.writeOutput(bufferedWriter);
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The time range of each chunk in a JFR file, read from the chunk headers.
+ * <p>
+ * The index is used to select the chunks that overlap a time range, so that other chunks are not parsed. Events are
+ * written to the chunk in which they end, so an event with a duration that starts in the time range can be in any
+ * later chunk. When the selected event types have a duration, the chunks after the time range are selected too.
+ * <p>
+ * The index can be cached in a sidecar file next to the JFR file. The sidecar file is used only when the size and the
+ * modification time of the JFR file have not changed.
+ */
+public final class ChunkIndex {
+
+    /**
+     * Suffix of the sidecar file
+     */
+    public static final String SIDECAR_SUFFIX = ".idx";
+
+    private static final int SIDECAR_MAGIC = 0x4a464749; // "JFGI"
+    private static final int SIDECAR_VERSION = 1;
+
+    private final List<JFRChunk> chunks;
+
+    ChunkIndex(List<JFRChunk> chunks) {
+        this.chunks = Collections.unmodifiableList(chunks);
+    }
+
+    /**
+     * Read the chunk headers of a JFR file.
+     *
+     * @param jfrPath    The JFR file
+     * @param useSidecar Whether to read the index from the sidecar file, and write the sidecar file if it does not
+     *                   exist or it is out of date
+     * @return The chunk index
+     * @throws IOException If the JFR file cannot be read
+     */
+    public static ChunkIndex load(Path jfrPath, boolean useSidecar) throws IOException {
+        if (!useSidecar) {
+            return new ChunkIndex(JFRChunk.readChunks(jfrPath));
+        }
+        Path sidecarPath = jfrPath.resolveSibling(jfrPath.getFileName() + SIDECAR_SUFFIX);
+        long fileSize = Files.size(jfrPath);
+        long lastModified = Files.getLastModifiedTime(jfrPath).toMillis();
+        List<JFRChunk> chunks = readSidecar(sidecarPath, fileSize, lastModified);
+        if (chunks == null) {
+            chunks = JFRChunk.readChunks(jfrPath);
+            try {
+                writeSidecar(sidecarPath, fileSize, lastModified, chunks);
+            } catch (IOException e) {
+                System.err.println("Could not write the chunk index to " + sidecarPath + ": " + e.getMessage());
+            }
+        }
+        return new ChunkIndex(chunks);
+    }
+
+    /**
+     * @return All chunks in the order of the file
+     */
+    public List<JFRChunk> getChunks() {
+        return chunks;
+    }
+
+    /**
+     * Get the chunks overlapping a time range.
+     *
+     * @param startNanos The start of the time range in nanoseconds since the epoch
+     * @param endNanos   The end of the time range in nanoseconds since the epoch
+     * @return The chunks in the order of the file
+     */
+    public List<JFRChunk> getChunks(long startNanos, long endNanos) {
+        List<JFRChunk> selectedChunks = new ArrayList<>();
+        for (JFRChunk chunk : chunks) {
+            if (chunk.overlaps(startNanos, endNanos)) {
+                selectedChunks.add(chunk);
+            }
+        }
+        return selectedChunks;
+    }
+
+    /**
+     * Get the chunks which may have events of the given types overlapping a time range.
+     *
+     * @param startNanos The start of the time range in nanoseconds since the epoch
+     * @param endNanos   The end of the time range in nanoseconds since the epoch
+     * @param eventTypes The selected event types
+     * @return The chunks in the order of the file
+     */
+    public List<JFRChunk> getChunks(long startNanos, long endNanos, List<EventType> eventTypes) {
+        return getChunks(startNanos, getSelectionEndNanos(endNanos, eventTypes));
+    }
+
+    /**
+     * Get the end of the time range of the chunks to select. An event with a duration is written to the chunk in which
+     * it ends, which can be any chunk after the time range.
+     *
+     * @param endNanos   The end of the time range in nanoseconds since the epoch
+     * @param eventTypes The selected event types
+     * @return The end of the time range, or {@link Long#MAX_VALUE} if an event type has a duration
+     */
+    static long getSelectionEndNanos(long endNanos, List<EventType> eventTypes) {
+        for (EventType eventType : eventTypes) {
+            if (eventType.hasDuration()) {
+                return Long.MAX_VALUE;
+            }
+        }
+        return endNanos;
+    }
+
+    /**
+     * @return The start of the first chunk in nanoseconds since the epoch or zero if there are no chunks
+     */
+    public long getStartNanos() {
+        long startNanos = Long.MAX_VALUE;
+        for (JFRChunk chunk : chunks) {
+            startNanos = Math.min(startNanos, chunk.getStartNanos());
+        }
+        return chunks.isEmpty() ? 0 : startNanos;
+    }
+
+    /**
+     * @return The end of the last chunk in nanoseconds since the epoch or zero if there are no chunks
+     */
+    public long getEndNanos() {
+        long endNanos = Long.MIN_VALUE;
+        for (JFRChunk chunk : chunks) {
+            endNanos = Math.max(endNanos, chunk.getEndNanos());
+        }
+        return chunks.isEmpty() ? 0 : endNanos;
+    }
+
+    private static List<JFRChunk> readSidecar(Path sidecarPath, long fileSize, long lastModified) {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(sidecarPath)))) {
+            if (in.readInt() != SIDECAR_MAGIC || in.readInt() != SIDECAR_VERSION || in.readLong() != fileSize
+                    || in.readLong() != lastModified) {
+                return null;
+            }
+            int count = in.readInt();
+            List<JFRChunk> chunks = new ArrayList<>(count);
+            for (int i = 0; i < count; i++) {
+                chunks.add(new JFRChunk(i, in.readLong(), in.readLong(), in.readLong(), in.readLong()));
+            }
+            return chunks;
+        } catch (NoSuchFileException e) {
+            return null;
+        } catch (IOException e) {
+            System.err.println("Could not read the chunk index from " + sidecarPath + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    private static void writeSidecar(Path sidecarPath, long fileSize, long lastModified, List<JFRChunk> chunks)
+            throws IOException {
+        Path tempPath = Files.createTempFile(sidecarPath.toAbsolutePath().getParent(), "jfr_index_", ".tmp");
+        try {
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.writeInt(SIDECAR_MAGIC);
+                out.writeInt(SIDECAR_VERSION);
+                out.writeLong(fileSize);
+                out.writeLong(lastModified);
+                out.writeInt(chunks.size());
+                for (JFRChunk chunk : chunks) {
+                    out.writeLong(chunk.getOffset());
+                    out.writeLong(chunk.getSize());
+                    out.writeLong(chunk.getStartNanos());
+                    out.writeLong(chunk.getDurationNanos());
+                }
+            }
+            Files.move(tempPath, sidecarPath, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+        }
+    }
+}
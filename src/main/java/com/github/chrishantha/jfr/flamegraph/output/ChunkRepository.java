@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Watch a JFR repository directory for completed chunk files.
+ * <p>
+ * A recording with a disk repository writes each chunk to a new file in the repository. A file is completed when the
+ * header of each chunk in it has a duration and the finished state, the sizes of the chunks add up to the size of the
+ * file, and the file has not changed for the quiet period or a newer JFR file has been created. Each completed file is
+ * returned once, unless it is given back with {@link #retry(Path)}.
+ */
+public final class ChunkRepository implements Closeable {
+
+    private static final String JFR_FILE_SUFFIX = ".jfr";
+
+    /**
+     * The offset of the file state in a chunk header. The JVM sets the state to zero after it writes the chunk.
+     */
+    static final int STATE_OFFSET = 64;
+
+    private final Path directory;
+    private final long quietNanos;
+    private final WatchService watchService;
+
+    private final Set<Path> completedFiles = new HashSet<>();
+
+    /**
+     * The size, the modification time and the time of the first scan with that size of each file being written
+     */
+    private final Map<Path, long[]> pendingFiles = new HashMap<>();
+
+    /**
+     * @param directory  The repository directory
+     * @param quietNanos The time in nanoseconds a file must not change before it is completed, if it is the newest
+     *                   file
+     * @throws IOException If the directory cannot be watched
+     */
+    public ChunkRepository(Path directory, long quietNanos) throws IOException {
+        this.directory = directory;
+        this.quietNanos = quietNanos;
+        this.watchService = directory.getFileSystem().newWatchService();
+        directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+    }
+
+    /**
+     * Wait until a file in the directory changes or the timeout elapses, and find the completed files.
+     *
+     * @param timeoutNanos The maximum time to wait in nanoseconds
+     * @return The files completed since the last call in the order they were written
+     * @throws IOException          If the directory cannot be read
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public List<Path> poll(long timeoutNanos) throws IOException, InterruptedException {
+        WatchKey watchKey = watchService.poll(Math.max(0, timeoutNanos), TimeUnit.NANOSECONDS);
+        if (watchKey != null) {
+            // The directory is scanned again, so the events themselves are not needed
+            watchKey.pollEvents();
+            watchKey.reset();
+        }
+        return findCompletedFiles();
+    }
+
+    /**
+     * @return The files completed since the last call in the order they were written
+     * @throws IOException If the directory cannot be read
+     */
+    public List<Path> findCompletedFiles() throws IOException {
+        List<Path> files = new ArrayList<>();
+        Map<Path, BasicFileAttributes> attributes = new HashMap<>();
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + JFR_FILE_SUFFIX)) {
+            for (Path path : paths) {
+                if (!completedFiles.contains(path)) {
+                    BasicFileAttributes fileAttributes = Files.readAttributes(path, BasicFileAttributes.class);
+                    if (fileAttributes.isRegularFile()) {
+                        files.add(path);
+                        attributes.put(path, fileAttributes);
+                    }
+                }
+            }
+        }
+        files.sort(Comparator.comparing((Path path) -> attributes.get(path).lastModifiedTime())
+                .thenComparing(Path::getFileName));
+
+        List<Path> newCompletedFiles = new ArrayList<>();
+        long now = System.nanoTime();
+        for (int i = 0; i < files.size(); i++) {
+            Path path = files.get(i);
+            BasicFileAttributes fileAttributes = attributes.get(path);
+            long size = fileAttributes.size();
+            long lastModified = fileAttributes.lastModifiedTime().toMillis();
+            long[] pending = pendingFiles.get(path);
+            if (pending == null || pending[0] != size || pending[1] != lastModified) {
+                pending = new long[]{size, lastModified, now};
+                pendingFiles.put(path, pending);
+            }
+            boolean newest = i == files.size() - 1;
+            if ((!newest || now - pending[2] >= quietNanos) && isFinished(path)) {
+                pendingFiles.remove(path);
+                completedFiles.add(path);
+                newCompletedFiles.add(path);
+            }
+        }
+        return newCompletedFiles;
+    }
+
+    /**
+     * Find the completed file again in the next poll, such as a file which could not be parsed.
+     *
+     * @param path A file returned by a poll
+     */
+    public void retry(Path path) {
+        completedFiles.remove(path);
+    }
+
+    /**
+     * Check whether the JVM has finished writing each chunk in a file. The duration of a chunk is written before the
+     * chunk is complete, so the state and the size of each chunk are checked as well.
+     *
+     * @param path The JFR file
+     * @return {@code true} if each chunk has a duration and the finished state, and the sizes of the chunks add up to
+     * the size of the file
+     */
+    static boolean isFinished(Path path) {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long offset = 0;
+            ByteBuffer header = ByteBuffer.allocate(STATE_OFFSET + 1);
+            while (offset < fileSize) {
+                header.clear();
+                while (header.hasRemaining()) {
+                    if (channel.read(header, offset + header.position()) < 0) {
+                        // The header is still being written
+                        return false;
+                    }
+                }
+                long size = header.getLong(8);
+                if (header.getInt(0) != JFRChunk.MAGIC || size <= 0 || offset + size > fileSize
+                        || header.getLong(40) <= 0 || header.get(STATE_OFFSET) != 0) {
+                    return false;
+                }
+                offset += size;
+            }
+            return fileSize > 0;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        watchService.close();
+    }
+}
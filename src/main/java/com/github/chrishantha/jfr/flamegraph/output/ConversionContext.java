@@ -0,0 +1,104 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.consumer.RecordedEvent;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * The conversion of the events with the options given in the command line. The modes with their own classes use it to
+ * parse the events and to write the output.
+ */
+interface ConversionContext {
+
+    /**
+     * Convert the events of a JFR file.
+     *
+     * @param chunkThreads The number of threads to parse the chunks in parallel
+     * @return The output writers created by the factory
+     */
+    FlameGraphOutputWriter[] convertFile(Path jfrPath, List<EventType> eventTypes, FrameTable frameTable,
+                                         int chunkThreads, OutputWriterFactory outputWriterFactory) throws Exception;
+
+    /**
+     * Aggregate the events in a chunk file. The file is deleted after it is read.
+     *
+     * @return The aggregate of each event type
+     */
+    StackAggregate[] aggregateChunk(Path chunkPath, List<EventType> eventTypes, FrameTable frameTable)
+            throws IOException;
+
+    /**
+     * @return Whether the JFR file is decompressed while it is read
+     */
+    boolean isCompressed(Path jfrPath) throws IOException;
+
+    /**
+     * @return The chunks of an uncompressed JFR file which may have events of the event types in the time range
+     */
+    List<JFRChunk> getChunks(Path jfrPath, List<EventType> eventTypes) throws IOException;
+
+    /**
+     * Open the profile cache of the JFR file. The cache is written first if there is no cache or the cache is out of
+     * date.
+     *
+     * @return The profile cache or {@code null} if the cache cannot be written
+     */
+    ProfileCache openProfileCache(Path jfrPath) throws Exception;
+
+    /**
+     * @return The frame ID of the file name if the file name is added to the stacks, or -1
+     */
+    int getBottomFrameId(Path jfrPath, FrameTable frameTable);
+
+    /**
+     * Pass the event to the consumer if it matches the event types, the time range and the threads and it has a stack
+     * trace.
+     */
+    void consumeEvent(RecordedEvent event, EventDispatcher eventDispatcher, FrameNameCache frameNameCache,
+                      ThreadCache threadCache, FrameStack frameStack, EventConsumer eventConsumer);
+
+    FrameNameCache createFrameNameCache(FrameTable frameTable);
+
+    /**
+     * @return A thread cache or {@code null} if the threads are not filtered and the thread names are not frames
+     */
+    ThreadCache createThreadCache(FrameTable frameTable);
+
+    /**
+     * Create an output writer for each event type.
+     *
+     * @param startNanos The start of the first chunk in nanoseconds since the epoch
+     * @param endNanos   The end of the last known chunk in nanoseconds since the epoch
+     */
+    FlameGraphOutputWriter[] createOutputWriters(List<EventType> eventTypes, long startNanos, long endNanos);
+
+    void writeOutput(List<EventType> eventTypes, FlameGraphOutputWriter[] flameGraphOutputWriters)
+            throws IOException;
+
+    /**
+     * Print the number of events of each type read in the files if the event counts are printed.
+     */
+    void printEventCounts();
+
+    /**
+     * Print the number of events of each type read by the dispatcher if the event counts are printed.
+     */
+    void printEventCounts(EventDispatcher eventDispatcher);
+}
@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Create the differential output of target JFR files against baseline JFR files. The baseline and the target are
+ * converted at the same time in separate threads, which share the frame table, and each thread parses the chunks of
+ * its files with half of the threads.
+ */
+final class DifferentialConverter {
+
+    private final ConversionContext conversionContext;
+    private final OutputType outputType;
+    private final OutputWriterParameters parameters;
+    private final int threads;
+
+    /**
+     * @param conversionContext The conversion of each file
+     * @param outputType        The output type of the differential output
+     * @param parameters        The parameters of the output writers
+     * @param threads           The number of threads to parse the chunks of the baseline and the target
+     */
+    DifferentialConverter(ConversionContext conversionContext, OutputType outputType,
+                          OutputWriterParameters parameters, int threads) {
+        this.conversionContext = conversionContext;
+        this.outputType = outputType;
+        this.parameters = parameters;
+        this.threads = threads;
+    }
+
+    /**
+     * Convert the baseline and the target files and write the differential output of each event type.
+     */
+    void diff(List<Path> baselinePaths, List<Path> targetPaths, List<EventType> eventTypes) throws Exception {
+        FrameTable frameTable = new FrameTable();
+        DifferentialOutputWriter[] targetWriters = new DifferentialOutputWriter[eventTypes.size()];
+        FlameGraphOutputWriter[] baselineWriters = new FlameGraphOutputWriter[eventTypes.size()];
+        for (int i = 0; i < targetWriters.length; i++) {
+            targetWriters[i] = new DifferentialOutputWriter(outputType);
+            targetWriters[i].initialize(parameters);
+            baselineWriters[i] = targetWriters[i].getBaselineWriter();
+        }
+        int chunkThreads = Math.max(1, threads / 2);
+        ExecutorService executorService = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> baseline = executorService.submit(() -> {
+                convertFilesTo(baselinePaths, eventTypes, frameTable, chunkThreads, baselineWriters);
+                return null;
+            });
+            Future<?> target = executorService.submit(() -> {
+                convertFilesTo(targetPaths, eventTypes, frameTable, chunkThreads, targetWriters);
+                return null;
+            });
+            baseline.get();
+            target.get();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            executorService.shutdownNow();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        }
+        conversionContext.writeOutput(eventTypes, targetWriters);
+        conversionContext.printEventCounts();
+    }
+
+    /**
+     * Convert the JFR files one after the other to the same output writers.
+     */
+    private void convertFilesTo(List<Path> jfrPaths, List<EventType> eventTypes, FrameTable frameTable,
+                                int chunkThreads, FlameGraphOutputWriter[] flameGraphOutputWriters) throws Exception {
+        for (Path jfrPath : jfrPaths) {
+            int bottomFrameId = conversionContext.getBottomFrameId(jfrPath, frameTable);
+            conversionContext.convertFile(jfrPath, eventTypes, frameTable, chunkThreads,
+                    (startNanos, endNanos) -> BottomFrameOutputWriter.addBottomFrame(flameGraphOutputWriters,
+                            bottomFrameId));
+        }
+    }
+}
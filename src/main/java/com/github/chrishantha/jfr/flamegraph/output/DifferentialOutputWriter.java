@@ -0,0 +1,232 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+
+/**
+ * Create a differential flame graph of a baseline and a target profile.
+ * <p>
+ * The events of the target are given to this writer and the events of the baseline are given to the writer returned
+ * by {@link #getBaselineWriter()}. The stack traces of each profile are aggregated into a {@link StackTree}. Both
+ * trees must use the same {@link FrameTable}, so that the frames are compared by frame ID. The baseline values are
+ * normalized to the total of the target, so that profiles of different lengths can be compared.
+ * <p>
+ * The output is written while walking both trees together, without recursion. The frames of the target are written
+ * first, followed by the frames found only in the baseline.
+ * <ul>
+ * <li>The folded output has the normalized baseline value and the target value of each stack trace, which is the
+ * input of difffolded.pl and flamegraph.pl.</li>
+ * <li>The JSON output has the target value of each frame and the {@code delta} of the target value from the
+ * normalized baseline value, which is the input of the differential d3-flame-graph.</li>
+ * </ul>
+ */
+public class DifferentialOutputWriter implements FlameGraphOutputWriter {
+
+    private static final int NONE = -1;
+
+    /**
+     * The bottom of the stack in JSON
+     */
+    private static final String ROOT = "root";
+
+    private final boolean json;
+
+    private StackTree baselineTree = new StackTree();
+    private StackTree targetTree = new StackTree();
+
+    /**
+     * @param outputType The type of the output: folded or json
+     */
+    public DifferentialOutputWriter(OutputType outputType) {
+        if (outputType != OutputType.FOLDED && outputType != OutputType.JSON) {
+            throw new IllegalArgumentException("The differential output type must be folded or json");
+        }
+        this.json = outputType == OutputType.JSON;
+    }
+
+    @Override
+    public void initialize(OutputWriterParameters parameters) {
+        // The trees are filled by different threads, so they do not share a store
+        StackNodeStore baselineStore = parameters.createMappedStackNodeStore();
+        if (baselineStore != null) {
+            baselineTree = new StackTree(baselineStore);
+            targetTree = new StackTree(parameters.createMappedStackNodeStore());
+        }
+    }
+
+    /**
+     * @return The writer of the events of the baseline. It writes no output.
+     */
+    public FlameGraphOutputWriter getBaselineWriter() {
+        return new FlameGraphOutputWriter() {
+            @Override
+            public void initialize(OutputWriterParameters parameters) {
+            }
+
+            @Override
+            public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration,
+                                     FrameStack stack, long value) {
+                baselineTree.addStack(stack, value);
+            }
+
+            @Override
+            public void writeOutput(BufferedWriter bufferedWriter) {
+            }
+        };
+    }
+
+    @Override
+    public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, FrameStack stack, long value) {
+        targetTree.addStack(stack, value);
+    }
+
+    @Override
+    public void writeOutput(BufferedWriter bufferedWriter) throws IOException {
+        long baselineTotal = baselineTree.getTotalValue();
+        long targetTotal = targetTree.getTotalValue();
+        double scale = baselineTotal > 0 && targetTotal > 0 ? (double) targetTotal / baselineTotal : 1;
+
+        // The nodes to visit. An entry with a negative depth is the exit of a node.
+        int[] targetNodes = new int[64];
+        int[] baselineNodes = new int[64];
+        int[] depths = new int[64];
+        // The length of the folded stack trace or the number of children written at each depth
+        int[] marks = new int[64];
+        StringBuilder stackTraceBuilder = new StringBuilder();
+        int size = 0;
+        targetNodes[size] = targetTree.getRoot();
+        baselineNodes[size] = baselineTree.getRoot();
+        depths[size] = 0;
+        size++;
+        while (size > 0) {
+            size--;
+            int target = targetNodes[size];
+            int baseline = baselineNodes[size];
+            int depth = depths[size];
+            if (depth < 0) {
+                if (json) {
+                    bufferedWriter.write(marks[-depth - 1] > 0 ? "]}" : "}");
+                }
+                continue;
+            }
+            if (depth + 1 >= marks.length) {
+                marks = Arrays.copyOf(marks, marks.length * 2);
+            }
+            if (json) {
+                if (depth > 0 && marks[depth - 1]++ > 0) {
+                    bufferedWriter.write(',');
+                }
+                marks[depth] = 0;
+                bufferedWriter.write("{\"name\":");
+                JsonOutputWriter.writeString(bufferedWriter, depth == 0 ? ROOT : getFrameName(target, baseline));
+                long targetValue = depth == 0 ? targetTotal : getTotal(targetTree, target);
+                long baselineValue = Math.round(scale * (depth == 0 ? baselineTotal : getTotal(baselineTree, baseline)));
+                bufferedWriter.write(",\"value\":");
+                bufferedWriter.write(Long.toString(targetValue));
+                bufferedWriter.write(",\"delta\":");
+                bufferedWriter.write(Long.toString(targetValue - baselineValue));
+            } else {
+                if (depth > 0) {
+                    stackTraceBuilder.setLength(marks[depth - 1]);
+                    if (depth > 1) {
+                        stackTraceBuilder.append(';');
+                    }
+                    stackTraceBuilder.append(getFrameName(target, baseline));
+                }
+                marks[depth] = stackTraceBuilder.length();
+                if (getCount(targetTree, target) > 0 || getCount(baselineTree, baseline) > 0) {
+                    bufferedWriter.append(stackTraceBuilder).append(' ')
+                            .append(Long.toString(Math.round(scale * getValue(baselineTree, baseline))))
+                            .append(' ').append(Long.toString(getValue(targetTree, target)));
+                    bufferedWriter.newLine();
+                }
+            }
+
+            // Push the exit, then the children in reverse order, so that they are visited first
+            int childCount = 0;
+            for (int child = getFirstChild(targetTree, target); child != NONE;
+                 child = targetTree.getNextSibling(child)) {
+                childCount++;
+            }
+            for (int child = getFirstChild(baselineTree, baseline); child != NONE;
+                 child = baselineTree.getNextSibling(child)) {
+                if (findChild(targetTree, target, baselineTree.getFrameId(child)) == NONE) {
+                    childCount++;
+                }
+            }
+            if (json) {
+                bufferedWriter.write(childCount > 0 ? ",\"children\":[" : "");
+            }
+            if (size + childCount + 1 > targetNodes.length) {
+                int length = Math.max(targetNodes.length * 2, size + childCount + 1);
+                targetNodes = Arrays.copyOf(targetNodes, length);
+                baselineNodes = Arrays.copyOf(baselineNodes, length);
+                depths = Arrays.copyOf(depths, length);
+            }
+            targetNodes[size] = target;
+            baselineNodes[size] = baseline;
+            depths[size] = -depth - 1;
+            size++;
+            int index = size + childCount;
+            for (int child = getFirstChild(targetTree, target); child != NONE;
+                 child = targetTree.getNextSibling(child)) {
+                index--;
+                targetNodes[index] = child;
+                baselineNodes[index] = findChild(baselineTree, baseline, targetTree.getFrameId(child));
+                depths[index] = depth + 1;
+            }
+            for (int child = getFirstChild(baselineTree, baseline); child != NONE;
+                 child = baselineTree.getNextSibling(child)) {
+                if (findChild(targetTree, target, baselineTree.getFrameId(child)) == NONE) {
+                    index--;
+                    targetNodes[index] = NONE;
+                    baselineNodes[index] = child;
+                    depths[index] = depth + 1;
+                }
+            }
+            size += childCount;
+        }
+    }
+
+    private String getFrameName(int target, int baseline) {
+        return target != NONE ? targetTree.getFrameName(target) : baselineTree.getFrameName(baseline);
+    }
+
+    private static int getFirstChild(StackTree stackTree, int node) {
+        return node == NONE ? NONE : stackTree.getFirstChild(node);
+    }
+
+    private static int findChild(StackTree stackTree, int node, int frameId) {
+        return node == NONE ? NONE : stackTree.findChild(node, frameId);
+    }
+
+    private static long getValue(StackTree stackTree, int node) {
+        return node == NONE ? 0 : stackTree.getValue(node);
+    }
+
+    private static long getCount(StackTree stackTree, int node) {
+        return node == NONE ? 0 : stackTree.getCount(node);
+    }
+
+    private static long getTotal(StackTree stackTree, int node) {
+        return node == NONE ? 0 : stackTree.getTotal(node);
+    }
+}
@@ -0,0 +1,28 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.consumer.RecordedEvent;
+
+/**
+ * Consumes the stack trace and the value of each matching event.
+ */
+interface EventConsumer {
+    /**
+     * @param target The index of the event type in the selected event types
+     */
+    void accept(int target, RecordedEvent event, FrameStack stack, long value);
+}
@@ -0,0 +1,199 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.consumer.RecordedEvent;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Finds the flame graphs of each JFR event.
+ * <p>
+ * The JFR event names of the selected event types are resolved once against the event types in the recording, so
+ * that events are dispatched by a lookup of the numeric event type ID instead of comparing names. A target is the
+ * index of an event type in the selected event types. Event types which are not in the metadata read up front are
+ * resolved by name when they are first seen.
+ * <p>
+ * The value accessor of each target is also bound once for each JFR event type.
+ * <p>
+ * The number of events read and consumed is counted for each JFR event type.
+ * <p>
+ * This class is not thread safe. Each thread reading events uses its own instance.
+ */
+final class EventDispatcher {
+
+    private static final int[] NO_TARGETS = new int[0];
+
+    private static final EventType.ValueAccessor[] NO_VALUE_ACCESSORS = new EventType.ValueAccessor[0];
+
+    private final List<EventType> eventTypes;
+    private final Map<String, int[]> targetsByName = new HashMap<>();
+
+    // Each JFR event type has an entry. The table maps the ID of the event type to the entry + 1.
+    private long[] ids = new long[64];
+    private String[] names = new String[64];
+    private int[][] targets = new int[64][];
+    private EventType.ValueAccessor[][] valueAccessors = new EventType.ValueAccessor[64][];
+    private long[] readCounts = new long[64];
+    private long[] consumedCounts = new long[64];
+    private int size;
+    private int[] table = new int[128];
+
+    /**
+     * @param eventTypes          The selected event types
+     * @param recordingEventTypes The event types in the recording
+     */
+    EventDispatcher(List<EventType> eventTypes, List<jdk.jfr.EventType> recordingEventTypes) {
+        this.eventTypes = eventTypes;
+        for (int target = 0; target < eventTypes.size(); target++) {
+            for (String eventName : eventTypes.get(target).getEventNames()) {
+                int[] eventTargets = targetsByName.get(eventName);
+                if (eventTargets == null) {
+                    eventTargets = new int[]{target};
+                } else {
+                    eventTargets = Arrays.copyOf(eventTargets, eventTargets.length + 1);
+                    eventTargets[eventTargets.length - 1] = target;
+                }
+                targetsByName.put(eventName, eventTargets);
+            }
+        }
+        for (jdk.jfr.EventType recordingEventType : recordingEventTypes) {
+            if (find(recordingEventType.getId()) < 0) {
+                add(recordingEventType);
+            }
+        }
+    }
+
+    /**
+     * Find the entry of the type of an event and count the event as read.
+     *
+     * @param event The event
+     * @return The entry of the event type
+     */
+    int dispatch(RecordedEvent event) {
+        jdk.jfr.EventType type = event.getEventType();
+        int entry = find(type.getId());
+        if (entry < 0) {
+            entry = add(type);
+        }
+        readCounts[entry]++;
+        return entry;
+    }
+
+    /**
+     * @param entry The entry of an event type
+     * @return The indexes of the selected event types matching the event type, or an empty array. The array must not
+     * be modified.
+     */
+    int[] getTargets(int entry) {
+        return targets[entry];
+    }
+
+    /**
+     * @param entry The entry of an event type
+     * @return The value accessors of the event type, in the order of the targets. The array must not be modified.
+     */
+    EventType.ValueAccessor[] getValueAccessors(int entry) {
+        return valueAccessors[entry];
+    }
+
+    /**
+     * Count an event as consumed.
+     *
+     * @param entry The entry of the event type
+     */
+    void consumed(int entry) {
+        consumedCounts[entry]++;
+    }
+
+    /**
+     * Add the number of events read and consumed to the counts of each event type name.
+     *
+     * @param eventCounts The counts by event type name. Each value has the number of events read and the number of
+     *                    events consumed.
+     */
+    void addCounts(Map<String, long[]> eventCounts) {
+        for (int entry = 0; entry < size; entry++) {
+            if (readCounts[entry] == 0) {
+                continue;
+            }
+            long[] counts = eventCounts.computeIfAbsent(names[entry], name -> new long[2]);
+            counts[0] += readCounts[entry];
+            counts[1] += consumedCounts[entry];
+        }
+    }
+
+    private int find(long id) {
+        int mask = table.length - 1;
+        int index = hash(id) & mask;
+        int slot;
+        while ((slot = table[index]) != 0) {
+            if (ids[slot - 1] == id) {
+                return slot - 1;
+            }
+            index = (index + 1) & mask;
+        }
+        return -1;
+    }
+
+    private int add(jdk.jfr.EventType type) {
+        if (size == ids.length) {
+            int capacity = size * 2;
+            ids = Arrays.copyOf(ids, capacity);
+            names = Arrays.copyOf(names, capacity);
+            targets = Arrays.copyOf(targets, capacity);
+            valueAccessors = Arrays.copyOf(valueAccessors, capacity);
+            readCounts = Arrays.copyOf(readCounts, capacity);
+            consumedCounts = Arrays.copyOf(consumedCounts, capacity);
+            table = new int[capacity * 2];
+            for (int entry = 0; entry < size; entry++) {
+                insert(entry);
+            }
+        }
+        int entry = size++;
+        ids[entry] = type.getId();
+        names[entry] = type.getName();
+        int[] entryTargets = targetsByName.getOrDefault(type.getName(), NO_TARGETS);
+        EventType.ValueAccessor[] entryValueAccessors = NO_VALUE_ACCESSORS;
+        if (entryTargets.length > 0) {
+            entryValueAccessors = new EventType.ValueAccessor[entryTargets.length];
+            for (int i = 0; i < entryTargets.length; i++) {
+                entryValueAccessors[i] = eventTypes.get(entryTargets[i]).bindValueAccessor(type);
+            }
+        }
+        targets[entry] = entryTargets;
+        valueAccessors[entry] = entryValueAccessors;
+        insert(entry);
+        return entry;
+    }
+
+    private void insert(int entry) {
+        int mask = table.length - 1;
+        int index = hash(ids[entry]) & mask;
+        while (table[index] != 0) {
+            index = (index + 1) & mask;
+        }
+        table[index] = entry + 1;
+    }
+
+    private static int hash(long id) {
+        long h = id * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
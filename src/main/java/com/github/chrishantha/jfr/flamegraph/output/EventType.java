@@ -17,12 +17,11 @@
 package com.github.chrishantha.jfr.flamegraph.output;
 
 import com.beust.jcommander.IStringConverter;
+import jdk.jfr.ValueDescriptor;
 import jdk.jfr.consumer.RecordedEvent;
 
-import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.concurrent.TimeUnit;
 
 /**
  * Different types of events possibly available in a JFR recording.
@@ -31,7 +30,7 @@ import java.util.concurrent.TimeUnit;
  * JFR event types. Each type knows how to convert the event into a numeric value
  * that will make the flame graph most meaningful. For allocation events this would
  * be the number of bytes allocated, while for file reads it would be the duration of
- * the read operation.
+ * the read operation in nanoseconds.
  */
 public enum EventType {
 
@@ -39,8 +38,8 @@ public enum EventType {
     ALLOCATION_IN_NEW_TLAB("allocation-tlab", ValueField.TLAB_SIZE, "jdk.ObjectAllocationInNewTLAB"),
     ALLOCATION_OUTSIDE_TLAB("allocation-outside-tlab", ValueField.ALLOCATION_SIZE, "jdk.ObjectAllocationOutsideTLAB"),
     JAVA_EXCEPTION("exceptions", ValueField.COUNT, "jdk.JavaExceptionThrow"),
-    JAVA_MONITOR_BLOCKED("monitor-blocked", ValueField.DURATION, "Java Monitor Blocked"),
-    IO("io", ValueField.DURATION, "File Read", "File Write", "Socket Read", "Socket Write");
+    JAVA_MONITOR_BLOCKED("monitor-blocked", ValueField.DURATION, "jdk.JavaMonitorEnter"),
+    IO("io", ValueField.DURATION, "jdk.FileRead", "jdk.FileWrite", "jdk.SocketRead", "jdk.SocketWrite");
 
     private final String commandLineOption;
     private final ValueField valueField;
@@ -52,13 +51,41 @@ public enum EventType {
         this.valueField = valueField;
     }
 
-    public boolean matches(RecordedEvent event) {
-        String name = event.getEventType().getName();
-        return Arrays.stream(eventNames).anyMatch(name::equals);
+    /**
+     * @return The names of the JFR events matching this type
+     */
+    String[] getEventNames() {
+        return eventNames.clone();
+    }
+
+    /**
+     * @return Whether the value of the events is their duration. Such an event can end in a later chunk than the chunk
+     * in which it starts.
+     */
+    boolean hasDuration() {
+        return valueField == ValueField.DURATION;
     }
 
     public long getValue(RecordedEvent event) {
-        return valueField.getValue(event);
+        return valueField.bind(event.getEventType()).getValue(event);
+    }
+
+    /**
+     * Resolve the value of the events of a JFR event type, so that the field is not looked up for each event.
+     *
+     * @param type The JFR event type matching this type
+     * @return The accessor for the value of the events
+     * @throws IllegalArgumentException If the event type does not have the value field
+     */
+    ValueAccessor bindValueAccessor(jdk.jfr.EventType type) {
+        return valueField.bind(type);
+    }
+
+    /**
+     * Reads the value of the events of one JFR event type.
+     */
+    interface ValueAccessor {
+        long getValue(RecordedEvent event);
     }
 
     @Override
@@ -89,30 +116,38 @@ public enum EventType {
     private enum ValueField {
         COUNT {
             @Override
-            public long getValue(RecordedEvent event) {
-                return 1;
+            ValueAccessor bind(jdk.jfr.EventType type) {
+                return event -> 1;
             }
         },
         DURATION {
             @Override
-            public long getValue(RecordedEvent event) {
-                long nanos = (long) event.getValue("(duration)");
-                return TimeUnit.NANOSECONDS.toMillis(nanos);
+            ValueAccessor bind(jdk.jfr.EventType type) {
+                return event -> event.getDuration().toNanos();
             }
         },
         ALLOCATION_SIZE {
             @Override
-            public long getValue(RecordedEvent event) {
-                return (long) event.getValue("allocationSize") / 1000;
+            ValueAccessor bind(jdk.jfr.EventType type) {
+                return bindLong(type, "allocationSize");
             }
         },
         TLAB_SIZE {
             @Override
-            public long getValue(RecordedEvent event) {
-                return (long) event.getValue("tlabSize") / 1000;
+            ValueAccessor bind(jdk.jfr.EventType type) {
+                return bindLong(type, "tlabSize");
             }
         };
 
-        public abstract long getValue(RecordedEvent event);
+        abstract ValueAccessor bind(jdk.jfr.EventType type);
+
+        private static ValueAccessor bindLong(jdk.jfr.EventType type, String fieldName) {
+            ValueDescriptor field = type.getField(fieldName);
+            if (field == null || !"long".equals(field.getTypeName())) {
+                throw new IllegalArgumentException(
+                        "Event type [" + type.getName() + "] does not have the long field [" + fieldName + "]");
+            }
+            return event -> event.getLong(fieldName);
+        }
     }
 }
@@ -19,7 +19,6 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.Stack;
 
 /**
  * Process stack traces and write the output
@@ -28,7 +27,14 @@ public interface FlameGraphOutputWriter {
 
     void initialize(OutputWriterParameters parameters);
 
-    void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, Stack<String> stack, long value);
+    /**
+     * Process the stack trace of an event. The value is additive: the same stack trace may be given once with the
+     * sum of the values of several events.
+     * <p>
+     * The frame stack is reused for the next event. A writer which needs a {@link java.util.Stack} of the frames can
+     * create one with {@link FrameStack#toStack()}, or extend {@link StackOutputWriterAdapter}.
+     */
+    void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, FrameStack stack, long value);
 
     void writeOutput(BufferedWriter bufferedWriter) throws IOException;
 }
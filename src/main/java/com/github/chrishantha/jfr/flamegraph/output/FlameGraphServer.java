@@ -0,0 +1,345 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.BufferedWriter;
+import java.io.ByteArrayOutputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.UnsupportedEncodingException;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+/**
+ * Serve flame graphs of a recording over HTTP.
+ * <p>
+ * The recording is read from its {@link ProfileCache}, so it is parsed only once. The events in the cache are indexed
+ * by event type and time when the server is created. Each request to {@value #PATH} creates a flame graph from the
+ * events in the cache. The query parameters are
+ * <ul>
+ * <li>{@code event}: the event type, as in the {@code -e} option. The default is {@code cpu}.</li>
+ * <li>{@code type}: the output type, {@code folded}, {@code json} or {@code svg}. The default is {@code folded}.</li>
+ * <li>{@code start} and {@code end}: the time range in seconds since the epoch</li>
+ * <li>{@code thread}: the name of the thread</li>
+ * <li>{@code frame}: a text in the name of a frame in the stack</li>
+ * </ul>
+ * The events matching the query are read from the cache and aggregated before the response is sent. The output is then
+ * written to the response in chunks, without buffering the whole output. Responses up to the maximum size are also
+ * kept in memory. The least recently used responses are removed when their total size exceeds the maximum size.
+ * <p>
+ * The frame names of all requests are interned in one {@link FrameTable}. Each request formats the frame names with
+ * its own {@link FrameNameCache}.
+ */
+public final class FlameGraphServer {
+
+    /**
+     * The path of the flame graphs
+     */
+    public static final String PATH = "/flamegraph";
+
+    private final ProfileCache profileCache;
+    private final Function<FrameTable, FrameNameCache> frameNameCacheFactory;
+    private final FrameTable frameTable = new FrameTable();
+    private final OutputWriterParameters parameters;
+    private final long maxCachedBytes;
+    private final HttpServer httpServer;
+    private final ExecutorService executorService;
+
+    /**
+     * The cached responses by the normalized query, in the order of access
+     */
+    private final Map<String, CachedResponse> cachedResponses = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    private static final class CachedResponse {
+
+        private final String contentType;
+        private final byte[] body;
+
+        CachedResponse(String contentType, byte[] body) {
+            this.contentType = contentType;
+            this.body = body;
+        }
+    }
+
+    /**
+     * @param profileCache          The profile cache of the recording
+     * @param frameNameCacheFactory Creates the cache to format the frame names of a request, given the shared frame
+     *                              table
+     * @param parameters            The parameters of the output writers
+     * @param address               The address to listen on
+     * @param threads               The number of threads to handle requests
+     * @param maxCachedBytes        The maximum total size of the cached responses
+     * @throws IOException If the events in the cache cannot be indexed or the server cannot listen on the address
+     */
+    public FlameGraphServer(ProfileCache profileCache, Function<FrameTable, FrameNameCache> frameNameCacheFactory,
+                            OutputWriterParameters parameters, InetSocketAddress address, int threads,
+                            long maxCachedBytes) throws IOException {
+        this.profileCache = profileCache;
+        this.frameNameCacheFactory = frameNameCacheFactory;
+        this.parameters = parameters;
+        this.maxCachedBytes = maxCachedBytes;
+        profileCache.createEventIndex();
+        this.httpServer = HttpServer.create(address, 0);
+        this.executorService = Executors.newFixedThreadPool(Math.max(1, threads));
+        httpServer.setExecutor(executorService);
+        httpServer.createContext(PATH, this::handle);
+    }
+
+    public void start() {
+        httpServer.start();
+    }
+
+    /**
+     * Stop the server after the current requests complete.
+     *
+     * @param delaySeconds The maximum time to wait for the current requests
+     */
+    public void stop(int delaySeconds) {
+        httpServer.stop(delaySeconds);
+        executorService.shutdown();
+        try {
+            executorService.awaitTermination(delaySeconds, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * @return The address the server listens on
+     */
+    public InetSocketAddress getAddress() {
+        return httpServer.getAddress();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            if (!"GET".equals(exchange.getRequestMethod())) {
+                sendError(exchange, 405, "Only GET is supported");
+                return;
+            }
+            if (!PATH.equals(exchange.getRequestURI().getPath())) {
+                sendError(exchange, 404, "Not found");
+                return;
+            }
+            Map<String, String> query;
+            ProfileQuery profileQuery;
+            OutputType outputType;
+            try {
+                query = parseQuery(exchange.getRequestURI().getRawQuery());
+                outputType = getOutputType(query.getOrDefault("type", OutputType.FOLDED.toString()));
+                EventType eventType = new EventType.EventTypeConverter().convert(query.getOrDefault("event",
+                        EventType.METHOD_PROFILING_SAMPLE.toString()));
+                profileQuery = new ProfileQuery(profileCache, Collections.singletonList(eventType));
+                profileQuery.setTimeRange(getNanos(query, "start", Long.MIN_VALUE),
+                        getNanos(query, "end", Long.MAX_VALUE));
+                profileQuery.setThreadName(query.get("thread"));
+                profileQuery.setFrameFilter(query.get("frame"));
+            } catch (IllegalArgumentException e) {
+                sendError(exchange, 400, e.getMessage());
+                return;
+            }
+            String key = query.toString();
+            String contentType = getContentType(outputType);
+            CachedResponse cachedResponse = getCachedResponse(key);
+            if (cachedResponse != null) {
+                exchange.getResponseHeaders().set("Content-Type", cachedResponse.contentType);
+                exchange.sendResponseHeaders(200, cachedResponse.body.length);
+                try (OutputStream body = exchange.getResponseBody()) {
+                    body.write(cachedResponse.body);
+                }
+                return;
+            }
+
+            boolean responseStarted = false;
+            try {
+                FlameGraphOutputWriter flameGraphOutputWriter = outputType.createFlameGraphOutputWriter();
+                flameGraphOutputWriter.initialize(parameters);
+                profileQuery.run(frameNameCacheFactory.apply(frameTable),
+                        new FlameGraphOutputWriter[]{flameGraphOutputWriter});
+
+                exchange.getResponseHeaders().set("Content-Type", contentType);
+                // The length is not known, so the response is sent in chunks
+                exchange.sendResponseHeaders(200, 0);
+                responseStarted = true;
+                CopyingOutputStream body = new CopyingOutputStream(exchange.getResponseBody(), maxCachedBytes);
+                try (BufferedWriter bufferedWriter = new BufferedWriter(new OutputStreamWriter(body,
+                        StandardCharsets.UTF_8))) {
+                    flameGraphOutputWriter.writeOutput(bufferedWriter);
+                }
+                byte[] copy = body.getCopy();
+                if (copy != null) {
+                    putCachedResponse(key, new CachedResponse(contentType, copy));
+                }
+            } catch (IOException | RuntimeException e) {
+                System.err.println("Could not create the flamegraph for " + exchange.getRequestURI() + ": " + e);
+                if (!responseStarted) {
+                    sendError(exchange, 500, "Could not create the flamegraph: " + e.getMessage());
+                }
+                // Otherwise the response is incomplete and closing the exchange ends it
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private synchronized CachedResponse getCachedResponse(String key) {
+        return cachedResponses.get(key);
+    }
+
+    private synchronized void putCachedResponse(String key, CachedResponse cachedResponse) {
+        CachedResponse previous = cachedResponses.put(key, cachedResponse);
+        if (previous != null) {
+            cachedBytes -= previous.body.length;
+        }
+        cachedBytes += cachedResponse.body.length;
+        Iterator<CachedResponse> iterator = cachedResponses.values().iterator();
+        while (cachedBytes > maxCachedBytes && iterator.hasNext()) {
+            cachedBytes -= iterator.next().body.length;
+            iterator.remove();
+        }
+    }
+
+    private static void sendError(HttpExchange exchange, int status, String message) throws IOException {
+        byte[] body = (message + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "text/plain; charset=UTF-8");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    /**
+     * Parse the query parameters. The parameters are sorted by name, so that the same query has the same string
+     * representation.
+     */
+    static Map<String, String> parseQuery(String rawQuery) {
+        Map<String, String> query = new TreeMap<>();
+        if (rawQuery == null || rawQuery.isEmpty()) {
+            return query;
+        }
+        for (String parameter : rawQuery.split("&")) {
+            if (parameter.isEmpty()) {
+                continue;
+            }
+            int index = parameter.indexOf('=');
+            String name = decode(index < 0 ? parameter : parameter.substring(0, index));
+            String value = index < 0 ? "" : decode(parameter.substring(index + 1));
+            query.put(name, value);
+        }
+        return query;
+    }
+
+    private static String decode(String value) {
+        try {
+            return URLDecoder.decode(value, StandardCharsets.UTF_8.name());
+        } catch (UnsupportedEncodingException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static OutputType getOutputType(String name) {
+        for (OutputType outputType : OutputType.values()) {
+            if (outputType.toString().equals(name)) {
+                return outputType;
+            }
+        }
+        throw new IllegalArgumentException("Output type [" + name + "] does not exist.");
+    }
+
+    private static String getContentType(OutputType outputType) {
+        switch (outputType) {
+            case JSON:
+                return "application/json; charset=UTF-8";
+            case SVG:
+                return "image/svg+xml; charset=UTF-8";
+            default:
+                return "text/plain; charset=UTF-8";
+        }
+    }
+
+    private static long getNanos(Map<String, String> query, String name, long defaultNanos) {
+        String value = query.get(name);
+        if (value == null) {
+            return defaultNanos;
+        }
+        try {
+            return TimeUnit.SECONDS.toNanos(Long.parseLong(value));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("The " + name + " must be seconds since the epoch");
+        }
+    }
+
+    /**
+     * Writes to another stream and keeps a copy of the bytes until the copy exceeds the maximum size.
+     */
+    private static final class CopyingOutputStream extends FilterOutputStream {
+
+        private final long maxCopySize;
+        private ByteArrayOutputStream copy = new ByteArrayOutputStream();
+
+        CopyingOutputStream(OutputStream out, long maxCopySize) {
+            super(out);
+            this.maxCopySize = maxCopySize;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            if (copy != null) {
+                copy.write(b);
+                checkCopySize();
+            }
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
+            if (copy != null) {
+                copy.write(b, off, len);
+                checkCopySize();
+            }
+        }
+
+        private void checkCopySize() {
+            if (copy.size() > maxCopySize) {
+                copy = null;
+            }
+        }
+
+        /**
+         * @return The bytes written or {@code null} if they exceed the maximum size
+         */
+        byte[] getCopy() {
+            return copy == null ? null : copy.toByteArray();
+        }
+    }
+}
@@ -19,50 +19,76 @@ import java.io.BufferedWriter;
 import java.io.IOException;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.LinkedHashMap;
-import java.util.Map;
-import java.util.Stack;
+import java.util.Arrays;
 
 /**
  * Create folded output to be used with flamegraph.pl
+ * <p>
+ * The stack traces are aggregated into a {@link StackTree}. The folded lines are created only when writing the
+ * output, in depth first order of the tree.
  */
 public class FoldedOutputWriter implements FlameGraphOutputWriter {
 
     /**
      * The data model for folded stacks
      */
-    private final Map<String, Long> stackTraceMap = new LinkedHashMap<>();
+    private StackTree stackTree = new StackTree();
+
+    private OutputWriterParameters parameters = new OutputWriterParameters();
 
     @Override
     public void initialize(OutputWriterParameters parameters) {
+        this.parameters = parameters;
+        StackNodeStore store = parameters.createMappedStackNodeStore();
+        if (store != null) {
+            stackTree = new StackTree(store);
+        }
     }
 
     @Override
-    public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, Stack<String> stack, long value) {
-        StringBuilder stackTraceBuilder = new StringBuilder();
-        boolean appendSemicolon = false;
-        while (!stack.empty()) {
-            if (appendSemicolon) {
-                stackTraceBuilder.append(";");
-            } else {
-                appendSemicolon = true;
-            }
-            stackTraceBuilder.append(stack.pop());
-        }
-        String stackTrace = stackTraceBuilder.toString();
-        Long count = stackTraceMap.get(stackTrace);
-        if (count == null) {
-            count = value;
-        } else {
-            count += value;
-        }
-        stackTraceMap.put(stackTrace, count);
+    public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, FrameStack stack, long value) {
+        stackTree.addStack(stack, value);
     }
 
     @Override
     public void writeOutput(BufferedWriter bufferedWriter) throws IOException {
-        for (Map.Entry<String, Long> entry : stackTraceMap.entrySet()) {
-            bufferedWriter.write(String.format("%s %d%n", entry.getKey(), entry.getValue()));
-        }
+        StringBuilder stackTraceBuilder = new StringBuilder();
+        StackTreePruner pruner = parameters.createPruner(stackTree);
+        stackTree.walk(new StackTree.NodeVisitor() {
+
+            private int[] lengths = new int[64];
+
+            @Override
+            public void enter(int node, int depth) throws IOException {
+                if (depth > 0) {
+                    if (depth > 1) {
+                        stackTraceBuilder.append(';');
+                    }
+                    stackTraceBuilder.append(stackTree.getFrameName(node));
+                }
+                if (depth == lengths.length) {
+                    lengths = Arrays.copyOf(lengths, depth * 2);
+                }
+                lengths[depth] = stackTraceBuilder.length();
+                // A stack trace with events is written even if the sum of the values of its events is zero
+                if (stackTree.getCount(node) > 0 && (pruner == null || pruner.isStackSelected(node))) {
+                    bufferedWriter.append(stackTraceBuilder).append(' ').append(Long.toString(stackTree.getValue(node)));
+                    bufferedWriter.newLine();
+                }
+                long prunedTotal = pruner == null ? 0 : pruner.getPrunedTotal(node, depth);
+                if (prunedTotal > 0) {
+                    if (depth > 0) {
+                        bufferedWriter.append(stackTraceBuilder).append(';');
+                    }
+                    bufferedWriter.append(StackTreePruner.OTHER).append(' ').append(Long.toString(prunedTotal));
+                    bufferedWriter.newLine();
+                }
+            }
+
+            @Override
+            public void exit(int node, int depth) {
+                stackTraceBuilder.setLength(depth > 0 ? lengths[depth - 1] : 0);
+            }
+        }, pruner);
     }
 }
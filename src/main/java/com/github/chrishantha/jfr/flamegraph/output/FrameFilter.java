@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Include, exclude and collapse patterns of frames.
+ * <p>
+ * A pattern is a prefix of the qualified name of a method, which is the qualified type name and the method name
+ * separated by a dot, such as {@code java.lang.reflect}, {@code java.lang.invoke.LambdaForm$} or
+ * {@code com.example.Tree.visit}. The patterns are compiled into a trie of the characters, so that a method is matched
+ * with all patterns in one pass over its name. The patterns are matched once for each method, not for each frame.
+ * <ul>
+ * <li>A stack is used only if it has a frame matching an include pattern, if there are include patterns.</li>
+ * <li>A frame matching an exclude pattern is removed from the stack.</li>
+ * <li>Adjacent frames matching a collapse pattern are replaced with one frame named with the longest matching
+ * pattern. This collapses recursion and the layers of a framework.</li>
+ * </ul>
+ * An excluded frame is not collapsed.
+ */
+public final class FrameFilter {
+
+    private static final int INCLUDE = 1;
+    private static final int EXCLUDE = 2;
+
+    private final Node root = new Node();
+    private final boolean hasIncludes;
+    private final boolean empty;
+
+    /**
+     * The result of matching a method with the patterns.
+     */
+    public static final class Match {
+
+        private static final Match NONE = new Match(false, false, null);
+
+        private final boolean included;
+        private final boolean excluded;
+        private final String collapsePattern;
+
+        private Match(boolean included, boolean excluded, String collapsePattern) {
+            this.included = included;
+            this.excluded = excluded;
+            this.collapsePattern = collapsePattern;
+        }
+
+        /**
+         * @return Whether the method matches an include pattern
+         */
+        public boolean isIncluded() {
+            return included;
+        }
+
+        /**
+         * @return Whether the method matches an exclude pattern
+         */
+        public boolean isExcluded() {
+            return excluded;
+        }
+
+        /**
+         * @return The longest collapse pattern matching the method, or {@code null} if the method is not collapsed
+         */
+        public String getCollapsePattern() {
+            return collapsePattern;
+        }
+    }
+
+    private static final class Node {
+
+        final Map<Character, Node> children = new HashMap<>(4);
+        int flags;
+        String collapsePattern;
+    }
+
+    /**
+     * @param includes  The include patterns
+     * @param excludes  The exclude patterns
+     * @param collapses The collapse patterns
+     */
+    public FrameFilter(List<String> includes, List<String> excludes, List<String> collapses) {
+        for (String pattern : includes) {
+            add(pattern).flags |= INCLUDE;
+        }
+        for (String pattern : excludes) {
+            add(pattern).flags |= EXCLUDE;
+        }
+        for (String pattern : collapses) {
+            add(pattern).collapsePattern = pattern;
+        }
+        this.hasIncludes = !includes.isEmpty();
+        this.empty = includes.isEmpty() && excludes.isEmpty() && collapses.isEmpty();
+    }
+
+    private Node add(String pattern) {
+        if (pattern.isEmpty()) {
+            throw new IllegalArgumentException("A frame pattern must not be empty");
+        }
+        Node node = root;
+        for (int i = 0; i < pattern.length(); i++) {
+            node = node.children.computeIfAbsent(pattern.charAt(i), c -> new Node());
+        }
+        return node;
+    }
+
+    /**
+     * @return Whether there are no patterns
+     */
+    public boolean isEmpty() {
+        return empty;
+    }
+
+    /**
+     * @return Whether the stacks must have a frame matching an include pattern
+     */
+    public boolean hasIncludes() {
+        return hasIncludes;
+    }
+
+    /**
+     * Match a method with the patterns.
+     *
+     * @param typeName   The qualified name of the type declaring the method
+     * @param methodName The name of the method
+     * @return The result of matching the qualified name of the method
+     */
+    public Match match(String typeName, String methodName) {
+        int flags = 0;
+        String collapsePattern = null;
+        Node node = root;
+        int length = typeName.length() + 1 + methodName.length();
+        for (int i = 0; i < length && node != null; i++) {
+            char c = i < typeName.length() ? typeName.charAt(i)
+                    : i == typeName.length() ? '.' : methodName.charAt(i - typeName.length() - 1);
+            node = node.children.get(c);
+            if (node != null) {
+                flags |= node.flags;
+                if (node.collapsePattern != null) {
+                    collapsePattern = node.collapsePattern;
+                }
+            }
+        }
+        if (flags == 0 && collapsePattern == null) {
+            return Match.NONE;
+        }
+        return new Match((flags & INCLUDE) != 0, (flags & EXCLUDE) != 0, collapsePattern);
+    }
+}
@@ -0,0 +1,418 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.StringJoiner;
+
+/**
+ * Formats stack frames and caches the IDs of the formatted names in a {@link FrameTable}.
+ * <p>
+ * The JFR parser shares {@link RecordedMethod} instances between the events of a chunk, so methods are first
+ * looked up by identity. Methods seen in a previous chunk are found again by their type name, method name and
+ * descriptor. Each method then keeps the frame IDs of the lines seen so far. Repeated frames are resolved without
+ * any allocation.
+ * <p>
+ * A {@link FrameFilter} is matched once for each method. Excluded methods do not have a frame ID and collapsed methods
+ * have the frame ID of the collapse pattern. The frames of included methods and the collapsed frames are kept in sets
+ * of frame IDs, so that {@link #push(FrameStack, int)} and {@link #isSelected(FrameStack)} do not look up methods.
+ * <p>
+ * The cache is bounded. The cached frames and the methods looked up by identity count toward the maximum size. When
+ * the count reaches the maximum size, the cache is cleared, so that the method instances of earlier chunks are not
+ * kept. The frame table keeps the interned names. This class is not thread safe, but several caches can share a frame table.
+ */
+public final class FrameNameCache {
+
+    /**
+     * Default maximum number of cached frame names
+     */
+    public static final int DEFAULT_MAX_SIZE = 1 << 20;
+
+    private final FrameTable frameTable;
+    private final boolean ignoreLineNumbers;
+    private final boolean useSimpleNames;
+    private final boolean hideArguments;
+    private final boolean showReturnValue;
+    private final int maxSize;
+    private final FrameFilter frameFilter;
+
+    private final Map<RecordedMethod, MethodEntry> methodsByIdentity = new IdentityHashMap<>();
+    private final Map<String, MethodEntry> methodsByKey = new HashMap<>();
+    private final BitSet includedFrames = new BitSet();
+    private final BitSet collapsedFrames = new BitSet();
+
+    private int size;
+    private long hits;
+    private long misses;
+
+    public FrameNameCache(FrameTable frameTable, boolean ignoreLineNumbers, boolean useSimpleNames,
+                          boolean hideArguments, boolean showReturnValue) {
+        this(frameTable, ignoreLineNumbers, useSimpleNames, hideArguments, showReturnValue, DEFAULT_MAX_SIZE);
+    }
+
+    public FrameNameCache(FrameTable frameTable, boolean ignoreLineNumbers, boolean useSimpleNames,
+                          boolean hideArguments, boolean showReturnValue, int maxSize) {
+        this(frameTable, ignoreLineNumbers, useSimpleNames, hideArguments, showReturnValue, maxSize, null);
+    }
+
+    /**
+     * @param frameFilter The filter of the frames, or {@code null} to use all frames
+     */
+    public FrameNameCache(FrameTable frameTable, boolean ignoreLineNumbers, boolean useSimpleNames,
+                          boolean hideArguments, boolean showReturnValue, int maxSize, FrameFilter frameFilter) {
+        if (maxSize <= 0) {
+            throw new IllegalArgumentException("Maximum size must be positive");
+        }
+        this.frameTable = frameTable;
+        this.ignoreLineNumbers = ignoreLineNumbers;
+        this.useSimpleNames = useSimpleNames;
+        this.hideArguments = hideArguments;
+        this.showReturnValue = showReturnValue;
+        this.maxSize = maxSize;
+        this.frameFilter = frameFilter == null || frameFilter.isEmpty() ? null : frameFilter;
+    }
+
+    /**
+     * @return The frame table with the formatted names
+     */
+    public FrameTable getFrameTable() {
+        return frameTable;
+    }
+
+    /**
+     * Get the ID of the formatted name of the stack frame.
+     *
+     * @param frame The stack frame
+     * @return The frame ID or -1 if the frame does not have a method or the method is excluded
+     */
+    public int getFrameId(RecordedFrame frame) {
+        RecordedMethod method = frame.getMethod();
+        if (method == null) {
+            return -1;
+        }
+        MethodEntry methodEntry = methodsByIdentity.get(method);
+        if (methodEntry == null) {
+            methodEntry = getMethodEntry(method.getType().getName(), method.getName(), method.getDescriptor());
+            ensureCapacity();
+            methodsByIdentity.put(method, methodEntry);
+            size++;
+        } else if (ignoreLineNumbers) {
+            hits++;
+        }
+        return getFrameId(methodEntry, frame.getLineNumber());
+    }
+
+    /**
+     * Get the ID of the formatted name of a stack frame, which is not read from a recording.
+     *
+     * @param typeName   The qualified name of the type declaring the method
+     * @param methodName The name of the method
+     * @param descriptor The descriptor of the method
+     * @param lineNumber The line number
+     * @return The frame ID or -1 if the method is excluded
+     */
+    public int getFrameId(String typeName, String methodName, String descriptor, int lineNumber) {
+        return getFrameId(getMethodEntry(typeName, methodName, descriptor), lineNumber);
+    }
+
+    private int getFrameId(MethodEntry methodEntry, int lineNumber) {
+        if (ignoreLineNumbers || methodEntry.filtered) {
+            return methodEntry.methodFrameId;
+        }
+        int frameId = methodEntry.getFrameId(lineNumber);
+        if (frameId >= 0) {
+            hits++;
+            return frameId;
+        }
+        misses++;
+        ensureCapacity();
+        frameId = frameTable.intern(methodEntry.methodName + ":" + lineNumber);
+        if (methodEntry.included) {
+            includedFrames.set(frameId);
+        }
+        methodEntry.putFrameId(lineNumber, frameId);
+        size++;
+        return frameId;
+    }
+
+    private MethodEntry getMethodEntry(String typeName, String methodName, String descriptor) {
+        String key = typeName + '.' + methodName + descriptor;
+        MethodEntry methodEntry = methodsByKey.get(key);
+        if (methodEntry == null) {
+            if (ignoreLineNumbers) {
+                misses++;
+                ensureCapacity();
+                size++;
+            }
+            methodEntry = createMethodEntry(typeName, methodName, descriptor);
+            methodsByKey.put(key, methodEntry);
+        } else if (ignoreLineNumbers) {
+            hits++;
+        }
+        return methodEntry;
+    }
+
+    private MethodEntry createMethodEntry(String typeName, String methodName, String descriptor) {
+        FrameFilter.Match match = frameFilter == null ? null : frameFilter.match(typeName, methodName);
+        if (match != null && match.isExcluded()) {
+            return new MethodEntry(null, -1, false, true);
+        }
+        if (match != null && match.getCollapsePattern() != null) {
+            int frameId = frameTable.intern(match.getCollapsePattern());
+            collapsedFrames.set(frameId);
+            if (match.isIncluded()) {
+                includedFrames.set(frameId);
+            }
+            return new MethodEntry(null, frameId, true, true);
+        }
+        boolean included = match != null && match.isIncluded();
+        String formattedName = formatMethod(typeName, methodName, descriptor);
+        int methodFrameId = -1;
+        if (ignoreLineNumbers) {
+            methodFrameId = frameTable.intern(formattedName);
+            if (included) {
+                includedFrames.set(methodFrameId);
+            }
+        }
+        return new MethodEntry(formattedName, methodFrameId, included, false);
+    }
+
+    /**
+     * Add a frame to the top of the stack. A frame without an ID is not added, and a collapsed frame is not added
+     * again on top of the same frame.
+     *
+     * @param stack   The stack
+     * @param frameId The frame ID returned by this cache, or -1
+     */
+    public void push(FrameStack stack, int frameId) {
+        if (frameId < 0) {
+            return;
+        }
+        int depth = stack.getDepth();
+        if (depth > 0 && stack.getFrameId(depth - 1) == frameId && collapsedFrames.get(frameId)) {
+            return;
+        }
+        stack.push(frameId);
+    }
+
+    /**
+     * @return Whether the stack has a frame of an included method, or {@code true} if there are no include patterns
+     */
+    public boolean isSelected(FrameStack stack) {
+        if (frameFilter == null || !frameFilter.hasIncludes()) {
+            return true;
+        }
+        for (int i = stack.getDepth() - 1; i >= 0; i--) {
+            if (includedFrames.get(stack.getFrameId(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void ensureCapacity() {
+        if (size >= maxSize) {
+            methodsByIdentity.clear();
+            methodsByKey.clear();
+            size = 0;
+        }
+    }
+
+    /**
+     * @return The number of frames resolved from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of frames formatted and added to the cache
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of cached frames and methods looked up by identity
+     */
+    public int size() {
+        return size;
+    }
+
+    String formatMethod(RecordedMethod m) {
+        return formatMethod(m.getType().getName(), m.getName(), m.getDescriptor());
+    }
+
+    String formatMethod(String typeName, String methodName, String descriptor) {
+        StringBuilder sb = new StringBuilder();
+        String md = descriptor.replace("/", ".");
+        int parametersEnd = md.lastIndexOf(')');
+        if (showReturnValue && parametersEnd >= 0) {
+            for (String qualifiedName : decodeDescriptors(md.substring(parametersEnd + 1), "")) {
+                sb.append(getSimpleName(qualifiedName));
+                sb.append(" ");
+            }
+        }
+        sb.append(useSimpleNames ? getSimpleName(typeName) : typeName);
+        sb.append(".");
+        sb.append(methodName);
+        sb.append("(");
+        if (!hideArguments && parametersEnd >= 0) {
+            StringJoiner sj = new StringJoiner(", ");
+            String parameter = md.substring(1, parametersEnd);
+            for (String qualifiedName : decodeDescriptors(parameter, "")) {
+                sj.add(getSimpleName(qualifiedName));
+            }
+            sb.append(sj);
+        }
+        sb.append(")");
+        return sb.toString();
+    }
+
+    private static String getSimpleName(String qualifiedName) {
+        return qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
+    }
+
+    static List<String> decodeDescriptors(String descriptor, String arraySize) {
+        List<String> descriptors = new ArrayList<>();
+        for (int index = 0; index < descriptor.length(); index++) {
+            String arrayBrackets = "";
+            while (descriptor.charAt(index) == '[') {
+                arrayBrackets = arrayBrackets + "[" + arraySize + "]";
+                arraySize = "";
+                index++;
+            }
+            char c = descriptor.charAt(index);
+            String type;
+            switch (c) {
+                case 'L':
+                    int endIndex = descriptor.indexOf(';', index);
+                    type = descriptor.substring(index + 1, endIndex);
+                    index = endIndex;
+                    break;
+                case 'I':
+                    type = "int";
+                    break;
+                case 'J':
+                    type = "long";
+                    break;
+                case 'Z':
+                    type = "boolean";
+                    break;
+                case 'D':
+                    type = "double";
+                    break;
+                case 'F':
+                    type = "float";
+                    break;
+                case 'S':
+                    type = "short";
+                    break;
+                case 'C':
+                    type = "char";
+                    break;
+                case 'B':
+                    type = "byte";
+                    break;
+                case 'V':
+                    type = "void";
+                    break;
+                default:
+                    type = "<unknown-descriptor-type>";
+            }
+            descriptors.add(type + arrayBrackets);
+        }
+        return descriptors;
+    }
+
+    /**
+     * Formatted method name and the frame IDs for each line number seen in the method. Line numbers are kept
+     * in a small open addressing table, where a frame ID of zero marks an empty slot and other slots have the
+     * frame ID + 1. An excluded or collapsed method has only the method frame ID.
+     */
+    private static final class MethodEntry {
+
+        final String methodName;
+        final int methodFrameId;
+        final boolean included;
+        final boolean filtered;
+        int[] lineNumbers;
+        int[] frameIds;
+        int count;
+
+        MethodEntry(String methodName, int methodFrameId, boolean included, boolean filtered) {
+            this.methodName = methodName;
+            this.methodFrameId = methodFrameId;
+            this.included = included;
+            this.filtered = filtered;
+        }
+
+        int getFrameId(int lineNumber) {
+            if (frameIds == null) {
+                return -1;
+            }
+            int mask = frameIds.length - 1;
+            int index = hash(lineNumber) & mask;
+            int entry;
+            while ((entry = frameIds[index]) != 0) {
+                if (lineNumbers[index] == lineNumber) {
+                    return entry - 1;
+                }
+                index = (index + 1) & mask;
+            }
+            return -1;
+        }
+
+        void putFrameId(int lineNumber, int frameId) {
+            if (frameIds == null) {
+                lineNumbers = new int[4];
+                frameIds = new int[4];
+            } else if ((count + 1) * 2 > frameIds.length) {
+                int[] oldLineNumbers = lineNumbers;
+                int[] oldFrameIds = frameIds;
+                lineNumbers = new int[oldFrameIds.length * 2];
+                frameIds = new int[oldFrameIds.length * 2];
+                count = 0;
+                for (int i = 0; i < oldFrameIds.length; i++) {
+                    if (oldFrameIds[i] != 0) {
+                        putFrameId(oldLineNumbers[i], oldFrameIds[i] - 1);
+                    }
+                }
+            }
+            int mask = frameIds.length - 1;
+            int index = hash(lineNumber) & mask;
+            while (frameIds[index] != 0) {
+                index = (index + 1) & mask;
+            }
+            lineNumbers[index] = lineNumber;
+            frameIds[index] = frameId + 1;
+            count++;
+        }
+
+        private static int hash(int lineNumber) {
+            int h = lineNumber * 0x9E3779B9;
+            return h ^ (h >>> 16);
+        }
+    }
+}
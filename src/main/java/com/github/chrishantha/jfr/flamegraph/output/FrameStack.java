@@ -0,0 +1,140 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.util.Arrays;
+import java.util.Stack;
+
+/**
+ * The frames of a stack trace.
+ * <p>
+ * Frames are indexed from the bottom of the stack. The frame at index 0 is the outermost frame and the frame at
+ * {@code getDepth() - 1} is the innermost frame.
+ * <p>
+ * The same instance is reused for every event. Output writers can read the frames only during
+ * {@link FlameGraphOutputWriter#processEvent(java.time.Instant, java.time.Instant, java.time.Duration, FrameStack,
+ * long)} and must copy any frame they want to keep.
+ */
+public final class FrameStack {
+
+    private final FrameTable frameTable;
+    private int[] frameIds;
+    private int depth;
+
+    public FrameStack(FrameTable frameTable) {
+        this(frameTable, 64);
+    }
+
+    public FrameStack(FrameTable frameTable, int initialCapacity) {
+        this.frameTable = frameTable;
+        frameIds = new int[Math.max(1, initialCapacity)];
+    }
+
+    /**
+     * @return The number of frames in the stack
+     */
+    public int getDepth() {
+        return depth;
+    }
+
+    /**
+     * Get a frame.
+     *
+     * @param index The index from the bottom of the stack
+     * @return The frame name
+     */
+    public String getFrame(int index) {
+        return frameTable.getName(getFrameId(index));
+    }
+
+    /**
+     * Get the ID of a frame.
+     *
+     * @param index The index from the bottom of the stack
+     * @return The frame ID in the frame table
+     */
+    public int getFrameId(int index) {
+        if (index < 0 || index >= depth) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Depth: " + depth);
+        }
+        return frameIds[index];
+    }
+
+    /**
+     * @return The frame table used to intern the frame names
+     */
+    public FrameTable getFrameTable() {
+        return frameTable;
+    }
+
+    /**
+     * Copy the frames to a new array, from the bottom of the stack to the top.
+     *
+     * @return The frame names
+     */
+    public String[] toArray() {
+        String[] frames = new String[depth];
+        for (int i = 0; i < depth; i++) {
+            frames[i] = frameTable.getName(frameIds[i]);
+        }
+        return frames;
+    }
+
+    /**
+     * Copy the frame IDs to a new array, from the bottom of the stack to the top.
+     *
+     * @return The frame IDs
+     */
+    public int[] toFrameIds() {
+        return Arrays.copyOf(frameIds, depth);
+    }
+
+    /**
+     * Create a {@link Stack} with the frames. The bottom frame is at the top of the created stack, so that popping
+     * returns the frames from the bottom to the top.
+     *
+     * @return A new stack
+     */
+    public Stack<String> toStack() {
+        Stack<String> stack = new Stack<>();
+        for (int i = depth - 1; i >= 0; i--) {
+            stack.push(frameTable.getName(frameIds[i]));
+        }
+        return stack;
+    }
+
+    void clear() {
+        depth = 0;
+    }
+
+    void push(int frameId) {
+        if (depth == frameIds.length) {
+            frameIds = Arrays.copyOf(frameIds, depth * 2);
+        }
+        frameIds[depth++] = frameId;
+    }
+
+    void pop() {
+        depth--;
+    }
+
+    void set(int[] frameIds) {
+        clear();
+        for (int frameId : frameIds) {
+            push(frameId);
+        }
+    }
+}
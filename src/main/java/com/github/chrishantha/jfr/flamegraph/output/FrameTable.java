@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Interns frame names and assigns each unique name an integer ID. IDs start from zero and are assigned in the order
+ * the names are first seen.
+ * <p>
+ * The table is thread safe. The names are read with the same lock as the interning, because the array of names is
+ * replaced when it grows, and the server reads names while other requests intern new names.
+ */
+public final class FrameTable {
+
+    private final Map<String, Integer> ids = new HashMap<>();
+    private String[] names = new String[1024];
+    private int size;
+
+    /**
+     * Get the ID of a frame name, adding the name if it is not in the table.
+     *
+     * @param name The frame name
+     * @return The frame ID
+     */
+    public synchronized int intern(String name) {
+        Integer id = ids.get(name);
+        if (id != null) {
+            return id;
+        }
+        if (size == names.length) {
+            names = Arrays.copyOf(names, size * 2);
+        }
+        names[size] = name;
+        ids.put(name, size);
+        return size++;
+    }
+
+    /**
+     * @param id The frame ID
+     * @return The frame name
+     */
+    public synchronized String getName(int id) {
+        return names[id];
+    }
+
+    public synchronized int size() {
+        return size;
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Decompress a gzip compressed JFR file one chunk at a time.
+ * <p>
+ * The JFR parser reads a file, not a stream. Instead of inflating the whole recording to a temporary file first, a
+ * background thread decompresses the stream and copies each chunk to a separate file, while the chunks copied earlier
+ * are parsed. At most a fixed number of chunk files wait to be parsed, so the disk space used is bounded by the size
+ * of a few chunks. Chunks outside the time range are decompressed, but they are not written.
+ */
+public final class GzipChunkReader implements Closeable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final Chunk END = new Chunk(null, null);
+
+    private final Path gzipPath;
+    private final Path directory;
+    private final long startNanos;
+    private final long endNanos;
+    private final BlockingQueue<Chunk> queue;
+    private final Thread thread;
+
+    private volatile Exception error;
+    private boolean ended;
+
+    /**
+     * A chunk read from the compressed file.
+     */
+    public static final class Chunk {
+
+        private final JFRChunk chunk;
+        private final Path path;
+
+        private Chunk(JFRChunk chunk, Path path) {
+            this.chunk = chunk;
+            this.path = path;
+        }
+
+        /**
+         * @return The chunk header. The offset is the offset in the decompressed file.
+         */
+        public JFRChunk getChunk() {
+            return chunk;
+        }
+
+        /**
+         * @return The file with a copy of the chunk or {@code null} if the chunk is outside the time range. The caller
+         * deletes the file after reading it.
+         */
+        public Path getPath() {
+            return path;
+        }
+    }
+
+    /**
+     * Start decompressing the file.
+     *
+     * @param gzipPath         The compressed JFR file
+     * @param directory        The directory to write the chunk files
+     * @param maxPendingChunks The maximum number of chunks waiting to be read
+     * @param startNanos       The start of the time range in nanoseconds since the epoch
+     * @param endNanos         The end of the time range in nanoseconds since the epoch
+     */
+    public GzipChunkReader(Path gzipPath, Path directory, int maxPendingChunks, long startNanos, long endNanos) {
+        this.gzipPath = gzipPath;
+        this.directory = directory;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+        this.queue = new ArrayBlockingQueue<>(Math.max(1, maxPendingChunks));
+        this.thread = new Thread(this::decompress, "jfr-gzip-reader");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    /**
+     * Check whether a file starts with the gzip magic bytes.
+     *
+     * @param path The file
+     * @return {@code true} if the file is gzip compressed
+     * @throws IOException If the file cannot be read
+     */
+    public static boolean isGzip(Path path) throws IOException {
+        try (InputStream in = Files.newInputStream(path)) {
+            return in.read() == 0x1f && in.read() == 0x8b;
+        }
+    }
+
+    /**
+     * Wait for the next chunk.
+     *
+     * @return The next chunk in the order of the file or {@code null} if there are no more chunks
+     * @throws IOException          If the file cannot be decompressed or it is not a JFR file
+     * @throws InterruptedException If interrupted while waiting
+     */
+    public Chunk next() throws IOException, InterruptedException {
+        if (ended) {
+            return null;
+        }
+        Chunk chunk = queue.take();
+        if (chunk == END) {
+            ended = true;
+            Exception e = error;
+            if (e instanceof IOException) {
+                throw (IOException) e;
+            } else if (e != null) {
+                throw new IOException("Could not decompress " + gzipPath, e);
+            }
+            return null;
+        }
+        return chunk;
+    }
+
+    /**
+     * Stop decompressing. The chunk files which were not returned are deleted.
+     */
+    @Override
+    public void close() throws IOException {
+        thread.interrupt();
+        try {
+            thread.join(TimeUnit.MINUTES.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        Chunk chunk;
+        while ((chunk = queue.poll()) != null) {
+            if (chunk.path != null) {
+                Files.deleteIfExists(chunk.path);
+            }
+        }
+    }
+
+    private void decompress() {
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(gzipPath), BUFFER_SIZE)) {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            ByteBuffer header = ByteBuffer.wrap(buffer, 0, JFRChunk.HEADER_SIZE);
+            long offset = 0;
+            int index = 0;
+            int length;
+            while ((length = readFully(in, buffer, JFRChunk.HEADER_SIZE)) > 0) {
+                if (length < JFRChunk.HEADER_SIZE) {
+                    throw new IOException("Unexpected end of file in chunk header at " + offset);
+                }
+                if (header.getInt(0) != JFRChunk.MAGIC) {
+                    throw new IOException("Not a JFR chunk at offset " + offset + " in " + gzipPath);
+                }
+                long size = header.getLong(8);
+                long chunkStartNanos = header.getLong(32);
+                long durationNanos = header.getLong(40);
+                // A chunk without a size is still being written. Use the rest of the file.
+                long remaining = size > 0 ? size - JFRChunk.HEADER_SIZE : Long.MAX_VALUE;
+                JFRChunk chunk = new JFRChunk(index, offset, size, chunkStartNanos, durationNanos);
+                Path path = null;
+                // The chunk file is deleted if it is not queued
+                boolean queued = false;
+                try {
+                    long copied;
+                    if (chunk.overlaps(startNanos, endNanos)) {
+                        path = Files.createTempFile(directory, "chunk_" + index + "_", ".jfr");
+                        try (OutputStream out = Files.newOutputStream(path)) {
+                            out.write(buffer, 0, JFRChunk.HEADER_SIZE);
+                            copied = copy(in, out, buffer, remaining);
+                        }
+                    } else {
+                        copied = copy(in, null, buffer, remaining);
+                    }
+                    if (size > 0 && copied < remaining) {
+                        throw new IOException("Unexpected end of file in chunk " + index + " of " + gzipPath);
+                    }
+                    if (size <= 0) {
+                        size = copied + JFRChunk.HEADER_SIZE;
+                        chunk = new JFRChunk(index, offset, size, chunkStartNanos, durationNanos);
+                    }
+                    queue.put(new Chunk(chunk, path));
+                    queued = true;
+                } finally {
+                    if (!queued && path != null) {
+                        Files.deleteIfExists(path);
+                    }
+                }
+                offset += size;
+                index++;
+            }
+        } catch (InterruptedException e) {
+            return;
+        } catch (Exception e) {
+            error = e;
+        }
+        try {
+            queue.put(END);
+        } catch (InterruptedException ignored) {
+            // Closed
+        }
+    }
+
+    private static int readFully(InputStream in, byte[] buffer, int length) throws IOException {
+        int position = 0;
+        while (position < length) {
+            int read = in.read(buffer, position, length - position);
+            if (read < 0) {
+                break;
+            }
+            position += read;
+        }
+        return position;
+    }
+
+    /**
+     * Copy bytes from the stream, or skip them if there is no output stream.
+     *
+     * @return The number of bytes copied, which is less than the given length only at the end of the stream
+     */
+    private static long copy(InputStream in, OutputStream out, byte[] buffer, long length) throws IOException {
+        long copied = 0;
+        while (copied < length) {
+            int read = in.read(buffer, 0, (int) Math.min(buffer.length, length - copied));
+            if (read < 0) {
+                break;
+            }
+            if (out != null) {
+                out.write(buffer, 0, read);
+            }
+            copied += read;
+        }
+        return copied;
+    }
+}
@@ -0,0 +1,82 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.util.Arrays;
+
+/**
+ * Keeps the nodes of stack trees in primitive arrays on the heap. The fields of a node are next to each other.
+ */
+public final class HeapStackNodeStore extends StackNodeStore {
+
+    private int[] ints;
+    private long[] longs;
+    private int[] childTable = new int[0];
+
+    /**
+     * @param initialCapacity The initial number of nodes
+     */
+    public HeapStackNodeStore(int initialCapacity) {
+        int capacity = Math.max(2, initialCapacity);
+        ints = new int[capacity * INT_FIELDS];
+        longs = new long[capacity * LONG_FIELDS];
+    }
+
+    @Override
+    int getInt(int node, int field) {
+        return ints[node * INT_FIELDS + field];
+    }
+
+    @Override
+    void setInt(int node, int field, int value) {
+        ints[node * INT_FIELDS + field] = value;
+    }
+
+    @Override
+    long getLong(int node, int field) {
+        return longs[node * LONG_FIELDS + field];
+    }
+
+    @Override
+    void setLong(int node, int field, long value) {
+        longs[node * LONG_FIELDS + field] = value;
+    }
+
+    @Override
+    void ensureCapacity(int nodes) {
+        int capacity = ints.length / INT_FIELDS;
+        if (nodes > capacity) {
+            capacity = Math.max(nodes, capacity * 2);
+            ints = Arrays.copyOf(ints, capacity * INT_FIELDS);
+            longs = Arrays.copyOf(longs, capacity * LONG_FIELDS);
+        }
+    }
+
+    @Override
+    int getChildSlot(int index) {
+        return childTable[index];
+    }
+
+    @Override
+    void setChildSlot(int index, int value) {
+        childTable[index] = value;
+    }
+
+    @Override
+    void newChildTable(int capacity) {
+        childTable = new int[capacity];
+    }
+}
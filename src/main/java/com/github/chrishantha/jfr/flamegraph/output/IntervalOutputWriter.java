@@ -0,0 +1,108 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Split events into fixed time intervals and create an output for each interval.
+ * <p>
+ * Each interval has its own output writer, created when the first event in the interval is processed. The output of
+ * each interval is written to a file named {@code flamegraph-<start>-<end>.<output type>} in the output directory,
+ * where the start and end are seconds since the epoch. The output of this writer lists the start, end and file of
+ * each interval, one line per interval.
+ */
+public class IntervalOutputWriter implements FlameGraphOutputWriter {
+
+    private static final long NANOS_PER_SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    private final OutputType outputType;
+    private final long intervalNanos;
+    private final long originNanos;
+    private final File outputDirectory;
+
+    private final Map<Long, FlameGraphOutputWriter> intervalWriters = new TreeMap<>();
+
+    private long endNanos;
+    private OutputWriterParameters parameters;
+
+    /**
+     * @param outputType      The output type of each interval
+     * @param intervalNanos   The length of each interval in nanoseconds
+     * @param originNanos     The start of the first interval in nanoseconds since the epoch
+     * @param endNanos        The end of the last interval in nanoseconds since the epoch. The end is extended if
+     *                        there are later events.
+     * @param outputDirectory The directory to write the output of each interval
+     */
+    public IntervalOutputWriter(OutputType outputType, long intervalNanos, long originNanos, long endNanos,
+                                File outputDirectory) {
+        if (intervalNanos <= 0) {
+            throw new IllegalArgumentException("Interval must be positive");
+        }
+        this.outputType = outputType;
+        this.intervalNanos = intervalNanos;
+        this.originNanos = originNanos;
+        this.endNanos = endNanos;
+        this.outputDirectory = outputDirectory;
+    }
+
+    @Override
+    public void initialize(OutputWriterParameters parameters) {
+        this.parameters = parameters;
+    }
+
+    @Override
+    public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, FrameStack stack,
+                             long value) {
+        long startNanos = TimeUnit.SECONDS.toNanos(startTimestamp.getEpochSecond()) + startTimestamp.getNano();
+        long interval = Math.floorDiv(startNanos - originNanos, intervalNanos);
+        endNanos = Math.max(endNanos, TimeUnit.SECONDS.toNanos(endTimestamp.getEpochSecond()) + endTimestamp.getNano());
+        FlameGraphOutputWriter intervalWriter = intervalWriters.get(interval);
+        if (intervalWriter == null) {
+            intervalWriter = outputType.createFlameGraphOutputWriter();
+            intervalWriter.initialize(parameters);
+            intervalWriters.put(interval, intervalWriter);
+        }
+        intervalWriter.processEvent(startTimestamp, endTimestamp, duration, stack, value);
+    }
+
+    @Override
+    public void writeOutput(BufferedWriter bufferedWriter) throws IOException {
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Could not create the output directory " + outputDirectory);
+        }
+        for (Map.Entry<Long, FlameGraphOutputWriter> entry : intervalWriters.entrySet()) {
+            long intervalStartNanos = originNanos + entry.getKey() * intervalNanos;
+            long intervalEndNanos = Math.min(intervalStartNanos + intervalNanos, endNanos);
+            long start = Math.floorDiv(intervalStartNanos, NANOS_PER_SECOND);
+            long end = -Math.floorDiv(-intervalEndNanos, NANOS_PER_SECOND);
+            File file = new File(outputDirectory, "flamegraph-" + start + "-" + end + "." + outputType);
+            try (BufferedWriter intervalWriter = new BufferedWriter(new FileWriter(file))) {
+                entry.getValue().writeOutput(intervalWriter);
+            }
+            bufferedWriter.write(start + " " + end + " " + file.getPath());
+            bufferedWriter.newLine();
+        }
+    }
+}
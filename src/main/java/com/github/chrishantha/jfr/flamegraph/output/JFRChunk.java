@@ -0,0 +1,161 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A chunk in a JFR file.
+ * <p>
+ * A JFR file is a sequence of self-contained chunks. Each chunk starts with a header, which has the size of the
+ * chunk and the time range of the events in the chunk. The chunks can be copied to separate files and parsed
+ * independently.
+ */
+public final class JFRChunk {
+
+    /**
+     * Size of the chunk header fields used by this class
+     */
+    static final int HEADER_SIZE = 56;
+
+    static final int MAGIC = 0x464c5200; // "FLR\0"
+
+    private final int index;
+    private final long offset;
+    private final long size;
+    private final long startNanos;
+    private final long durationNanos;
+
+    JFRChunk(int index, long offset, long size, long startNanos, long durationNanos) {
+        this.index = index;
+        this.offset = offset;
+        this.size = size;
+        this.startNanos = startNanos;
+        this.durationNanos = durationNanos;
+    }
+
+    /**
+     * Read the chunk headers in a JFR file.
+     *
+     * @param path The JFR file
+     * @return The chunks in the order of the file
+     * @throws IOException If the file cannot be read or it is not a JFR file
+     */
+    public static List<JFRChunk> readChunks(Path path) throws IOException {
+        List<JFRChunk> chunks = new ArrayList<>();
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            long fileSize = channel.size();
+            long offset = 0;
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (offset + HEADER_SIZE <= fileSize) {
+                header.clear();
+                while (header.hasRemaining()) {
+                    if (channel.read(header, offset + header.position()) < 0) {
+                        throw new IOException("Unexpected end of file in chunk header at " + offset);
+                    }
+                }
+                header.flip();
+                if (header.getInt(0) != MAGIC) {
+                    throw new IOException("Not a JFR chunk at offset " + offset + " in " + path);
+                }
+                long size = header.getLong(8);
+                if (size <= 0 || offset + size > fileSize) {
+                    // The chunk is still being written. Use the rest of the file.
+                    size = fileSize - offset;
+                }
+                chunks.add(new JFRChunk(chunks.size(), offset, size, header.getLong(32), header.getLong(40)));
+                offset += size;
+            }
+        }
+        return chunks;
+    }
+
+    /**
+     * Copy the chunk to a new file, which can be read as a recording.
+     *
+     * @param source    The JFR file containing this chunk
+     * @param directory The directory to create the file
+     * @return The new file
+     * @throws IOException If the chunk cannot be copied
+     */
+    public Path extract(Path source, Path directory) throws IOException {
+        Path target = Files.createTempFile(directory, "chunk_" + index + "_", ".jfr");
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(target, StandardOpenOption.WRITE)) {
+            long position = 0;
+            while (position < size) {
+                long transferred = in.transferTo(offset + position, size - position, out);
+                if (transferred <= 0) {
+                    throw new IOException("Unexpected end of file in chunk " + index + " of " + source);
+                }
+                position += transferred;
+            }
+        }
+        return target;
+    }
+
+    /**
+     * Check whether the chunk overlaps a time range. A chunk without a duration is still being written and overlaps
+     * any time range after its start.
+     *
+     * @param startNanos The start of the time range in nanoseconds since the epoch
+     * @param endNanos   The end of the time range in nanoseconds since the epoch
+     * @return {@code true} if the chunk may have events in the time range
+     */
+    public boolean overlaps(long startNanos, long endNanos) {
+        return this.startNanos <= endNanos && (durationNanos <= 0 || getEndNanos() >= startNanos);
+    }
+
+    public int getIndex() {
+        return index;
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * @return Start time of the chunk in nanoseconds since the epoch
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return Duration of the chunk in nanoseconds
+     */
+    public long getDurationNanos() {
+        return durationNanos;
+    }
+
+    /**
+     * @return End time of the chunk in nanoseconds since the epoch
+     */
+    public long getEndNanos() {
+        return startNanos + durationNanos;
+    }
+}
@@ -0,0 +1,99 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Find the JFR files given in the command line.
+ */
+final class JFRFiles {
+
+    /**
+     * The JFR files in a directory
+     */
+    static final String JFR_FILE_PATTERN = "*.{jfr,jfr.gz}";
+
+    private JFRFiles() {
+    }
+
+    /**
+     * Find the JFR files given in an option. A directory is replaced by the JFR files in it, and a glob pattern is
+     * replaced by the matching files, in the order of the file names.
+     *
+     * @param jfrdumps The files, directories and glob patterns
+     * @return The JFR files without duplicates
+     * @throws IOException If a directory or a glob pattern does not have JFR files
+     */
+    static List<Path> find(List<String> jfrdumps) throws IOException {
+        Set<Path> jfrPaths = new LinkedHashSet<>();
+        for (String jfrdump : jfrdumps) {
+            int globIndex = indexOfGlob(jfrdump);
+            List<Path> matchingPaths;
+            if (globIndex >= 0) {
+                // The directory is the part of the pattern before the first glob character
+                int separatorIndex = jfrdump.lastIndexOf(File.separatorChar, globIndex);
+                Path directory = Paths.get(separatorIndex < 0 ? "." : jfrdump.substring(0, separatorIndex + 1));
+                matchingPaths = findFiles(directory, jfrdump.substring(separatorIndex + 1));
+            } else if (Files.isDirectory(Paths.get(jfrdump))) {
+                matchingPaths = findFiles(Paths.get(jfrdump), JFR_FILE_PATTERN);
+            } else {
+                jfrPaths.add(Paths.get(jfrdump));
+                continue;
+            }
+            if (matchingPaths.isEmpty()) {
+                throw new IOException("No JFR files found in " + jfrdump);
+            }
+            jfrPaths.addAll(matchingPaths);
+        }
+        return new ArrayList<>(jfrPaths);
+    }
+
+    private static int indexOfGlob(String path) {
+        for (int i = 0; i < path.length(); i++) {
+            if ("*?[{".indexOf(path.charAt(i)) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Find the regular files matching a glob pattern relative to a directory.
+     */
+    private static List<Path> findFiles(Path directory, String pattern) throws IOException {
+        PathMatcher pathMatcher = directory.getFileSystem().getPathMatcher("glob:" + pattern);
+        int maxDepth = pattern.contains("**") ? Integer.MAX_VALUE
+                : (int) pattern.chars().filter(c -> c == File.separatorChar).count() + 1;
+        try (Stream<Path> paths = Files.walk(directory, maxDepth)) {
+            return paths.filter(Files::isRegularFile)
+                    .filter(path -> pathMatcher.matches(directory.relativize(path)))
+                    .sorted()
+                    .collect(Collectors.toList());
+        }
+    }
+}
@@ -20,25 +20,33 @@ import jdk.jfr.consumer.*;
 
 import java.io.BufferedWriter;
 import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.FileWriter;
 import java.io.IOException;
 import java.io.PrintWriter;
-import java.io.Writer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 import java.text.MessageFormat;
 import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.time.format.FormatStyle;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Stack;
-import java.util.StringJoiner;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
-import java.util.stream.Collectors;
-import java.util.zip.GZIPInputStream;
 
 /**
  * Parse JFR dump and create a compatible output for Flame Graph
@@ -49,8 +57,32 @@ public final class JFRToFlameGraphWriter {
     @Parameter(names = {"-h", "--help"}, description = "Display Help", help = true)
     boolean help;
 
-    @Parameter(names = {"-f", "--jfrdump"}, description = "Java Flight Recorder Dump", required = true)
-    File jfrdump;
+    @Parameter(names = {"-f", "--jfrdump"}, description = "Java Flight Recorder Dumps. A directory selects the JFR files in it and a glob pattern selects the matching files. The events of all files are merged", required = true, variableArity = true)
+    List<String> jfrdumps = new ArrayList<>();
+
+    @Parameter(names = {"-b", "--baseline"}, description = "Baseline Java Flight Recorder Dumps, given as in -f. Create a differential output of the JFR files given with -f against the baseline", variableArity = true)
+    List<String> baselineJfrdumps = new ArrayList<>();
+
+    @Parameter(names = {"-tn", "--thread-name"}, description = "Use only the events of the threads with names matching the regular expression")
+    String threadNameRegex;
+
+    @Parameter(names = {"-tg", "--thread-group"}, description = "Use only the events of the threads in the thread groups with names matching the regular expression")
+    String threadGroupRegex;
+
+    @Parameter(names = {"-tf", "--thread-frames"}, description = "Add the name of the thread as the bottom frame of each stack")
+    boolean threadFrames;
+
+    @Parameter(names = {"-fi", "--include"}, description = "Use only the stacks with a frame of a method with the qualified name starting with one of the given prefixes")
+    List<String> includeFrames = new ArrayList<>();
+
+    @Parameter(names = {"-fx", "--exclude"}, description = "Remove the frames of the methods with the qualified names starting with one of the given prefixes")
+    List<String> excludeFrames = new ArrayList<>();
+
+    @Parameter(names = {"-fc", "--collapse"}, description = "Replace adjacent frames of the methods with the qualified names starting with one of the given prefixes with one frame named with the prefix")
+    List<String> collapseFrames = new ArrayList<>();
+
+    @Parameter(names = {"-fp", "--file-name-prefix"}, description = "Add the name of the JFR file as the bottom frame of each stack")
+    boolean fileNamePrefix;
 
     @Parameter(names = {"-ot", "--output-type"}, description = "Output type")
     OutputType outputType = OutputType.FOLDED;
@@ -58,7 +90,7 @@ public final class JFRToFlameGraphWriter {
     @Parameter(names = {"-o", "--output"}, description = "Output file")
     File outputFile;
 
-    @Parameter(names = {"-d", "--decompress"}, description = "Decompress the JFR file")
+    @Parameter(names = {"-d", "--decompress"}, description = "Decompress the JFR file. Gzip compressed files are detected automatically")
     boolean decompress;
 
     @Parameter(names = {"-i", "--ignore-line-numbers"}, description = "Ignore Line Numbers in Stack Frame")
@@ -86,114 +118,854 @@ public final class JFRToFlameGraphWriter {
     @Parameter(names = {"-et", "--end-timestamp"}, description = "End timestamp in seconds for filtering", converter = SecondsToNanosConverter.class)
     long endTimestamp = Long.MAX_VALUE;
 
-    @Parameter(names = {"-e",
-            "--event"}, description = "Type of event used to generate the flamegraph", converter = EventType.EventTypeConverter.class)
-    EventType eventType = EventType.METHOD_PROFILING_SAMPLE;
+    @Parameter(names = {"-ci", "--cache-chunk-index"}, description = "Cache the time range of each chunk in a file next to the JFR file")
+    boolean cacheChunkIndex;
+
+    @Parameter(names = {"-ec", "--print-event-counts"}, description = "Print the number of events of each type skipped and consumed to the standard error")
+    boolean printEventCounts;
+
+    @Parameter(names = {"-pc", "--profile-cache"}, description = "Cache the profile of the JFR file in a file next to the JFR file and create the flamegraphs from the cache")
+    boolean useProfileCache;
+
+    @Parameter(names = {"-th", "--threads"}, description = "Number of threads to parse the chunks of the JFR file, or the JFR files, in parallel")
+    int threads = 1;
+
+    @Parameter(names = {"-in", "--interval"}, description = "Create an output for each interval of the given seconds in the output directory", converter = SecondsToNanosConverter.class)
+    long interval;
+
+    @Parameter(names = {"-w", "--follow"}, description = "Follow the JFR repository directory given with -f. The completed chunk files are parsed as they are written and the output is written again at each refresh interval")
+    boolean follow;
+
+    @Parameter(names = {"-s", "--stream"}, description = "Stream the events of a running JVM. -f is the JFR repository directory or the process ID of a local JVM with a recording. The output is written again at each refresh interval")
+    boolean stream;
 
-    private static final String EVENT_VALUE_STACK = "stackTrace";
+    @Parameter(names = {"-ri", "--refresh-interval"}, description = "Seconds between writing the output in the follow and stream modes", converter = SecondsToNanosConverter.class)
+    long refreshInterval = TimeUnit.SECONDS.toNanos(10);
+
+    @Parameter(names = {"-rw", "--rolling-window"}, description = "Write only the events of the last given seconds of the recording in the follow and stream modes", converter = SecondsToNanosConverter.class)
+    long rollingWindow;
+
+    @Parameter(names = {"-sv", "--serve"}, description = "Serve the flamegraphs of the JFR file over HTTP on the given port. The flamegraphs are created from the profile cache of the JFR file")
+    int servePort = -1;
+
+    @Parameter(names = {"-sa", "--serve-address"}, description = "The address the server listens on. The default is the loopback address. The server does not authenticate requests, so use another address only on a trusted network")
+    String serveAddress;
+
+    @Parameter(names = {"-pv", "--preview"}, description = "Read only every given chunk of the JFR files and scale the values by the size of all chunks to the size of the chunks read. The estimates of the top frames are printed to the standard error")
+    int previewStride;
+
+    @Parameter(names = {"-e",
+            "--event"}, description = "Types of events used to generate the flamegraphs. With more than one type, the output of each type is written to the output directory", converter = EventType.EventTypeConverter.class)
+    List<EventType> eventTypes = new ArrayList<>(Collections.singletonList(EventType.METHOD_PROFILING_SAMPLE));
 
     private static final String PRINT_FORMAT = "%-16s: %s%n";
 
     private static final String DURATION_FORMAT = "{0} h {1} min";
 
+    private static final String EVENT_COUNTS_FORMAT = "%-48s %12s %12s%n";
+
+    /**
+     * The number of events read and consumed by event type name
+     */
+    private final Map<String, long[]> eventCounts = new TreeMap<>();
+
+    /**
+     * The filter of the threads given in the options
+     */
+    private ThreadFilter threadFilter;
+
+    /**
+     * The filter of the frames given in the options
+     */
+    private FrameFilter frameFilter;
+
+    /**
+     * The conversion with these options, which is used by the modes with their own classes
+     */
+    private final ConversionContext conversionContext = new OptionsConversionContext();
+
     public JFRToFlameGraphWriter(OutputWriterParameters parameters) {
         this.parameters = parameters;
     }
 
     public void process() throws Exception {
-        RecordingFile recording = loadRecording();
-
+        threadFilter = new ThreadFilter(threadNameRegex, threadGroupRegex);
+        frameFilter = new FrameFilter(includeFrames, excludeFrames, collapseFrames);
+        if (stream) {
+            if (jfrdumps.size() != 1) {
+                throw new IllegalArgumentException("The stream mode needs one JFR repository directory or process ID");
+            }
+            if (outputFile == null) {
+                throw new IllegalArgumentException("The stream mode needs an output file or directory");
+            }
+            new RepositoryStreamer(conversionContext, RepositoryStreamer.findRepository(jfrdumps.get(0)),
+                    refreshInterval, rollingWindow).stream(getEventTypes());
+            return;
+        }
+        if (follow) {
+            Path directory = Paths.get(jfrdumps.get(0));
+            if (jfrdumps.size() != 1 || !Files.isDirectory(directory)) {
+                throw new IllegalArgumentException("The follow mode needs one JFR repository directory");
+            }
+            if (outputFile == null) {
+                throw new IllegalArgumentException("The follow mode needs an output file or directory");
+            }
+            new RepositoryFollower(conversionContext, directory, refreshInterval, rollingWindow)
+                    .follow(getEventTypes());
+            return;
+        }
+        List<Path> jfrPaths = JFRFiles.find(jfrdumps);
         if (printJFRDetails) {
-            printJFRDetails(recording);
+            EventTimeRange eventTimeRange = new EventTimeRange();
+            for (Path jfrPath : jfrPaths) {
+                if (isCompressed(jfrPath)) {
+                    readCompressedEventTimeRange(jfrPath, eventTimeRange);
+                } else {
+                    try (RecordingFile recording = loadRecording(jfrPath)) {
+                        eventTimeRange.update(recording);
+                    }
+                }
+            }
+            printJFRDetails(eventTimeRange);
+            return;
+        }
+        if (servePort >= 0) {
+            if (jfrPaths.size() != 1) {
+                throw new IllegalArgumentException("The server needs one JFR file");
+            }
+            new ProfileCacheServer(conversionContext, parameters, threads).serve(jfrPaths.get(0), serveAddress,
+                    servePort);
+            return;
+        }
+        if (!baselineJfrdumps.isEmpty()) {
+            if (interval > 0) {
+                throw new IllegalArgumentException("The differential output does not support intervals");
+            }
+            new DifferentialConverter(conversionContext, outputType, parameters, threads)
+                    .diff(JFRFiles.find(baselineJfrdumps), jfrPaths, getEventTypes());
+            return;
+        }
+        if (previewStride > 0) {
+            if (useProfileCache || interval > 0) {
+                throw new IllegalArgumentException("The preview mode does not support the profile cache and intervals");
+            }
+            new PreviewConverter(conversionContext, previewStride, threads).preview(jfrPaths, getEventTypes());
+            return;
+        }
+        List<EventType> eventTypes = getEventTypes();
+        FrameTable frameTable = new FrameTable();
+        FlameGraphOutputWriter[] flameGraphOutputWriters;
+        if (jfrPaths.size() == 1) {
+            Path jfrPath = jfrPaths.get(0);
+            int bottomFrameId = getBottomFrameId(jfrPath, frameTable);
+            flameGraphOutputWriters = convertFile(jfrPath, eventTypes, frameTable, threads,
+                    (startNanos, endNanos) -> BottomFrameOutputWriter.addBottomFrame(
+                            createOutputWriters(eventTypes, startNanos, endNanos), bottomFrameId));
+        } else {
+            flameGraphOutputWriters = new MultiFileConverter(conversionContext, threads).convert(jfrPaths, eventTypes,
+                    frameTable);
+        }
+        writeOutput(eventTypes, flameGraphOutputWriters);
+        printEventCounts();
+    }
+
+    private boolean isCompressed(Path jfrPath) throws IOException {
+        return decompress || GzipChunkReader.isGzip(jfrPath);
+    }
+
+    /**
+     * Convert the events of a JFR file.
+     *
+     * @param chunkThreads The number of threads to parse the chunks in parallel
+     * @return The output writers created by the factory
+     */
+    private FlameGraphOutputWriter[] convertFile(Path jfrPath, List<EventType> eventTypes, FrameTable frameTable,
+                                                 int chunkThreads, OutputWriterFactory outputWriterFactory)
+            throws Exception {
+        boolean compressed = isCompressed(jfrPath);
+        if (useProfileCache) {
+            return convertWithProfileCache(jfrPath, compressed, eventTypes, frameTable, chunkThreads,
+                    outputWriterFactory);
+        } else if (compressed) {
+            return convertCompressedToStacks(jfrPath, eventTypes, frameTable, chunkThreads, outputWriterFactory);
         } else {
-            convertToStacks(recording);
+            return convertToStacks(jfrPath, eventTypes, frameTable, chunkThreads, outputWriterFactory);
+        }
+    }
+
+    /**
+     * @return The frame ID of the file name if the file name is added to the stacks, or -1
+     */
+    private int getBottomFrameId(Path jfrPath, FrameTable frameTable) {
+        if (!fileNamePrefix) {
+            return -1;
         }
+        String fileName = jfrPath.getFileName().toString();
+        if (fileName.endsWith(".gz")) {
+            fileName = fileName.substring(0, fileName.length() - ".gz".length());
+        }
+        if (fileName.endsWith(".jfr")) {
+            fileName = fileName.substring(0, fileName.length() - ".jfr".length());
+        }
+        return frameTable.intern(fileName);
     }
 
-    private RecordingFile loadRecording() throws IOException {
+    private RecordingFile loadRecording(Path jfrPath) throws IOException {
         RecordingFile recording;
         try {
-            recording = new RecordingFile(jfrdump.toPath());
+            recording = new RecordingFile(jfrPath);
         } catch (Exception e) {
-            System.err.println("Could not load the JFR file.");
-            if (!decompress) {
-                System.err.println("If the JFR file is compressed, try the decompress option");
-            }
+            printLoadError();
             throw e;
         }
         return recording;
     }
 
-    private void convertToStacks(RecordingFile recording) throws IOException {
+    private ChunkIndex loadChunkIndex(Path jfrPath) throws IOException {
+        try {
+            return ChunkIndex.load(jfrPath, cacheChunkIndex);
+        } catch (IOException e) {
+            printLoadError();
+            throw e;
+        }
+    }
+
+    private void printLoadError() {
+        System.err.println("Could not load the JFR file.");
+    }
+
+    /**
+     * Convert the events in the chunks overlapping the time range. The whole file is read only if all chunks overlap
+     * the time range.
+     */
+    private FlameGraphOutputWriter[] convertToStacks(Path jfrPath, List<EventType> eventTypes, FrameTable frameTable,
+                                                     int chunkThreads, OutputWriterFactory outputWriterFactory)
+            throws Exception {
+        ChunkIndex chunkIndex = loadChunkIndex(jfrPath);
+        List<JFRChunk> chunks = chunkIndex.getChunks(startTimestamp, endTimestamp, eventTypes);
+
+        FlameGraphOutputWriter[] flameGraphOutputWriters = outputWriterFactory.create(chunkIndex.getStartNanos(),
+                chunkIndex.getEndNanos());
+
+        if (chunkThreads > 1) {
+            convertChunksInParallel(jfrPath, chunks, eventTypes, frameTable, chunkThreads, flameGraphOutputWriters);
+        } else if (chunks.size() == chunkIndex.getChunks().size()) {
+            try (RecordingFile recording = loadRecording(jfrPath)) {
+                readEvents(recording, eventTypes, createFrameNameCache(frameTable), new FrameStack(frameTable),
+                        writerConsumer(flameGraphOutputWriters));
+            }
+        } else {
+            convertChunks(jfrPath, chunks, eventTypes, frameTable, flameGraphOutputWriters);
+        }
+        return flameGraphOutputWriters;
+    }
 
-//        System.out.println(recording.readEventTypes().stream().map(e -> e.getName()).collect(Collectors.toList()));
+    /**
+     * @return The selected event types without duplicates
+     */
+    private List<EventType> getEventTypes() {
+        return new ArrayList<>(new LinkedHashSet<>(eventTypes));
+    }
 
-        FlameGraphOutputWriter flameGraphOutputWriter = outputType.createFlameGraphOutputWriter();
-        flameGraphOutputWriter.initialize(parameters);
+    /**
+     * Read the events of each chunk from a copy of the chunk.
+     */
+    private void convertChunks(Path jfrPath, List<JFRChunk> chunks, List<EventType> eventTypes, FrameTable frameTable,
+                               FlameGraphOutputWriter[] flameGraphOutputWriters) throws IOException {
+        FrameNameCache frameNameCache = createFrameNameCache(frameTable);
+        FrameStack frameStack = new FrameStack(frameTable);
+        EventConsumer eventConsumer = writerConsumer(flameGraphOutputWriters);
+        Path tempDirectory = Files.createTempDirectory("jfr_chunks_");
+        try {
+            for (JFRChunk chunk : chunks) {
+                Path chunkPath = chunk.extract(jfrPath, tempDirectory);
+                try (RecordingFile recording = new RecordingFile(chunkPath)) {
+                    readEvents(recording, eventTypes, frameNameCache, frameStack, eventConsumer);
+                } finally {
+                    Files.deleteIfExists(chunkPath);
+                }
+            }
+        } finally {
+            deleteDirectory(tempDirectory);
+        }
+    }
+
+    /**
+     * Parse each chunk in a separate task and merge the partial aggregates in the order of the chunks.
+     */
+    private void convertChunksInParallel(Path jfrPath, List<JFRChunk> chunks, List<EventType> eventTypes,
+                                         FrameTable frameTable, int chunkThreads,
+                                         FlameGraphOutputWriter[] flameGraphOutputWriters) throws Exception {
+        Path tempDirectory = Files.createTempDirectory("jfr_chunks_");
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(chunkThreads,
+                chunks.size())));
+        try {
+            List<Future<StackAggregate[]>> futures = new ArrayList<>(chunks.size());
+            for (JFRChunk chunk : chunks) {
+                futures.add(executorService.submit(() -> aggregateChunk(chunk.extract(jfrPath, tempDirectory),
+                        eventTypes, frameTable)));
+            }
+            for (Future<StackAggregate[]> future : futures) {
+                writeAggregates(future.get(), flameGraphOutputWriters);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            executorService.shutdownNow();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+            deleteDirectory(tempDirectory);
+        }
+    }
+
+    /**
+     * Aggregate the events in a chunk file. The file is deleted after it is read.
+     *
+     * @return The aggregate of each event type
+     */
+    private StackAggregate[] aggregateChunk(Path chunkPath, List<EventType> eventTypes, FrameTable frameTable)
+            throws IOException {
+        StackAggregate[] stackAggregates = new StackAggregate[eventTypes.size()];
+        for (int i = 0; i < stackAggregates.length; i++) {
+            stackAggregates[i] = new StackAggregate(frameTable);
+        }
+        try (RecordingFile recording = new RecordingFile(chunkPath)) {
+            readEvents(recording, eventTypes, createFrameNameCache(frameTable), new FrameStack(frameTable),
+                    (target, event, stack, value) -> stackAggregates[target].add(event.getStartTime(),
+                            event.getDuration(), stack, value));
+        } finally {
+            Files.deleteIfExists(chunkPath);
+        }
+        return stackAggregates;
+    }
+
+    static void writeAggregates(StackAggregate[] stackAggregates,
+                                        FlameGraphOutputWriter[] flameGraphOutputWriters) {
+        for (int i = 0; i < stackAggregates.length; i++) {
+            stackAggregates[i].writeTo(flameGraphOutputWriters[i]);
+        }
+    }
+
+    /**
+     * Convert the events in a gzip compressed JFR file while it is decompressed. The chunks are parsed in the order
+     * they are decompressed. With more than one thread, the chunks are aggregated in parallel and the number of chunks
+     * waiting to be aggregated is limited to the number of threads.
+     */
+    private FlameGraphOutputWriter[] convertCompressedToStacks(Path jfrPath, List<EventType> eventTypes,
+                                                               FrameTable frameTable, int chunkThreads,
+                                                               OutputWriterFactory outputWriterFactory)
+            throws Exception {
+        FrameNameCache frameNameCache = createFrameNameCache(frameTable);
+        FrameStack frameStack = new FrameStack(frameTable);
+        FlameGraphOutputWriter[] flameGraphOutputWriters = null;
+        EventConsumer eventConsumer = null;
+
+        Path tempDirectory = Files.createTempDirectory("jfr_chunks_");
+        ExecutorService executorService = chunkThreads > 1 ? Executors.newFixedThreadPool(chunkThreads) : null;
+        Deque<Future<StackAggregate[]>> futures = new ArrayDeque<>();
+        try (GzipChunkReader reader = new GzipChunkReader(jfrPath, tempDirectory, Math.max(2, chunkThreads),
+                startTimestamp, ChunkIndex.getSelectionEndNanos(endTimestamp, eventTypes))) {
+            GzipChunkReader.Chunk chunk;
+            while ((chunk = reader.next()) != null) {
+                if (flameGraphOutputWriters == null) {
+                    flameGraphOutputWriters = outputWriterFactory.create(chunk.getChunk().getStartNanos(),
+                            chunk.getChunk().getEndNanos());
+                    eventConsumer = writerConsumer(flameGraphOutputWriters);
+                }
+                Path chunkPath = chunk.getPath();
+                if (chunkPath == null) {
+                    continue;
+                }
+                if (executorService == null) {
+                    try (RecordingFile recording = new RecordingFile(chunkPath)) {
+                        readEvents(recording, eventTypes, frameNameCache, frameStack, eventConsumer);
+                    } finally {
+                        Files.deleteIfExists(chunkPath);
+                    }
+                } else {
+                    if (futures.size() >= chunkThreads) {
+                        writeAggregates(futures.removeFirst().get(), flameGraphOutputWriters);
+                    }
+                    futures.addLast(executorService.submit(() -> aggregateChunk(chunkPath, eventTypes, frameTable)));
+                }
+            }
+            while (!futures.isEmpty()) {
+                writeAggregates(futures.removeFirst().get(), flameGraphOutputWriters);
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } catch (IOException e) {
+            printLoadError();
+            throw e;
+        } finally {
+            if (executorService != null) {
+                executorService.shutdownNow();
+                executorService.awaitTermination(1, TimeUnit.MINUTES);
+            }
+            deleteDirectory(tempDirectory);
+        }
+
+        if (flameGraphOutputWriters == null) {
+            flameGraphOutputWriters = outputWriterFactory.create(0, 0);
+        }
+        return flameGraphOutputWriters;
+    }
+
+    /**
+     * Create the flame graphs from the profile cache. The cache is written first if there is no cache or the cache is
+     * out of date.
+     */
+    private FlameGraphOutputWriter[] convertWithProfileCache(Path jfrPath, boolean compressed,
+                                                             List<EventType> eventTypes, FrameTable frameTable,
+                                                             int chunkThreads,
+                                                             OutputWriterFactory outputWriterFactory)
+            throws Exception {
+        ProfileCache profileCache = openProfileCache(jfrPath, compressed);
+        if (profileCache == null) {
+            if (compressed) {
+                return convertCompressedToStacks(jfrPath, eventTypes, frameTable, chunkThreads, outputWriterFactory);
+            } else {
+                return convertToStacks(jfrPath, eventTypes, frameTable, chunkThreads, outputWriterFactory);
+            }
+        }
+        return convertCachedToStacks(profileCache, eventTypes, frameTable, outputWriterFactory);
+    }
+
+    /**
+     * Open the profile cache of the JFR file. The cache is written first if there is no cache or the cache is out of
+     * date.
+     *
+     * @return The profile cache or {@code null} if the cache cannot be written
+     */
+    private ProfileCache openProfileCache(Path jfrPath, boolean compressed) throws Exception {
+        ProfileCache profileCache = ProfileCache.open(jfrPath);
+        if (profileCache != null) {
+            return profileCache;
+        }
+        ProfileCacheWriter profileCacheWriter;
+        try {
+            profileCacheWriter = new ProfileCacheWriter(jfrPath);
+        } catch (IOException e) {
+            System.err.println("Could not write the profile cache of " + jfrPath + ": " + e.getMessage());
+            return null;
+        }
+        try (ProfileCacheWriter writer = profileCacheWriter) {
+            writeProfileCache(writer, jfrPath, compressed);
+        }
+        profileCache = ProfileCache.open(jfrPath);
+        if (profileCache == null) {
+            throw new IOException("Could not read the profile cache of " + jfrPath);
+        }
+        return profileCache;
+    }
+
+    private void writeProfileCache(ProfileCacheWriter profileCacheWriter, Path jfrPath, boolean compressed)
+            throws Exception {
+        if (compressed) {
+            Path tempDirectory = Files.createTempDirectory("jfr_chunks_");
+            try (GzipChunkReader reader = new GzipChunkReader(jfrPath, tempDirectory, 2, Long.MIN_VALUE,
+                    Long.MAX_VALUE)) {
+                GzipChunkReader.Chunk chunk;
+                while ((chunk = reader.next()) != null) {
+                    profileCacheWriter.addTimeRange(chunk.getChunk().getStartNanos(), chunk.getChunk().getEndNanos());
+                    try (RecordingFile recording = new RecordingFile(chunk.getPath())) {
+                        profileCacheWriter.addRecording(recording);
+                    } finally {
+                        Files.deleteIfExists(chunk.getPath());
+                    }
+                }
+            } catch (IOException e) {
+                printLoadError();
+                throw e;
+            } finally {
+                deleteDirectory(tempDirectory);
+            }
+        } else {
+            for (JFRChunk chunk : loadChunkIndex(jfrPath).getChunks()) {
+                profileCacheWriter.addTimeRange(chunk.getStartNanos(), chunk.getEndNanos());
+            }
+            try (RecordingFile recording = loadRecording(jfrPath)) {
+                profileCacheWriter.addRecording(recording);
+            }
+        }
+        profileCacheWriter.write();
+    }
+
+    /**
+     * Read the events from the profile cache. The frame IDs of each stack are resolved when the stack is first used.
+     */
+    private FlameGraphOutputWriter[] convertCachedToStacks(ProfileCache profileCache, List<EventType> eventTypes,
+                                                           FrameTable frameTable,
+                                                           OutputWriterFactory outputWriterFactory)
+            throws IOException {
+        FlameGraphOutputWriter[] flameGraphOutputWriters = outputWriterFactory.create(profileCache.getStartNanos(),
+                profileCache.getEndNanos());
+        ProfileQuery profileQuery = new ProfileQuery(profileCache, eventTypes);
+        profileQuery.setTimeRange(startTimestamp, endTimestamp);
+        profileQuery.setThreadFilter(threadFilter);
+        profileQuery.setThreadFrames(threadFrames);
+        profileQuery.run(createFrameNameCache(frameTable), flameGraphOutputWriters);
+
+        int eventTypeCount = profileCache.getEventTypeCount();
+        long[] readCounts = profileQuery.getReadCounts();
+        long[] consumedCounts = profileQuery.getConsumedCounts();
+        synchronized (eventCounts) {
+            for (int eventType = 0; eventType < eventTypeCount; eventType++) {
+                if (readCounts[eventType] > 0) {
+                    long[] counts = eventCounts.computeIfAbsent(profileCache.getEventTypeName(eventType),
+                            name -> new long[2]);
+                    counts[0] += readCounts[eventType];
+                    counts[1] += consumedCounts[eventType];
+                }
+            }
+        }
+        return flameGraphOutputWriters;
+    }
 
+    private static EventConsumer writerConsumer(FlameGraphOutputWriter[] flameGraphOutputWriters) {
+        return (target, event, stack, value) -> flameGraphOutputWriters[target].processEvent(event.getStartTime(),
+                event.getEndTime(), event.getDuration(), stack, value);
+    }
+
+    /**
+     * Read the events and pass each event matching the event types to the consumer. The stack of an event is filled
+     * once, even if the event matches more than one event type.
+     */
+    private void readEvents(RecordingFile recording, List<EventType> eventTypes, FrameNameCache frameNameCache,
+                            FrameStack frameStack, EventConsumer eventConsumer) throws IOException {
+        EventDispatcher eventDispatcher = new EventDispatcher(eventTypes, recording.readEventTypes());
+        // The parser shares the thread instances between the events of a chunk
+        ThreadCache threadCache = createThreadCache(frameNameCache.getFrameTable());
         while (recording.hasMoreEvents()) {
-            RecordedEvent event = recording.readEvent();
-            if (!eventType.matches(event)) {
-                continue;
+            consumeEvent(recording.readEvent(), eventDispatcher, frameNameCache, threadCache, frameStack,
+                    eventConsumer);
+        }
+        if (printEventCounts) {
+            synchronized (eventCounts) {
+                eventDispatcher.addCounts(eventCounts);
             }
-            if (!matchesTimeRange(event)) {
-                continue;
+        }
+    }
+
+    /**
+     * Pass the event to the consumer if it matches the event types, the time range and the threads and it has a stack
+     * trace. The thread is checked before the frames are formatted.
+     */
+    private void consumeEvent(RecordedEvent event, EventDispatcher eventDispatcher, FrameNameCache frameNameCache,
+                              ThreadCache threadCache, FrameStack frameStack, EventConsumer eventConsumer) {
+        int entry = eventDispatcher.dispatch(event);
+        int[] targets = eventDispatcher.getTargets(entry);
+        if (targets.length == 0) {
+            return;
+        }
+        if (!matchesTimeRange(event)) {
+            return;
+        }
+        int bottomFrameId = -1;
+        if (threadCache != null) {
+            if (!threadCache.select(event)) {
+                return;
             }
+            bottomFrameId = threadCache.getThreadFrameId();
+        }
 
-            RecordedStackTrace flrStackTrace = (RecordedStackTrace) event.getValue(EVENT_VALUE_STACK);
-            if (flrStackTrace != null) {
-                Stack<String> stack = getStack(event);
-                long value = eventType.getValue(event);
-                flameGraphOutputWriter.processEvent(event.getStartTime(), event.getEndTime(), event.getDuration(), stack, value);
+        RecordedStackTrace flrStackTrace = event.getStackTrace();
+        if (flrStackTrace != null) {
+            if (!fillStack(flrStackTrace, frameNameCache, bottomFrameId, frameStack)) {
+                return;
+            }
+            EventType.ValueAccessor[] valueAccessors = eventDispatcher.getValueAccessors(entry);
+            for (int i = 0; i < targets.length; i++) {
+                eventConsumer.accept(targets[i], event, frameStack, valueAccessors[i].getValue(event));
             }
+            eventDispatcher.consumed(entry);
         }
+    }
 
-        try (Writer writer = outputFile != null ? new FileWriter(outputFile) : new PrintWriter(System.out);
-             BufferedWriter bufferedWriter = new BufferedWriter(writer)) {
-            flameGraphOutputWriter.writeOutput(bufferedWriter);
+    /**
+     * Print the number of events of each type which were skipped and consumed to the standard error.
+     */
+    private void printEventCounts() {
+        if (!printEventCounts) {
+            return;
+        }
+        System.err.format(EVENT_COUNTS_FORMAT, "Event Type", "Skipped", "Consumed");
+        for (Map.Entry<String, long[]> entry : eventCounts.entrySet()) {
+            long[] counts = entry.getValue();
+            System.err.format(EVENT_COUNTS_FORMAT, entry.getKey(), counts[0] - counts[1], counts[1]);
         }
     }
 
+    private FrameNameCache createFrameNameCache(FrameTable frameTable) {
+        return new FrameNameCache(frameTable, ignoreLineNumbers, useSimpleNames, hideArguments, showReturnValue,
+                FrameNameCache.DEFAULT_MAX_SIZE, frameFilter);
+    }
+
+    /**
+     * @return A thread cache or {@code null} if the threads are not filtered and the thread names are not frames
+     */
+    private ThreadCache createThreadCache(FrameTable frameTable) {
+        if (threadFilter.isEmpty() && !threadFrames) {
+            return null;
+        }
+        return new ThreadCache(frameTable, threadFilter, threadFrames);
+    }
+
+    /**
+     * @return The output file or directory given in the options
+     */
+    private File getOutputDirectory() {
+        return outputFile != null ? outputFile : new File(".");
+    }
+
+    /**
+     * Create an output writer for each event type. In the interval mode, the intervals start from the start of the
+     * first chunk.
+     *
+     * @param eventTypes The event types
+     * @param startNanos The start of the first chunk in nanoseconds since the epoch
+     * @param endNanos   The end of the last known chunk in nanoseconds since the epoch
+     */
+    private FlameGraphOutputWriter[] createOutputWriters(List<EventType> eventTypes, long startNanos, long endNanos) {
+        FlameGraphOutputWriter[] flameGraphOutputWriters = new FlameGraphOutputWriter[eventTypes.size()];
+        for (int i = 0; i < flameGraphOutputWriters.length; i++) {
+            FlameGraphOutputWriter flameGraphOutputWriter;
+            if (interval > 0) {
+                long originNanos = startNanos - Math.floorMod(startNanos, TimeUnit.SECONDS.toNanos(1));
+                File outputDirectory = getOutputDirectory();
+                if (flameGraphOutputWriters.length > 1) {
+                    outputDirectory = new File(outputDirectory, eventTypes.get(i).toString());
+                }
+                flameGraphOutputWriter = new IntervalOutputWriter(outputType, interval, originNanos, endNanos,
+                        outputDirectory);
+            } else {
+                flameGraphOutputWriter = outputType.createFlameGraphOutputWriter();
+            }
+            flameGraphOutputWriter.initialize(parameters);
+            flameGraphOutputWriters[i] = flameGraphOutputWriter;
+        }
+        return flameGraphOutputWriters;
+    }
+
+    /**
+     * Write the output. With one event type, the output is written to the output file or to the standard output. With
+     * more than one event type, the output of each event type is written to {@code <event type>.<output type>} in the
+     * output directory, and the event type and the file are listed in the standard output. In the interval mode, each
+     * event type has a subdirectory for its intervals.
+     */
+    private void writeOutput(List<EventType> eventTypes, FlameGraphOutputWriter[] flameGraphOutputWriters)
+            throws IOException {
+        // In the interval mode, the output file is the directory for the output of each interval
+        if (interval <= 0 && flameGraphOutputWriters.length == 1 && outputFile != null) {
+            writeFile(outputFile, flameGraphOutputWriters[0]);
+            return;
+        }
+        // The standard output is not closed, so that the output can be written again in the follow mode
+        BufferedWriter bufferedWriter = new BufferedWriter(new PrintWriter(System.out));
+        if (flameGraphOutputWriters.length == 1 || interval > 0) {
+            for (FlameGraphOutputWriter flameGraphOutputWriter : flameGraphOutputWriters) {
+                flameGraphOutputWriter.writeOutput(bufferedWriter);
+            }
+            bufferedWriter.flush();
+            return;
+        }
+        File outputDirectory = getOutputDirectory();
+        if (!outputDirectory.isDirectory() && !outputDirectory.mkdirs()) {
+            throw new IOException("Could not create the output directory " + outputDirectory);
+        }
+        for (int i = 0; i < flameGraphOutputWriters.length; i++) {
+            File file = new File(outputDirectory, eventTypes.get(i) + "." + outputType);
+            writeFile(file, flameGraphOutputWriters[i]);
+            bufferedWriter.write(eventTypes.get(i) + " " + file.getPath());
+            bufferedWriter.newLine();
+        }
+        bufferedWriter.flush();
+    }
+
+    /**
+     * Write the output to a temporary file, which replaces the file when it is complete, so that the file is not read
+     * while it is written.
+     */
+    private static void writeFile(File file, FlameGraphOutputWriter flameGraphOutputWriter) throws IOException {
+        File tempFile = new File(file.getPath() + ".tmp");
+        try {
+            try (BufferedWriter bufferedWriter = new BufferedWriter(new FileWriter(tempFile))) {
+                flameGraphOutputWriter.writeOutput(bufferedWriter);
+            }
+            Files.move(tempFile.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempFile.toPath());
+        }
+    }
+
+    static void deleteDirectory(Path directory) throws IOException {
+        try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory)) {
+            for (Path path : paths) {
+                Files.deleteIfExists(path);
+            }
+        }
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * Check whether the event overlaps the time range. The timestamps are compared in nanoseconds since the epoch.
+     */
     private boolean matchesTimeRange(RecordedEvent event) {
-        Instant eventStartTimestamp = event.getStartTime();
-        Instant eventEndTimestamp = event.getEndTime();
-        if (eventStartTimestamp.getNano() >= startTimestamp && eventStartTimestamp.getNano() <= endTimestamp) {
-            return true;
-        } else if (eventEndTimestamp.getNano() >= startTimestamp && eventEndTimestamp.getNano() <= endTimestamp) {
+        if (startTimestamp == Long.MIN_VALUE && endTimestamp == Long.MAX_VALUE) {
             return true;
         }
-        return false;
+        return matchesTimeRange(toEpochNanos(event.getStartTime()), toEpochNanos(event.getEndTime()));
     }
 
-    private void printJFRDetails(RecordingFile recording) throws IOException {
-//        ITimeRange timeRange = recording.getTimeRange();
+    private boolean matchesTimeRange(long eventStartNanos, long eventEndNanos) {
+        return eventStartNanos <= endTimestamp && eventEndNanos >= startTimestamp;
+    }
 
-//        long startTimestamp = TimeUnit.NANOSECONDS.toSeconds(timeRange.getStartTimestamp());
-//        long endTimestamp = TimeUnit.NANOSECONDS.toSeconds(timeRange.getEndTimestamp());
-//
-//        Duration d = Duration.ofNanos(timeRange.getDuration());
-//        long hours = d.toHours();
-//        long minutes = d.minusHours(hours).toMinutes();
+    static long toEpochNanos(Instant instant) {
+        return TimeUnit.SECONDS.toNanos(instant.getEpochSecond()) + instant.getNano();
+    }
 
-//        IView view = recording.createView();
+    /**
+     * Converts the events with the options of the writer.
+     */
+    private final class OptionsConversionContext implements ConversionContext {
+
+        @Override
+        public FlameGraphOutputWriter[] convertFile(Path jfrPath, List<EventType> eventTypes, FrameTable frameTable,
+                                                    int chunkThreads, OutputWriterFactory outputWriterFactory)
+                throws Exception {
+            return JFRToFlameGraphWriter.this.convertFile(jfrPath, eventTypes, frameTable, chunkThreads,
+                    outputWriterFactory);
+        }
 
-        Instant minEventStartTimestamp = Instant.MAX;
-        Instant maxEventEndTimestamp = Instant.MIN;
+        @Override
+        public StackAggregate[] aggregateChunk(Path chunkPath, List<EventType> eventTypes, FrameTable frameTable)
+                throws IOException {
+            return JFRToFlameGraphWriter.this.aggregateChunk(chunkPath, eventTypes, frameTable);
+        }
 
-//        view.setFilter(eventType::matches);
+        @Override
+        public boolean isCompressed(Path jfrPath) throws IOException {
+            return JFRToFlameGraphWriter.this.isCompressed(jfrPath);
+        }
 
-        while (recording.hasMoreEvents()) {
-            RecordedEvent event = recording.readEvent();
-            Instant eventStartTimestamp = event.getStartTime();
-            Instant eventEndTimestamp = event.getEndTime();
-            if (eventStartTimestamp.isBefore(minEventStartTimestamp)) {
-                minEventStartTimestamp = eventStartTimestamp;
+        @Override
+        public List<JFRChunk> getChunks(Path jfrPath, List<EventType> eventTypes) throws IOException {
+            return loadChunkIndex(jfrPath).getChunks(startTimestamp, endTimestamp, eventTypes);
+        }
+
+        @Override
+        public ProfileCache openProfileCache(Path jfrPath) throws Exception {
+            return JFRToFlameGraphWriter.this.openProfileCache(jfrPath, isCompressed(jfrPath));
+        }
+
+        @Override
+        public int getBottomFrameId(Path jfrPath, FrameTable frameTable) {
+            return JFRToFlameGraphWriter.this.getBottomFrameId(jfrPath, frameTable);
+        }
+
+        @Override
+        public void consumeEvent(RecordedEvent event, EventDispatcher eventDispatcher, FrameNameCache frameNameCache,
+                                 ThreadCache threadCache, FrameStack frameStack, EventConsumer eventConsumer) {
+            JFRToFlameGraphWriter.this.consumeEvent(event, eventDispatcher, frameNameCache, threadCache, frameStack,
+                    eventConsumer);
+        }
+
+        @Override
+        public FrameNameCache createFrameNameCache(FrameTable frameTable) {
+            return JFRToFlameGraphWriter.this.createFrameNameCache(frameTable);
+        }
+
+        @Override
+        public ThreadCache createThreadCache(FrameTable frameTable) {
+            return JFRToFlameGraphWriter.this.createThreadCache(frameTable);
+        }
+
+        @Override
+        public FlameGraphOutputWriter[] createOutputWriters(List<EventType> eventTypes, long startNanos,
+                                                            long endNanos) {
+            return JFRToFlameGraphWriter.this.createOutputWriters(eventTypes, startNanos, endNanos);
+        }
+
+        @Override
+        public void writeOutput(List<EventType> eventTypes, FlameGraphOutputWriter[] flameGraphOutputWriters)
+                throws IOException {
+            JFRToFlameGraphWriter.this.writeOutput(eventTypes, flameGraphOutputWriters);
+        }
+
+        @Override
+        public void printEventCounts() {
+            JFRToFlameGraphWriter.this.printEventCounts();
+        }
+
+        @Override
+        public void printEventCounts(EventDispatcher eventDispatcher) {
+            if (!printEventCounts) {
+                return;
             }
+            eventCounts.clear();
+            eventDispatcher.addCounts(eventCounts);
+            JFRToFlameGraphWriter.this.printEventCounts();
+        }
+    }
+
+    /**
+     * The time range of the events in the recording.
+     */
+    private static final class EventTimeRange {
+
+        private Instant minEventStartTimestamp = Instant.MAX;
+        private Instant maxEventEndTimestamp = Instant.MIN;
+
+        void update(RecordingFile recording) throws IOException {
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                Instant eventStartTimestamp = event.getStartTime();
+                Instant eventEndTimestamp = event.getEndTime();
+                if (eventStartTimestamp.isBefore(minEventStartTimestamp)) {
+                    minEventStartTimestamp = eventStartTimestamp;
+                }
+
+                if (eventEndTimestamp.isAfter(maxEventEndTimestamp)) {
+                    maxEventEndTimestamp = eventEndTimestamp;
+                }
+            }
+        }
+    }
 
-            if (eventEndTimestamp.isAfter(maxEventEndTimestamp)) {
-                maxEventEndTimestamp = eventEndTimestamp;
+    private void readCompressedEventTimeRange(Path jfrPath, EventTimeRange eventTimeRange) throws Exception {
+        Path tempDirectory = Files.createTempDirectory("jfr_chunks_");
+        try (GzipChunkReader reader = new GzipChunkReader(jfrPath, tempDirectory, 2, Long.MIN_VALUE,
+                Long.MAX_VALUE)) {
+            GzipChunkReader.Chunk chunk;
+            while ((chunk = reader.next()) != null) {
+                try (RecordingFile recording = new RecordingFile(chunk.getPath())) {
+                    eventTimeRange.update(recording);
+                } finally {
+                    Files.deleteIfExists(chunk.getPath());
+                }
             }
+        } catch (IOException e) {
+            printLoadError();
+            throw e;
+        } finally {
+            deleteDirectory(tempDirectory);
         }
+    }
+
+    private void printJFRDetails(EventTimeRange eventTimeRange) {
+//        ITimeRange timeRange = recording.getTimeRange();
+
+//        long startTimestamp = TimeUnit.NANOSECONDS.toSeconds(timeRange.getStartTimestamp());
+//        long endTimestamp = TimeUnit.NANOSECONDS.toSeconds(timeRange.getEndTimestamp());
+//
+//        Duration d = Duration.ofNanos(timeRange.getDuration());
+//        long hours = d.toHours();
+//        long minutes = d.minusHours(hours).toMinutes();
+
+        Instant minEventStartTimestamp = eventTimeRange.minEventStartTimestamp;
+        Instant maxEventEndTimestamp = eventTimeRange.maxEventEndTimestamp;
 
         Duration eventsDuration = Duration.between(minEventStartTimestamp, maxEventEndTimestamp);
         long eventHours = eventsDuration.toHours();
@@ -220,122 +992,32 @@ public final class JFRToFlameGraphWriter {
                 MessageFormat.format(DURATION_FORMAT, eventHours, eventMinutes));
     }
 
-    private Stack<String> getStack(RecordedEvent event) {
-        RecordedStackTrace flrStackTrace = (RecordedStackTrace) event.getValue(EVENT_VALUE_STACK);
-        Stack<String> stack = new Stack<>();
-        if (flrStackTrace == null) {
-            return stack;
-        }
-        for (RecordedFrame frame : flrStackTrace.getFrames()) {
-            String frameName = getFrameName(frame);
-            if (frameName != null) {
-                stack.push(frameName);
-            }
-        }
-        return stack;
-    }
-
-    private String getFrameName(RecordedFrame frame) {
-        StringBuilder methodBuilder = new StringBuilder();
-        RecordedMethod method = frame.getMethod();
-        if (method == null) {
-            return null;
-        }
-
-//        methodBuilder.append(method.getHumanReadable(showReturnValue, !useSimpleNames, true, !useSimpleNames, !hideArguments, !useSimpleNames));
-        methodBuilder.append(formatMethod(method));
-        if (!ignoreLineNumbers) {
-            methodBuilder.append(":");
-            methodBuilder.append(frame.getLineNumber());
-        }
-        return methodBuilder.toString();
-    }
-
-    private File decompressFile(final File compressedFile) throws IOException {
-        byte[] buffer = new byte[8 * 1024];
-
-        File decompressedFile;
-
-        try (GZIPInputStream compressedStream = new GZIPInputStream(new FileInputStream(compressedFile));
-             FileOutputStream uncompressedFileStream = new FileOutputStream(
-                     decompressedFile = File.createTempFile("jfr_", null))) {
-
-            decompressedFile.deleteOnExit();
-            int numberOfBytes;
-
-            while ((numberOfBytes = compressedStream.read(buffer)) > 0) {
-                uncompressedFileStream.write(buffer, 0, numberOfBytes);
-            }
-        }
-
-        return decompressedFile;
+    /**
+     * Fill the frame stack with the frames of the stack trace, from the bottom of the stack to the top.
+     *
+     * @return Whether the stack is selected by the include patterns of the frames
+     */
+    static boolean fillStack(RecordedStackTrace flrStackTrace, FrameNameCache frameNameCache, FrameStack stack) {
+        return fillStack(flrStackTrace, frameNameCache, -1, stack);
     }
 
-    private String formatMethod(RecordedMethod m) {
-        StringBuilder sb = new StringBuilder();
-        sb.append(m.getType().getName());
-        sb.append(".");
-        sb.append(m.getName());
-        sb.append("(");
-        StringJoiner sj = new StringJoiner(", ");
-        String md = m.getDescriptor().replace("/", ".");
-        String parameter = md.substring(1, md.lastIndexOf(")"));
-        for (String qualifiedName : decodeDescriptors(parameter, "")) {
-            String typeName = qualifiedName.substring(qualifiedName.lastIndexOf('.') + 1);
-            sj.add(typeName);
+    /**
+     * Fill the frame stack with a bottom frame and the frames of the stack trace, from the bottom of the stack to the
+     * top. Excluded frames are removed and adjacent collapsed frames are replaced with one frame.
+     *
+     * @param bottomFrameId The ID of the bottom frame, or -1 to fill only the frames of the stack trace
+     * @return Whether the stack is selected by the include patterns of the frames
+     */
+    static boolean fillStack(RecordedStackTrace flrStackTrace, FrameNameCache frameNameCache, int bottomFrameId,
+                             FrameStack stack) {
+        stack.clear();
+        if (bottomFrameId >= 0) {
+            stack.push(bottomFrameId);
         }
-        sb.append(sj);
-        sb.append(")");
-        return sb.toString();
-    }
-
-    List<String> decodeDescriptors(String descriptor, String arraySize) {
-        List<String> descriptors = new ArrayList<>();
-        for (int index = 0; index < descriptor.length(); index++) {
-            String arrayBrackets = "";
-            while (descriptor.charAt(index) == '[') {
-                arrayBrackets = arrayBrackets +  "[" + arraySize + "]" ;
-                arraySize = "";
-                index++;
-            }
-            char c = descriptor.charAt(index);
-            String type;
-            switch (c) {
-                case 'L':
-                    int endIndex = descriptor.indexOf(';', index);
-                    type = descriptor.substring(index + 1, endIndex);
-                    index = endIndex;
-                    break;
-                case 'I':
-                    type = "int";
-                    break;
-                case 'J':
-                    type = "long";
-                    break;
-                case 'Z':
-                    type = "boolean";
-                    break;
-                case 'D':
-                    type = "double";
-                    break;
-                case 'F':
-                    type = "float";
-                    break;
-                case 'S':
-                    type = "short";
-                    break;
-                case 'C':
-                    type = "char";
-                    break;
-                case 'B':
-                    type = "byte";
-                    break;
-                default:
-                    type = "<unknown-descriptor-type>";
-            }
-            descriptors.add(type + arrayBrackets);
+        List<RecordedFrame> frames = flrStackTrace.getFrames();
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            frameNameCache.push(stack, frameNameCache.getFrameId(frames.get(i)));
         }
-        return descriptors;
+        return frameNameCache.isSelected(stack);
     }
-
 }
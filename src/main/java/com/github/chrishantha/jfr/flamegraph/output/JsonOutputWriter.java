@@ -15,25 +15,24 @@
  */
 package com.github.chrishantha.jfr.flamegraph.output;
 
-import com.google.gson.Gson;
-import com.google.gson.GsonBuilder;
-
 import java.io.BufferedWriter;
 import java.io.IOException;
+import java.io.Writer;
 import java.time.Duration;
 import java.time.Instant;
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.List;
+import java.util.Arrays;
 import java.util.Map;
-import java.util.Stack;
-import java.util.concurrent.TimeUnit;
+import java.util.TreeMap;
 
 /**
  * Create JSON output to be used with d3-flame-graph. https://github.com/spiermar/d3-flame-graph
  * <p>
  * This is similar to https://github.com/spiermar/node-stack-convert
  * </p>
+ * The stack traces are aggregated into {@link StackTree} instances. The value of each frame is the total of the values
+ * of the stack traces passing through the frame.
+ * <p>
+ * The output is streamed while walking the trees, without recursion, so that deep stack traces can be written.
  */
 public class JsonOutputWriter implements FlameGraphOutputWriter {
 
@@ -42,6 +41,34 @@ public class JsonOutputWriter implements FlameGraphOutputWriter {
      */
     private static final String ROOT = "root";
 
+    /**
+     * Initial number of nodes in the profile of each second in live json
+     */
+    private static final int LIVE_PROFILE_CAPACITY = 16;
+
+    /**
+     * Escape sequences for the characters below 128. Characters that are special in HTML are escaped as well.
+     */
+    private static final String[] ESCAPES = new String[128];
+
+    static {
+        for (int c = 0; c < 0x20; c++) {
+            ESCAPES[c] = String.format("\\u%04x", c);
+        }
+        ESCAPES['"'] = "\\\"";
+        ESCAPES['\\'] = "\\\\";
+        ESCAPES['\t'] = "\\t";
+        ESCAPES['\b'] = "\\b";
+        ESCAPES['\n'] = "\\n";
+        ESCAPES['\r'] = "\\r";
+        ESCAPES['\f'] = "\\f";
+        ESCAPES['<'] = "\\u003c";
+        ESCAPES['>'] = "\\u003e";
+        ESCAPES['&'] = "\\u0026";
+        ESCAPES['='] = "\\u003d";
+        ESCAPES['\''] = "\\u0027";
+    }
+
     /**
      * The data model for live json
      */
@@ -50,77 +77,174 @@ public class JsonOutputWriter implements FlameGraphOutputWriter {
     /**
      * The data model for json
      */
-    private StackFrame profile = new StackFrame(ROOT);
+    private StackTree profile = new StackTree();
+
+    /**
+     * The store shared by the profiles of each second in live json, or {@code null} to keep each profile on the heap
+     */
+    private StackNodeStore liveStore;
 
     private boolean exportTimestamp;
 
+    private OutputWriterParameters parameters = new OutputWriterParameters();
+
     private class LiveRecording {
 
-        Map<Long, StackFrame> profilesMap = new HashMap<>();
+        Map<Long, StackTree> profilesMap = new TreeMap<>();
 
-        public StackFrame getProfile(long startTimestampSecEpoch) {
-            StackFrame profile = profilesMap.get(startTimestampSecEpoch);
+        public StackTree getProfile(long startTimestampSecEpoch) {
+            StackTree profile = profilesMap.get(startTimestampSecEpoch);
             if (profile == null) {
-                profile = new StackFrame(ROOT);
+                profile = liveStore == null ? new StackTree(LIVE_PROFILE_CAPACITY) : new StackTree(liveStore);
                 profilesMap.put(startTimestampSecEpoch, profile);
             }
             return profile;
         }
     }
 
-    private class StackFrame {
-
-        String name;
-        int value = 0;
-        List<StackFrame> children = null;
-        transient Map<String, StackFrame> childrenMap = new HashMap<>();
-
-        public StackFrame(String name) {
-            this.name = name;
-        }
-
-        public StackFrame addFrame(String frameName) {
-            if (children == null) {
-                children = new ArrayList<>();
-            }
-            StackFrame frame = childrenMap.get(frameName);
-            if (frame == null) {
-                frame = new StackFrame(frameName);
-                childrenMap.put(frameName, frame);
-                children.add(frame);
-            }
-            frame.value++;
-            return frame;
-        }
-    }
-
     @Override
     public void initialize(OutputWriterParameters parameters) {
+        this.parameters = parameters;
         exportTimestamp = parameters.live;
+        StackNodeStore store = parameters.createMappedStackNodeStore();
+        if (store != null) {
+            if (exportTimestamp) {
+                liveStore = store;
+            } else {
+                profile = new StackTree(store);
+            }
+        }
     }
 
     @Override
-    public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, Stack<String> stack, long size) {
-        StackFrame frame;
+    public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, FrameStack stack, long size) {
+        StackTree stackTree;
         if (exportTimestamp) {
             long startTimestampSecEpoch = startTimestamp.getEpochSecond();
-            frame = liveRecording.getProfile(startTimestampSecEpoch);
+            stackTree = liveRecording.getProfile(startTimestampSecEpoch);
         } else {
-            frame = profile;
-        }
-
-        while (!stack.empty()) {
-            frame = frame.addFrame(stack.pop());
+            stackTree = profile;
         }
+        stackTree.addStack(stack, size);
     }
 
     @Override
     public void writeOutput(BufferedWriter bufferedWriter) throws IOException {
-        Gson gson = new GsonBuilder().create();
         if (exportTimestamp) {
-            gson.toJson(this.liveRecording.profilesMap, bufferedWriter);
+            bufferedWriter.write('{');
+            boolean first = true;
+            for (Map.Entry<Long, StackTree> entry : liveRecording.profilesMap.entrySet()) {
+                if (!first) {
+                    bufferedWriter.write(',');
+                }
+                first = false;
+                bufferedWriter.write('"');
+                bufferedWriter.write(Long.toString(entry.getKey()));
+                bufferedWriter.write("\":");
+                writeStackTree(bufferedWriter, entry.getValue(), parameters.createPruner(entry.getValue()));
+            }
+            bufferedWriter.write('}');
         } else {
-            gson.toJson(this.profile, bufferedWriter);
+            writeStackTree(bufferedWriter, profile, parameters.createPruner(profile));
+        }
+    }
+
+    /**
+     * Write a stack tree as nested frames with the name, value and children of each frame.
+     */
+    static void writeStackTree(Writer writer, StackTree stackTree) throws IOException {
+        writeStackTree(writer, stackTree, null);
+    }
+
+    /**
+     * Write a stack tree, where the pruned children of each frame are written as one frame.
+     *
+     * @param pruner The pruner of the stack tree, or {@code null} to write all frames
+     */
+    static void writeStackTree(Writer writer, StackTree stackTree, StackTreePruner pruner) throws IOException {
+        stackTree.walk(new StackTree.NodeVisitor() {
+
+            /**
+             * Whether a child of the frame at each depth is written
+             */
+            private boolean[] hasChildren = new boolean[64];
+
+            /**
+             * The pruned total of the frame at each depth
+             */
+            private long[] prunedTotals = new long[64];
+
+            @Override
+            public void enter(int node, int depth) throws IOException {
+                if (depth > 0 && hasChildren[depth - 1]) {
+                    writer.write(',');
+                }
+                if (depth == hasChildren.length) {
+                    hasChildren = Arrays.copyOf(hasChildren, depth * 2);
+                    prunedTotals = Arrays.copyOf(prunedTotals, depth * 2);
+                }
+                if (depth > 0) {
+                    hasChildren[depth - 1] = true;
+                }
+                hasChildren[depth] = false;
+                prunedTotals[depth] = pruner == null ? 0 : pruner.getPrunedTotal(node, depth);
+                writer.write("{\"name\":");
+                writeString(writer, node == stackTree.getRoot() ? ROOT : stackTree.getFrameName(node));
+                writer.write(",\"value\":");
+                writer.write(Long.toString(stackTree.getTotal(node)));
+                if (stackTree.getFirstChild(node) >= 0) {
+                    writer.write(",\"children\":[");
+                }
+            }
+
+            @Override
+            public void exit(int node, int depth) throws IOException {
+                if (prunedTotals[depth] > 0) {
+                    if (hasChildren[depth]) {
+                        writer.write(',');
+                    }
+                    writer.write("{\"name\":");
+                    writeString(writer, StackTreePruner.OTHER);
+                    writer.write(",\"value\":");
+                    writer.write(Long.toString(prunedTotals[depth]));
+                    writer.write('}');
+                }
+                if (stackTree.getFirstChild(node) >= 0) {
+                    writer.write(']');
+                }
+                writer.write('}');
+            }
+        }, pruner);
+    }
+
+    static void writeString(Writer writer, String value) throws IOException {
+        writer.write('"');
+        int last = 0;
+        int length = value.length();
+        for (int i = 0; i < length; i++) {
+            char c = value.charAt(i);
+            String escape;
+            if (c < 128) {
+                escape = ESCAPES[c];
+                if (escape == null) {
+                    continue;
+                }
+            } else if (c == 0x2028) {
+                escape = "\\u2028";
+            } else if (c == 0x2029) {
+                escape = "\\u2029";
+            } else {
+                continue;
+            }
+            if (last < i) {
+                writer.write(value, last, i - last);
+            }
+            writer.write(escape);
+            last = i + 1;
+        }
+        if (last < length) {
+            writer.write(value, last, length - last);
         }
+        writer.write('"');
     }
 }
@@ -0,0 +1,134 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Keeps the nodes of stack trees in memory mapped files, so that large trees do not fill the heap.
+ * <p>
+ * The nodes are fixed size records in segments of {@value #NODES_PER_SEGMENT} nodes. The child table is also kept in
+ * segments. Each segment is a temporary file, which is deleted as soon as it is mapped, so the operating system
+ * frees the space when the mapping is released. The heap has only one buffer for each segment.
+ */
+public final class MappedStackNodeStore extends StackNodeStore {
+
+    static final int NODES_PER_SEGMENT = 1 << 20;
+
+    private static final int SLOTS_PER_SEGMENT = 1 << 24;
+
+    /**
+     * Size of a node: the int fields, padding to align the long fields, and the long fields
+     */
+    private static final int NODE_SIZE = 24 + LONG_FIELDS * Long.BYTES;
+
+    private static final int LONG_FIELDS_OFFSET = 24;
+
+    private final Path directory;
+    private final List<MappedByteBuffer> nodeSegments = new ArrayList<>();
+    private MappedByteBuffer[] childSegments = new MappedByteBuffer[0];
+
+    /**
+     * @param directory The directory for the temporary files, which is created if it does not exist
+     * @throws UncheckedIOException If the directory cannot be created
+     */
+    public MappedStackNodeStore(Path directory) {
+        try {
+            Files.createDirectories(directory);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not create the directory " + directory + " for the stack nodes", e);
+        }
+        this.directory = directory;
+    }
+
+    @Override
+    int getInt(int node, int field) {
+        return nodeSegments.get(node / NODES_PER_SEGMENT).getInt((node % NODES_PER_SEGMENT) * NODE_SIZE
+                + field * Integer.BYTES);
+    }
+
+    @Override
+    void setInt(int node, int field, int value) {
+        nodeSegments.get(node / NODES_PER_SEGMENT).putInt((node % NODES_PER_SEGMENT) * NODE_SIZE
+                + field * Integer.BYTES, value);
+    }
+
+    @Override
+    long getLong(int node, int field) {
+        return nodeSegments.get(node / NODES_PER_SEGMENT).getLong((node % NODES_PER_SEGMENT) * NODE_SIZE
+                + LONG_FIELDS_OFFSET + field * Long.BYTES);
+    }
+
+    @Override
+    void setLong(int node, int field, long value) {
+        nodeSegments.get(node / NODES_PER_SEGMENT).putLong((node % NODES_PER_SEGMENT) * NODE_SIZE
+                + LONG_FIELDS_OFFSET + field * Long.BYTES, value);
+    }
+
+    @Override
+    void ensureCapacity(int nodes) {
+        while ((long) nodeSegments.size() * NODES_PER_SEGMENT < nodes) {
+            nodeSegments.add(map((long) NODES_PER_SEGMENT * NODE_SIZE));
+        }
+    }
+
+    @Override
+    int getChildSlot(int index) {
+        return childSegments[index / SLOTS_PER_SEGMENT].getInt((index % SLOTS_PER_SEGMENT) * Integer.BYTES);
+    }
+
+    @Override
+    void setChildSlot(int index, int value) {
+        childSegments[index / SLOTS_PER_SEGMENT].putInt((index % SLOTS_PER_SEGMENT) * Integer.BYTES, value);
+    }
+
+    @Override
+    void newChildTable(int capacity) {
+        int slotsPerSegment = Math.min(capacity, SLOTS_PER_SEGMENT);
+        MappedByteBuffer[] segments = new MappedByteBuffer[capacity / slotsPerSegment];
+        for (int i = 0; i < segments.length; i++) {
+            // New files are filled with zeros, which mark empty slots
+            segments[i] = map((long) slotsPerSegment * Integer.BYTES);
+        }
+        childSegments = segments;
+    }
+
+    private MappedByteBuffer map(long size) {
+        try {
+            Path file = Files.createTempFile(directory, "stack_nodes_", ".tmp");
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+                return channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+            } finally {
+                try {
+                    Files.delete(file);
+                } catch (IOException e) {
+                    // The file cannot be deleted while it is mapped on some platforms
+                    file.toFile().deleteOnExit();
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("Could not map a file in " + directory, e);
+        }
+    }
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Convert JFR files in parallel and merge the aggregates of the files in the order of the files. The chunks of each
+ * file are parsed in one thread. The output writers are created when the time range of all files is known, so that
+ * the intervals start from the start of the first chunk of all files.
+ */
+final class MultiFileConverter {
+
+    private final ConversionContext conversionContext;
+    private final int threads;
+
+    /**
+     * @param conversionContext The conversion of each file
+     * @param threads           The number of files to parse in parallel
+     */
+    MultiFileConverter(ConversionContext conversionContext, int threads) {
+        this.conversionContext = conversionContext;
+        this.threads = threads;
+    }
+
+    /**
+     * @return The output writers with the events of all files
+     */
+    FlameGraphOutputWriter[] convert(List<Path> jfrPaths, List<EventType> eventTypes, FrameTable frameTable)
+            throws Exception {
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, jfrPaths.size())));
+        try {
+            List<Future<PartialAggregate>> futures = new ArrayList<>(jfrPaths.size());
+            for (Path jfrPath : jfrPaths) {
+                futures.add(executorService.submit(() -> PartialAggregate.aggregateFile(conversionContext, jfrPath,
+                        eventTypes, frameTable)));
+            }
+            List<PartialAggregate> partialAggregates = new ArrayList<>(futures.size());
+            long startNanos = Long.MAX_VALUE;
+            long endNanos = Long.MIN_VALUE;
+            for (Future<PartialAggregate> future : futures) {
+                PartialAggregate partialAggregate = future.get();
+                partialAggregates.add(partialAggregate);
+                if (partialAggregate.startNanos != 0 || partialAggregate.endNanos != 0) {
+                    startNanos = Math.min(startNanos, partialAggregate.startNanos);
+                    endNanos = Math.max(endNanos, partialAggregate.endNanos);
+                }
+            }
+            FlameGraphOutputWriter[] flameGraphOutputWriters = startNanos <= endNanos
+                    ? conversionContext.createOutputWriters(eventTypes, startNanos, endNanos)
+                    : conversionContext.createOutputWriters(eventTypes, 0, 0);
+            for (PartialAggregate partialAggregate : partialAggregates) {
+                partialAggregate.writeTo(flameGraphOutputWriters);
+            }
+            return flameGraphOutputWriters;
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            executorService.shutdownNow();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+        }
+    }
+}
@@ -38,6 +38,16 @@ public enum OutputType {
         public FlameGraphOutputWriter createFlameGraphOutputWriter() {
             return new JsonOutputWriter();
         }
+    },
+
+    /**
+     * Create an SVG flame graph
+     */
+    SVG("svg") {
+        @Override
+        public FlameGraphOutputWriter createFlameGraphOutputWriter() {
+            return new SvgOutputWriter();
+        }
     };
 
     private final String name;
@@ -17,12 +17,65 @@ package com.github.chrishantha.jfr.flamegraph.output;
 
 import com.beust.jcommander.Parameter;
 
+import java.io.File;
+import java.io.IOException;
+
 /**
  * Additional parameters for Output Writers
  */
 public final class OutputWriterParameters {
 
+    static final int DEFAULT_SVG_WIDTH = 1200;
+
+    static final double DEFAULT_MIN_WIDTH = 0.1;
+
+    static final String DEFAULT_TITLE = "Flame Graph";
+
     @Parameter(names = {"-l", "--live"}, description = "Export stack trace sample timestamp (in json output type)")
     boolean live = false;
 
+    @Parameter(names = {"-ms", "--mapped-stack-store"}, description = "Keep the stack trees in memory mapped files " +
+            "in the given directory instead of the heap. Use for recordings with more stack traces than the heap can hold")
+    File mappedStackStoreDirectory;
+
+    @Parameter(names = {"-sw", "--svg-width"}, description = "Width of the image in pixels (in svg output type)")
+    int svgWidth = DEFAULT_SVG_WIDTH;
+
+    @Parameter(names = {"-mw", "--min-width"}, description = "Omit frames narrower than the given pixels " +
+            "(in svg output type)")
+    double minWidth = DEFAULT_MIN_WIDTH;
+
+    @Parameter(names = {"-ti", "--title"}, description = "Title of the image (in svg output type)")
+    String title = DEFAULT_TITLE;
+
+    @Parameter(names = {"-mp", "--min-percent"}, description = "Fold the frames with less than the given percent of " +
+            "the total into an [other] frame (in folded and json output types)")
+    double minPercent = 0;
+
+    @Parameter(names = {"-md", "--max-depth"}, description = "Fold the frames deeper than the given depth into an " +
+            "[other] frame (in folded and json output types)")
+    int maxDepth = 0;
+
+    @Parameter(names = {"-tp", "--top-paths"}, description = "Keep only the given number of stack traces with the " +
+            "highest values and fold the others into [other] frames (in folded and json output types)")
+    int topPaths = 0;
+
+    /**
+     * @return A store for the stack trees of a writer, which is memory mapped if a directory is given, or {@code null}
+     * to keep each tree on the heap
+     */
+    StackNodeStore createMappedStackNodeStore() {
+        return mappedStackStoreDirectory == null ? null : new MappedStackNodeStore(mappedStackStoreDirectory.toPath());
+    }
+
+    /**
+     * @return A pruner of the given stack tree, or {@code null} if the output is not pruned
+     */
+    StackTreePruner createPruner(StackTree stackTree) throws IOException {
+        if (minPercent <= 0 && maxDepth <= 0 && topPaths <= 0) {
+            return null;
+        }
+        return new StackTreePruner(stackTree, minPercent, maxDepth, topPaths);
+    }
+
 }
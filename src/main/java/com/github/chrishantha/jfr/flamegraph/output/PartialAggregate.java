@@ -0,0 +1,94 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.BufferedWriter;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+
+/**
+ * The aggregates of the events of each event type in a JFR file or in a refresh interval of the stream mode, and the
+ * time range of the events.
+ */
+final class PartialAggregate {
+
+    final StackAggregate[] stackAggregates;
+    long startNanos;
+    long endNanos;
+
+    PartialAggregate(int eventTypeCount, FrameTable frameTable) {
+        stackAggregates = new StackAggregate[eventTypeCount];
+        for (int i = 0; i < eventTypeCount; i++) {
+            stackAggregates[i] = new StackAggregate(frameTable);
+        }
+    }
+
+    /**
+     * Aggregate the events of a JFR file. The chunks of the file are parsed in the calling thread.
+     */
+    static PartialAggregate aggregateFile(ConversionContext conversionContext, Path jfrPath,
+                                          List<EventType> eventTypes, FrameTable frameTable) throws Exception {
+        PartialAggregate partialAggregate = new PartialAggregate(eventTypes.size(), frameTable);
+        FlameGraphOutputWriter[] aggregateWriters = new FlameGraphOutputWriter[eventTypes.size()];
+        for (int i = 0; i < aggregateWriters.length; i++) {
+            aggregateWriters[i] = new AggregateOutputWriter(partialAggregate.stackAggregates[i]);
+        }
+        int bottomFrameId = conversionContext.getBottomFrameId(jfrPath, frameTable);
+        conversionContext.convertFile(jfrPath, eventTypes, frameTable, 1, (startNanos, endNanos) -> {
+            partialAggregate.startNanos = startNanos;
+            partialAggregate.endNanos = endNanos;
+            return BottomFrameOutputWriter.addBottomFrame(aggregateWriters, bottomFrameId);
+        });
+        return partialAggregate;
+    }
+
+    /**
+     * Write the aggregate of each event type to the output writer of the event type.
+     */
+    void writeTo(FlameGraphOutputWriter[] flameGraphOutputWriters) {
+        for (int i = 0; i < stackAggregates.length; i++) {
+            stackAggregates[i].writeTo(flameGraphOutputWriters[i]);
+        }
+    }
+
+    /**
+     * Adds the events to a stack aggregate instead of writing an output.
+     */
+    private static final class AggregateOutputWriter implements FlameGraphOutputWriter {
+
+        private final StackAggregate stackAggregate;
+
+        AggregateOutputWriter(StackAggregate stackAggregate) {
+            this.stackAggregate = stackAggregate;
+        }
+
+        @Override
+        public void initialize(OutputWriterParameters parameters) {
+        }
+
+        @Override
+        public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, FrameStack stack,
+                                 long value) {
+            stackAggregate.add(startTimestamp, duration, stack, value);
+        }
+
+        @Override
+        public void writeOutput(BufferedWriter bufferedWriter) {
+        }
+    }
+}
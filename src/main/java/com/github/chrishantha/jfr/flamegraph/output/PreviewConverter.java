@@ -0,0 +1,121 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Create a preview of JFR files from a uniformly strided sample of the chunks in the time range. The chunks of all
+ * files are taken in order, and the chunk in the middle of each stride is parsed. The values are scaled by the size of
+ * all chunks to the size of the parsed chunks, and the estimates of the top frames of each event type are printed to
+ * the standard error.
+ */
+final class PreviewConverter {
+
+    /**
+     * The number of top frames of each event type with the estimates printed
+     */
+    private static final int TOP_FRAMES = 10;
+
+    private final ConversionContext conversionContext;
+    private final int stride;
+    private final int threads;
+
+    /**
+     * @param conversionContext The conversion of each chunk
+     * @param stride            The number of chunks of which one chunk is parsed
+     * @param threads           The number of chunks to parse in parallel
+     */
+    PreviewConverter(ConversionContext conversionContext, int stride, int threads) {
+        this.conversionContext = conversionContext;
+        this.stride = stride;
+        this.threads = threads;
+    }
+
+    /**
+     * Write the preview of the JFR files and print the estimates of the top frames.
+     */
+    void preview(List<Path> jfrPaths, List<EventType> eventTypes) throws Exception {
+        List<Path> chunkFiles = new ArrayList<>();
+        List<JFRChunk> chunks = new ArrayList<>();
+        long totalSize = 0;
+        for (Path jfrPath : jfrPaths) {
+            if (conversionContext.isCompressed(jfrPath)) {
+                throw new IllegalArgumentException("The preview mode needs uncompressed JFR files: " + jfrPath);
+            }
+            for (JFRChunk chunk : conversionContext.getChunks(jfrPath, eventTypes)) {
+                chunkFiles.add(jfrPath);
+                chunks.add(chunk);
+                totalSize += chunk.getSize();
+            }
+        }
+        int sampleCount = (chunks.size() + stride - 1) / stride;
+        int[] sampledChunks = new int[sampleCount];
+        long[] sampledSizes = new long[sampleCount];
+        for (int i = 0; i < sampleCount; i++) {
+            // The last stride may be shorter
+            sampledChunks[i] = Math.min(i * stride + stride / 2, chunks.size() - 1);
+            sampledSizes[i] = chunks.get(sampledChunks[i]).getSize();
+        }
+
+        FrameTable frameTable = new FrameTable();
+        FlameGraphOutputWriter[] flameGraphOutputWriters = conversionContext.createOutputWriters(eventTypes, 0, 0);
+        PreviewEstimate[] previewEstimates = new PreviewEstimate[eventTypes.size()];
+        for (int i = 0; i < previewEstimates.length; i++) {
+            previewEstimates[i] = new PreviewEstimate(frameTable, chunks.size(), totalSize, sampledSizes);
+        }
+        Path tempDirectory = Files.createTempDirectory("jfr_chunks_");
+        ExecutorService executorService = Executors.newFixedThreadPool(Math.max(1, Math.min(threads, sampleCount)));
+        try {
+            List<Future<StackAggregate[]>> futures = new ArrayList<>(sampleCount);
+            for (int chunkIndex : sampledChunks) {
+                Path jfrPath = chunkFiles.get(chunkIndex);
+                JFRChunk chunk = chunks.get(chunkIndex);
+                futures.add(executorService.submit(() -> conversionContext.aggregateChunk(
+                        chunk.extract(jfrPath, tempDirectory), eventTypes, frameTable)));
+            }
+            FlameGraphOutputWriter[] chunkWriters = new FlameGraphOutputWriter[eventTypes.size()];
+            for (int i = 0; i < sampleCount; i++) {
+                for (int j = 0; j < chunkWriters.length; j++) {
+                    chunkWriters[j] = previewEstimates[j].createChunkWriter(i, flameGraphOutputWriters[j]);
+                }
+                int bottomFrameId = conversionContext.getBottomFrameId(chunkFiles.get(sampledChunks[i]), frameTable);
+                JFRToFlameGraphWriter.writeAggregates(futures.get(i).get(),
+                        BottomFrameOutputWriter.addBottomFrame(chunkWriters, bottomFrameId));
+            }
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            throw cause instanceof Exception ? (Exception) cause : e;
+        } finally {
+            executorService.shutdownNow();
+            executorService.awaitTermination(1, TimeUnit.MINUTES);
+            JFRToFlameGraphWriter.deleteDirectory(tempDirectory);
+        }
+        conversionContext.writeOutput(eventTypes, flameGraphOutputWriters);
+        for (int i = 0; i < previewEstimates.length; i++) {
+            previewEstimates[i].print(System.err, eventTypes.get(i).toString(), TOP_FRAMES);
+        }
+        conversionContext.printEventCounts();
+    }
+}
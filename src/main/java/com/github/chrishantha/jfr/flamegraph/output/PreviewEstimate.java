@@ -0,0 +1,221 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.AbstractMap;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Estimates the values of an event type in a recording from the events in a sample of its chunks.
+ * <p>
+ * The chunks are the clusters of a cluster sample. The value of the recording is estimated with the ratio of the value
+ * to the size of the sampled chunks, and the variance of the estimate is derived from the differences between the
+ * chunks. The estimates are given for the total value and the value of each top frame, which is the frame at the top
+ * of the stack traces.
+ */
+final class PreviewEstimate {
+
+    /**
+     * The standard normal quantile of a 95% confidence interval
+     */
+    private static final double Z_95 = 1.96;
+
+    private static final String FORMAT = "%14s %14s  %s%n";
+
+    private final FrameTable frameTable;
+
+    private final int totalChunks;
+
+    private final long totalSize;
+
+    /**
+     * The size of each sampled chunk
+     */
+    private final long[] sizes;
+
+    /**
+     * The total value of each sampled chunk
+     */
+    private final long[] totals;
+
+    /**
+     * The values of each sampled chunk by the ID of the top frame
+     */
+    private final Map<Integer, long[]> topFrameValues = new HashMap<>();
+
+    /**
+     * The rounding error of the scaled values, which is added to the next value so that the scaled values add up to
+     * the estimate
+     */
+    private double roundingError;
+
+    /**
+     * @param frameTable  The frame table of the stack traces
+     * @param totalChunks The number of chunks in the recording
+     * @param totalSize   The size of the chunks in the recording in bytes
+     * @param sizes       The size of each sampled chunk in bytes
+     */
+    PreviewEstimate(FrameTable frameTable, int totalChunks, long totalSize, long[] sizes) {
+        this.frameTable = frameTable;
+        this.totalChunks = totalChunks;
+        this.totalSize = totalSize;
+        this.sizes = sizes;
+        this.totals = new long[sizes.length];
+    }
+
+    /**
+     * @return The factor to scale the values of the sampled chunks to the recording
+     */
+    double getScale() {
+        long sampledSize = getSampledSize();
+        return sampledSize > 0 ? (double) totalSize / sampledSize : 0;
+    }
+
+    private long getSampledSize() {
+        long sampledSize = 0;
+        for (long size : sizes) {
+            sampledSize += size;
+        }
+        return sampledSize;
+    }
+
+    /**
+     * Create an output writer for the events of a sampled chunk. The writer adds the values of the events to the
+     * estimates and passes the events with the scaled values to another output writer.
+     *
+     * @param chunk                  The index of the sampled chunk
+     * @param flameGraphOutputWriter The output writer of the preview
+     * @return The output writer of the chunk
+     */
+    FlameGraphOutputWriter createChunkWriter(int chunk, FlameGraphOutputWriter flameGraphOutputWriter) {
+        double scale = getScale();
+        return new FlameGraphOutputWriter() {
+            @Override
+            public void initialize(OutputWriterParameters parameters) {
+            }
+
+            @Override
+            public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration,
+                                     FrameStack stack, long value) {
+                add(chunk, stack, value);
+                double scaledValue = value * scale + roundingError;
+                long roundedValue = Math.round(scaledValue);
+                roundingError = scaledValue - roundedValue;
+                flameGraphOutputWriter.processEvent(startTimestamp, endTimestamp, duration, stack, roundedValue);
+            }
+
+            @Override
+            public void writeOutput(BufferedWriter bufferedWriter) throws IOException {
+                flameGraphOutputWriter.writeOutput(bufferedWriter);
+            }
+        };
+    }
+
+    /**
+     * Add the value of an event in a sampled chunk.
+     */
+    void add(int chunk, FrameStack stack, long value) {
+        totals[chunk] += value;
+        if (stack.getDepth() == 0) {
+            return;
+        }
+        int topFrameId = stack.getFrameId(stack.getDepth() - 1);
+        long[] values = topFrameValues.get(topFrameId);
+        if (values == null) {
+            values = new long[sizes.length];
+            topFrameValues.put(topFrameId, values);
+        }
+        values[chunk] += value;
+    }
+
+    /**
+     * Print the estimate of the total value and the values of the top frames with the highest estimates.
+     *
+     * @param out       The stream to print
+     * @param eventType The name of the event type
+     * @param topFrames The maximum number of top frames to print
+     */
+    void print(PrintStream out, String eventType, int topFrames) {
+        long sampledSize = getSampledSize();
+        out.format(Locale.ROOT, "Preview of %s from %d of %d chunks (%.1f%% of %,d bytes) with 95%% confidence " +
+                        "intervals%n", eventType, sizes.length, totalChunks,
+                totalSize > 0 ? sampledSize * 100.0 / totalSize : 0.0, totalSize);
+        out.format(FORMAT, "Estimate", "+/-", "Top Frame");
+        print(out, "Total", estimate(totals, sizes, totalChunks, totalSize));
+        List<Map.Entry<Integer, double[]>> estimates = new ArrayList<>(topFrameValues.size());
+        for (Map.Entry<Integer, long[]> entry : topFrameValues.entrySet()) {
+            estimates.add(new AbstractMap.SimpleImmutableEntry<>(entry.getKey(),
+                    estimate(entry.getValue(), sizes, totalChunks, totalSize)));
+        }
+        estimates.sort((a, b) -> {
+            int result = Double.compare(b.getValue()[0], a.getValue()[0]);
+            return result != 0 ? result : Integer.compare(a.getKey(), b.getKey());
+        });
+        for (Map.Entry<Integer, double[]> entry : estimates.subList(0, Math.min(topFrames, estimates.size()))) {
+            print(out, frameTable.getName(entry.getKey()), entry.getValue());
+        }
+    }
+
+    private static void print(PrintStream out, String name, double[] estimate) {
+        out.format(FORMAT, String.format(Locale.ROOT, "%,.0f", estimate[0]),
+                Double.isNaN(estimate[1]) ? "n/a" : String.format(Locale.ROOT, "%,.0f", estimate[1]), name);
+    }
+
+    /**
+     * Estimate the value of a recording with a ratio estimator of a cluster sample of its chunks.
+     *
+     * @param values      The value of each sampled chunk
+     * @param sizes       The size of each sampled chunk
+     * @param totalChunks The number of chunks in the recording
+     * @param totalSize   The size of the chunks in the recording
+     * @return The estimate and the half width of its 95% confidence interval, which is not a number with less than two
+     * sampled chunks
+     */
+    static double[] estimate(long[] values, long[] sizes, int totalChunks, long totalSize) {
+        int n = values.length;
+        double sampledValue = 0;
+        double sampledSize = 0;
+        for (int i = 0; i < n; i++) {
+            sampledValue += values[i];
+            sampledSize += sizes[i];
+        }
+        double ratio = sampledSize > 0 ? sampledValue / sampledSize : 0;
+        double estimate = ratio * totalSize;
+        if (n >= totalChunks) {
+            return new double[]{estimate, 0};
+        }
+        if (n < 2) {
+            return new double[]{estimate, Double.NaN};
+        }
+        double sumOfSquares = 0;
+        for (int i = 0; i < n; i++) {
+            double residual = values[i] - ratio * sizes[i];
+            sumOfSquares += residual * residual;
+        }
+        double variance = (double) totalChunks * totalChunks * (1 - (double) n / totalChunks) / n
+                * sumOfSquares / (n - 1);
+        return new double[]{estimate, Z_95 * Math.sqrt(variance)};
+    }
+}
@@ -0,0 +1,433 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A profile of a JFR file cached in a file next to the JFR file.
+ * <p>
+ * The cache has the events of all {@link EventType}s with a stack trace, so that the flame graphs of any event type,
+ * time range and frame format can be created without parsing the recording again. The methods are kept as the type
+ * name, method name and descriptor, and the frames as a method and a line number, so that the frame names are
+ * formatted when the cache is read. Stacks are arrays of frames from the bottom of the stack to the top.
+ * <p>
+ * The file has a header, the tables and a fixed size record for each event. The cache is used only when the size and
+ * the modification time of the JFR file have not changed. The tables are read when the cache is opened and the
+ * events are read through memory mapped windows of the file.
+ * <p>
+ * An index of the events by event type and time can be created, so that a query reads only the events of its event
+ * type in the blocks overlapping its time range instead of all the events in the cache.
+ */
+public final class ProfileCache {
+
+    /**
+     * Suffix of the cache file
+     */
+    public static final String CACHE_SUFFIX = ".profile";
+
+    static final int MAGIC = 0x4a464750; // "JFGP"
+    static final int VERSION = 3;
+
+    static final int HEADER_SIZE = 56;
+
+    /**
+     * Size of an event record: event type, stack, thread, start, end and value
+     */
+    private static final int EVENT_SIZE = 3 * Integer.BYTES + 3 * Long.BYTES;
+
+    private static final long EVENTS_PER_WINDOW = Integer.MAX_VALUE / EVENT_SIZE;
+
+    /**
+     * The number of events of an event type in a block of the event index
+     */
+    static final int INDEX_BLOCK_SIZE = 1024;
+
+    private final Path cachePath;
+    private final long startNanos;
+    private final long endNanos;
+    private final long eventsOffset;
+    private final long eventCount;
+
+    private String[] strings;
+    private int[] methodTypeNames;
+    private int[] methodNames;
+    private int[] methodDescriptors;
+    private int[] frameMethods;
+    private int[] frameLineNumbers;
+    private int[][] stacks;
+    private long[] threadIds;
+    private int[] threadNames;
+    private int[] threadGroupNames;
+    private int[] eventTypeNames;
+
+    private volatile EventIndex eventIndex;
+
+    /**
+     * Visits the events in the cache.
+     */
+    public interface EventVisitor {
+        /**
+         * @param eventType  The event type index
+         * @param stack      The stack index
+         * @param thread     The thread index or -1 if the event does not have a thread
+         * @param startNanos The start of the event in nanoseconds since the epoch
+         * @param endNanos   The end of the event in nanoseconds since the epoch
+         * @param value      The value of the event
+         */
+        void visit(int eventType, int stack, int thread, long startNanos, long endNanos, long value);
+    }
+
+    /**
+     * The events of each event type in the order they were added, in blocks with the time range of their events
+     */
+    private static final class EventIndex {
+
+        private final long[][] events;
+        private final long[][] blockStartNanos;
+        private final long[][] blockEndNanos;
+
+        EventIndex(long[][] events, long[][] blockStartNanos, long[][] blockEndNanos) {
+            this.events = events;
+            this.blockStartNanos = blockStartNanos;
+            this.blockEndNanos = blockEndNanos;
+        }
+    }
+
+    private ProfileCache(Path cachePath, long startNanos, long endNanos, long eventsOffset, long eventCount) {
+        this.cachePath = cachePath;
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+        this.eventsOffset = eventsOffset;
+        this.eventCount = eventCount;
+    }
+
+    /**
+     * @param jfrPath The JFR file
+     * @return The cache file of the JFR file
+     */
+    public static Path getCachePath(Path jfrPath) {
+        return jfrPath.resolveSibling(jfrPath.getFileName() + CACHE_SUFFIX);
+    }
+
+    /**
+     * Open the cache of a JFR file.
+     *
+     * @param jfrPath The JFR file
+     * @return The cache or {@code null} if there is no cache or the cache is out of date
+     * @throws IOException If the JFR file cannot be read
+     */
+    public static ProfileCache open(Path jfrPath) throws IOException {
+        Path cachePath = getCachePath(jfrPath);
+        if (!Files.isRegularFile(cachePath)) {
+            return null;
+        }
+        long fileSize = Files.size(jfrPath);
+        long lastModified = Files.getLastModifiedTime(jfrPath).toMillis();
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            if (channel.size() < HEADER_SIZE) {
+                return null;
+            }
+            ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            if (header.getInt() != MAGIC || header.getInt() != VERSION || header.getLong() != fileSize
+                    || header.getLong() != lastModified) {
+                return null;
+            }
+            long startNanos = header.getLong();
+            long endNanos = header.getLong();
+            long tablesSize = header.getLong();
+            long eventCount = header.getLong();
+            long eventsOffset = HEADER_SIZE + tablesSize;
+            if (tablesSize < 0 || tablesSize > Integer.MAX_VALUE || eventCount < 0
+                    || channel.size() != eventsOffset + eventCount * EVENT_SIZE) {
+                System.err.println("The profile cache " + cachePath + " is corrupted");
+                return null;
+            }
+            ProfileCache profileCache = new ProfileCache(cachePath, startNanos, endNanos, eventsOffset, eventCount);
+            try {
+                profileCache.readTables(channel.map(FileChannel.MapMode.READ_ONLY, HEADER_SIZE, tablesSize));
+            } catch (BufferUnderflowException | IndexOutOfBoundsException | NegativeArraySizeException e) {
+                System.err.println("The profile cache " + cachePath + " is corrupted");
+                return null;
+            }
+            return profileCache;
+        }
+    }
+
+    private void readTables(ByteBuffer tables) {
+        strings = new String[tables.getInt()];
+        for (int i = 0; i < strings.length; i++) {
+            byte[] utf8 = new byte[tables.getInt()];
+            tables.get(utf8);
+            strings[i] = new String(utf8, StandardCharsets.UTF_8);
+        }
+        int methodCount = tables.getInt();
+        methodTypeNames = new int[methodCount];
+        methodNames = new int[methodCount];
+        methodDescriptors = new int[methodCount];
+        for (int i = 0; i < methodCount; i++) {
+            methodTypeNames[i] = tables.getInt();
+            methodNames[i] = tables.getInt();
+            methodDescriptors[i] = tables.getInt();
+        }
+        int frameCount = tables.getInt();
+        frameMethods = new int[frameCount];
+        frameLineNumbers = new int[frameCount];
+        for (int i = 0; i < frameCount; i++) {
+            frameMethods[i] = tables.getInt();
+            frameLineNumbers[i] = tables.getInt();
+        }
+        stacks = new int[tables.getInt()][];
+        for (int i = 0; i < stacks.length; i++) {
+            int[] stack = new int[tables.getInt()];
+            tables.asIntBuffer().get(stack);
+            tables.position(tables.position() + stack.length * Integer.BYTES);
+            stacks[i] = stack;
+        }
+        int threadCount = tables.getInt();
+        threadIds = new long[threadCount];
+        threadNames = new int[threadCount];
+        threadGroupNames = new int[threadCount];
+        for (int i = 0; i < threadCount; i++) {
+            threadIds[i] = tables.getLong();
+            threadNames[i] = tables.getInt();
+            threadGroupNames[i] = tables.getInt();
+        }
+        eventTypeNames = new int[tables.getInt()];
+        for (int i = 0; i < eventTypeNames.length; i++) {
+            eventTypeNames[i] = tables.getInt();
+        }
+    }
+
+    /**
+     * Read all events in the order they were added.
+     *
+     * @param visitor The event visitor
+     * @throws IOException If the cache cannot be read
+     */
+    public void readEvents(EventVisitor visitor) throws IOException {
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            for (long first = 0; first < eventCount; first += EVENTS_PER_WINDOW) {
+                long count = Math.min(EVENTS_PER_WINDOW, eventCount - first);
+                MappedByteBuffer events = channel.map(FileChannel.MapMode.READ_ONLY,
+                        eventsOffset + first * EVENT_SIZE, count * EVENT_SIZE);
+                for (long i = 0; i < count; i++) {
+                    visitor.visit(events.getInt(), events.getInt(), events.getInt(), events.getLong(),
+                            events.getLong(), events.getLong());
+                }
+            }
+        }
+    }
+
+    /**
+     * Create the index of the events by event type and time, if it does not exist. The index keeps the position of
+     * each event in memory.
+     *
+     * @throws IOException If the cache cannot be read
+     */
+    public synchronized void createEventIndex() throws IOException {
+        if (eventIndex != null) {
+            return;
+        }
+        int eventTypeCount = getEventTypeCount();
+        long[][] events = new long[eventTypeCount][];
+        long[][] blockStartNanos = new long[eventTypeCount][];
+        long[][] blockEndNanos = new long[eventTypeCount][];
+        int[] counts = new int[eventTypeCount];
+        for (int eventType = 0; eventType < eventTypeCount; eventType++) {
+            events[eventType] = new long[INDEX_BLOCK_SIZE];
+            blockStartNanos[eventType] = new long[1];
+            blockEndNanos[eventType] = new long[1];
+        }
+        long[] position = new long[1];
+        readEvents((eventType, stack, thread, startNanos, endNanos, value) -> {
+            int count = counts[eventType];
+            int block = count / INDEX_BLOCK_SIZE;
+            if (count == events[eventType].length) {
+                events[eventType] = Arrays.copyOf(events[eventType], count * 2);
+            }
+            if (block == blockStartNanos[eventType].length) {
+                blockStartNanos[eventType] = Arrays.copyOf(blockStartNanos[eventType], block * 2);
+                blockEndNanos[eventType] = Arrays.copyOf(blockEndNanos[eventType], block * 2);
+            }
+            if (count % INDEX_BLOCK_SIZE == 0) {
+                blockStartNanos[eventType][block] = startNanos;
+                blockEndNanos[eventType][block] = endNanos;
+            } else {
+                blockStartNanos[eventType][block] = Math.min(blockStartNanos[eventType][block], startNanos);
+                blockEndNanos[eventType][block] = Math.max(blockEndNanos[eventType][block], endNanos);
+            }
+            events[eventType][count] = position[0]++;
+            counts[eventType] = count + 1;
+        });
+        for (int eventType = 0; eventType < eventTypeCount; eventType++) {
+            int blocks = (counts[eventType] + INDEX_BLOCK_SIZE - 1) / INDEX_BLOCK_SIZE;
+            events[eventType] = Arrays.copyOf(events[eventType], counts[eventType]);
+            blockStartNanos[eventType] = Arrays.copyOf(blockStartNanos[eventType], blocks);
+            blockEndNanos[eventType] = Arrays.copyOf(blockEndNanos[eventType], blocks);
+        }
+        eventIndex = new EventIndex(events, blockStartNanos, blockEndNanos);
+    }
+
+    /**
+     * @return Whether the index of the events by event type and time was created
+     */
+    public boolean hasEventIndex() {
+        return eventIndex != null;
+    }
+
+    /**
+     * Read the events of an event type which may overlap a time range, in the order they were added. The events are
+     * read in blocks, so events of a block outside the time range may be read too. All events are read if the event
+     * index was not created.
+     *
+     * @param eventType  The event type index
+     * @param startNanos The start of the time range in nanoseconds since the epoch
+     * @param endNanos   The end of the time range in nanoseconds since the epoch
+     * @param visitor    The event visitor
+     * @throws IOException If the cache cannot be read
+     */
+    public void readEvents(int eventType, long startNanos, long endNanos, EventVisitor visitor) throws IOException {
+        EventIndex index = eventIndex;
+        if (index == null) {
+            readEvents((type, stack, thread, eventStartNanos, eventEndNanos, value) -> {
+                if (type == eventType) {
+                    visitor.visit(type, stack, thread, eventStartNanos, eventEndNanos, value);
+                }
+            });
+            return;
+        }
+        long[] events = index.events[eventType];
+        long[] blockStartNanos = index.blockStartNanos[eventType];
+        long[] blockEndNanos = index.blockEndNanos[eventType];
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.READ)) {
+            long mappedWindow = -1;
+            MappedByteBuffer window = null;
+            for (int block = 0; block < blockStartNanos.length; block++) {
+                if (blockStartNanos[block] > endNanos || blockEndNanos[block] < startNanos) {
+                    continue;
+                }
+                int last = Math.min(events.length, (block + 1) * INDEX_BLOCK_SIZE);
+                for (int i = block * INDEX_BLOCK_SIZE; i < last; i++) {
+                    long event = events[i];
+                    long windowIndex = event / EVENTS_PER_WINDOW;
+                    if (windowIndex != mappedWindow) {
+                        long first = windowIndex * EVENTS_PER_WINDOW;
+                        long count = Math.min(EVENTS_PER_WINDOW, eventCount - first);
+                        window = channel.map(FileChannel.MapMode.READ_ONLY, eventsOffset + first * EVENT_SIZE,
+                                count * EVENT_SIZE);
+                        mappedWindow = windowIndex;
+                    }
+                    window.position((int) (event - windowIndex * EVENTS_PER_WINDOW) * EVENT_SIZE);
+                    visitor.visit(window.getInt(), window.getInt(), window.getInt(), window.getLong(),
+                            window.getLong(), window.getLong());
+                }
+            }
+        }
+    }
+
+    /**
+     * @return The start of the first chunk in nanoseconds since the epoch
+     */
+    public long getStartNanos() {
+        return startNanos;
+    }
+
+    /**
+     * @return The end of the last chunk in nanoseconds since the epoch
+     */
+    public long getEndNanos() {
+        return endNanos;
+    }
+
+    public long getEventCount() {
+        return eventCount;
+    }
+
+    public int getEventTypeCount() {
+        return eventTypeNames.length;
+    }
+
+    /**
+     * @return The JFR event name of the event type
+     */
+    public String getEventTypeName(int eventType) {
+        return strings[eventTypeNames[eventType]];
+    }
+
+    public int getStackCount() {
+        return stacks.length;
+    }
+
+    /**
+     * @return The frames of the stack, from the bottom of the stack to the top. The array must not be modified.
+     */
+    public int[] getStack(int stack) {
+        return stacks[stack];
+    }
+
+    public int getFrameCount() {
+        return frameMethods.length;
+    }
+
+    /**
+     * @return The qualified name of the type declaring the method of the frame
+     */
+    public String getFrameTypeName(int frame) {
+        return strings[methodTypeNames[frameMethods[frame]]];
+    }
+
+    public String getFrameMethodName(int frame) {
+        return strings[methodNames[frameMethods[frame]]];
+    }
+
+    public String getFrameDescriptor(int frame) {
+        return strings[methodDescriptors[frameMethods[frame]]];
+    }
+
+    public int getFrameLineNumber(int frame) {
+        return frameLineNumbers[frame];
+    }
+
+    public int getThreadCount() {
+        return threadIds.length;
+    }
+
+    public long getJavaThreadId(int thread) {
+        return threadIds[thread];
+    }
+
+    public String getThreadName(int thread) {
+        return strings[threadNames[thread]];
+    }
+
+    /**
+     * @return The name of the thread group of the thread, or {@code null} if the thread does not have a group
+     */
+    public String getThreadGroupName(int thread) {
+        int threadGroupName = threadGroupNames[thread];
+        return threadGroupName < 0 ? null : strings[threadGroupName];
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.IOException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.file.Path;
+
+/**
+ * Serve the flame graphs of a JFR file. The profile cache of the file is the index of the recording, and each request
+ * reads the events in the cache. The server keeps running until the JVM exits.
+ */
+final class ProfileCacheServer {
+
+    /**
+     * The maximum total size of the responses kept by the server
+     */
+    private static final long MAX_CACHE_BYTES = 64L * 1024 * 1024;
+
+    private final ConversionContext conversionContext;
+    private final OutputWriterParameters parameters;
+    private final int threads;
+
+    /**
+     * @param conversionContext The conversion with the names of the frames
+     * @param parameters        The parameters of the output writers
+     * @param threads           The number of requests handled in parallel
+     */
+    ProfileCacheServer(ConversionContext conversionContext, OutputWriterParameters parameters, int threads) {
+        this.conversionContext = conversionContext;
+        this.parameters = parameters;
+        this.threads = threads;
+    }
+
+    /**
+     * Start the server and print its URL to the standard error.
+     *
+     * @param address The address to listen on, or {@code null} for the loopback address
+     * @param port    The port to listen on, or zero for any free port
+     */
+    void serve(Path jfrPath, String address, int port) throws Exception {
+        ProfileCache profileCache = conversionContext.openProfileCache(jfrPath);
+        if (profileCache == null) {
+            throw new IOException("The server needs the profile cache of " + jfrPath);
+        }
+        InetAddress inetAddress = address == null ? InetAddress.getLoopbackAddress() : InetAddress.getByName(address);
+        FlameGraphServer flameGraphServer = new FlameGraphServer(profileCache,
+                conversionContext::createFrameNameCache, parameters, new InetSocketAddress(inetAddress, port), threads,
+                MAX_CACHE_BYTES);
+        flameGraphServer.start();
+        InetSocketAddress serverAddress = flameGraphServer.getAddress();
+        System.err.println("Serving the flamegraphs of " + jfrPath + " at http://" + serverAddress.getHostString()
+                + ":" + serverAddress.getPort() + FlameGraphServer.PATH);
+    }
+}
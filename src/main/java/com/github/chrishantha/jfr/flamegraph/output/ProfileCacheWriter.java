@@ -0,0 +1,380 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordedMethod;
+import jdk.jfr.consumer.RecordedStackTrace;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordedThreadGroup;
+import jdk.jfr.consumer.RecordingFile;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Write a {@link ProfileCache} file for a JFR file.
+ * <p>
+ * The events of all {@link EventType}s with a stack trace are added from one or more recordings, such as the chunks
+ * of a compressed file. Methods, frames, stacks, threads and event types are interned in tables. The events are
+ * written to a temporary file while the recordings are read, so that only the tables are kept in memory.
+ */
+public final class ProfileCacheWriter implements AutoCloseable {
+
+    /**
+     * Maximum number of stack trace, method and thread instances of a recording looked up by identity. The tables are
+     * looked up by value when an instance is not found.
+     */
+    private static final int MAX_INSTANCES = 1 << 16;
+
+    private final Path jfrPath;
+    private final Path eventsPath;
+    private final DataOutputStream eventsOut;
+    private final Map<String, EventType> eventTypesByName = new HashMap<>();
+
+    private final List<String> strings = new ArrayList<>();
+    private final Map<String, Integer> stringIds = new HashMap<>();
+    private final List<int[]> methods = new ArrayList<>();
+    private final Map<String, Integer> methodIds = new HashMap<>();
+    private final List<int[]> frames = new ArrayList<>();
+    private final Map<Long, Integer> frameIds = new HashMap<>();
+    private final List<int[]> stacks = new ArrayList<>();
+    private final Map<StackKey, Integer> stackIds = new HashMap<>();
+    private final List<long[]> threads = new ArrayList<>();
+    private final Map<String, Integer> threadIds = new HashMap<>();
+    private final List<Integer> eventTypeNames = new ArrayList<>();
+    private final Map<String, Integer> eventTypeIds = new HashMap<>();
+
+    private long eventCount;
+    private long startNanos = Long.MAX_VALUE;
+    private long endNanos = Long.MIN_VALUE;
+
+    /**
+     * @param jfrPath The JFR file. The cache is written next to it.
+     * @throws IOException If the temporary file for the events cannot be created
+     */
+    public ProfileCacheWriter(Path jfrPath) throws IOException {
+        this.jfrPath = jfrPath;
+        Path cachePath = ProfileCache.getCachePath(jfrPath);
+        this.eventsPath = Files.createTempFile(cachePath.toAbsolutePath().getParent(), "jfr_profile_", ".tmp");
+        this.eventsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(eventsPath), 64 * 1024));
+        for (EventType eventType : EventType.values()) {
+            for (String eventName : eventType.getEventNames()) {
+                eventTypesByName.put(eventName, eventType);
+            }
+        }
+    }
+
+    /**
+     * Extend the time range of the recording.
+     *
+     * @param startNanos The start of a chunk in nanoseconds since the epoch
+     * @param endNanos   The end of a chunk in nanoseconds since the epoch
+     */
+    public void addTimeRange(long startNanos, long endNanos) {
+        this.startNanos = Math.min(this.startNanos, startNanos);
+        this.endNanos = Math.max(this.endNanos, endNanos);
+    }
+
+    /**
+     * Add the events of a recording.
+     *
+     * @param recording The recording
+     * @throws IOException If the recording cannot be read or the events cannot be written
+     */
+    public void addRecording(RecordingFile recording) throws IOException {
+        // The parser shares these instances between the events of a chunk. The maps are cleared when they are full,
+        // so that they do not keep the instances of all chunks of the recording.
+        Map<jdk.jfr.EventType, EventType.ValueAccessor> valueAccessors = new IdentityHashMap<>();
+        Map<jdk.jfr.EventType, Integer> recordingEventTypeIds = new IdentityHashMap<>();
+        Map<RecordedStackTrace, Integer> recordingStackIds = new IdentityHashMap<>();
+        Map<RecordedMethod, Integer> recordingMethodIds = new IdentityHashMap<>();
+        Map<RecordedThread, Integer> recordingThreadIds = new IdentityHashMap<>();
+        Map<jdk.jfr.EventType, Boolean> sampledThreadTypes = new IdentityHashMap<>();
+        while (recording.hasMoreEvents()) {
+            RecordedEvent event = recording.readEvent();
+            jdk.jfr.EventType type = event.getEventType();
+            EventType.ValueAccessor valueAccessor = valueAccessors.get(type);
+            if (valueAccessor == null) {
+                if (valueAccessors.containsKey(type)) {
+                    continue;
+                }
+                EventType eventType = eventTypesByName.get(type.getName());
+                valueAccessor = eventType != null ? eventType.bindValueAccessor(type) : null;
+                valueAccessors.put(type, valueAccessor);
+                if (valueAccessor == null) {
+                    continue;
+                }
+            }
+            RecordedStackTrace stackTrace = event.getStackTrace();
+            if (stackTrace == null) {
+                continue;
+            }
+            Integer eventTypeId = recordingEventTypeIds.get(type);
+            if (eventTypeId == null) {
+                eventTypeId = internEventType(type.getName());
+                recordingEventTypeIds.put(type, eventTypeId);
+            }
+            Integer stackId = recordingStackIds.get(stackTrace);
+            if (stackId == null) {
+                stackId = internStack(stackTrace, recordingMethodIds);
+                putInstance(recordingStackIds, stackTrace, stackId);
+            }
+            int threadId = -1;
+            // The execution samples have the thread in another field
+            RecordedThread thread = sampledThreadTypes.computeIfAbsent(type,
+                    t -> t.getField(ThreadCache.SAMPLED_THREAD_FIELD) != null)
+                    ? event.getThread(ThreadCache.SAMPLED_THREAD_FIELD) : event.getThread();
+            if (thread != null) {
+                Integer id = recordingThreadIds.get(thread);
+                if (id == null) {
+                    id = internThread(thread);
+                    putInstance(recordingThreadIds, thread, id);
+                }
+                threadId = id;
+            }
+            eventsOut.writeInt(eventTypeId);
+            eventsOut.writeInt(stackId);
+            eventsOut.writeInt(threadId);
+            eventsOut.writeLong(JFRToFlameGraphWriter.toEpochNanos(event.getStartTime()));
+            eventsOut.writeLong(JFRToFlameGraphWriter.toEpochNanos(event.getEndTime()));
+            eventsOut.writeLong(valueAccessor.getValue(event));
+            eventCount++;
+        }
+    }
+
+    /**
+     * Write the cache file. The cache is first written to a temporary file, which then replaces the cache file.
+     *
+     * @throws IOException If the cache cannot be written
+     */
+    public void write() throws IOException {
+        eventsOut.close();
+        Path cachePath = ProfileCache.getCachePath(jfrPath);
+        Path tempPath = Files.createTempFile(cachePath.toAbsolutePath().getParent(), "jfr_profile_", ".tmp");
+        try {
+            long fileSize = Files.size(jfrPath);
+            long lastModified = Files.getLastModifiedTime(jfrPath).toMillis();
+            byte[] tables = writeTables();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempPath)))) {
+                out.writeInt(ProfileCache.MAGIC);
+                out.writeInt(ProfileCache.VERSION);
+                out.writeLong(fileSize);
+                out.writeLong(lastModified);
+                // The time range is empty if there are no chunks
+                out.writeLong(startNanos <= endNanos ? startNanos : 0);
+                out.writeLong(startNanos <= endNanos ? endNanos : 0);
+                out.writeLong(tables.length);
+                out.writeLong(eventCount);
+                out.write(tables);
+            }
+            try (FileChannel in = FileChannel.open(eventsPath, StandardOpenOption.READ);
+                 FileChannel out = FileChannel.open(tempPath, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+                long size = in.size();
+                long position = 0;
+                while (position < size) {
+                    position += in.transferTo(position, size - position, out);
+                }
+            }
+            Files.move(tempPath, cachePath, StandardCopyOption.REPLACE_EXISTING);
+        } finally {
+            Files.deleteIfExists(tempPath);
+            Files.deleteIfExists(eventsPath);
+        }
+    }
+
+    /**
+     * Delete the temporary file of the events.
+     */
+    @Override
+    public void close() throws IOException {
+        eventsOut.close();
+        Files.deleteIfExists(eventsPath);
+    }
+
+    private byte[] writeTables() throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(strings.size());
+            for (String string : strings) {
+                byte[] utf8 = string.getBytes(StandardCharsets.UTF_8);
+                out.writeInt(utf8.length);
+                out.write(utf8);
+            }
+            writeRecords(out, methods);
+            writeRecords(out, frames);
+            out.writeInt(stacks.size());
+            for (int[] stack : stacks) {
+                out.writeInt(stack.length);
+                for (int frame : stack) {
+                    out.writeInt(frame);
+                }
+            }
+            out.writeInt(threads.size());
+            for (long[] thread : threads) {
+                out.writeLong(thread[0]);
+                out.writeInt((int) thread[1]);
+                out.writeInt((int) thread[2]);
+            }
+            out.writeInt(eventTypeNames.size());
+            for (int name : eventTypeNames) {
+                out.writeInt(name);
+            }
+        }
+        return bytes.toByteArray();
+    }
+
+    private static void writeRecords(DataOutputStream out, List<int[]> records) throws IOException {
+        out.writeInt(records.size());
+        for (int[] record : records) {
+            for (int value : record) {
+                out.writeInt(value);
+            }
+        }
+    }
+
+    private int internString(String string) {
+        Integer id = stringIds.get(string);
+        if (id == null) {
+            id = strings.size();
+            strings.add(string);
+            stringIds.put(string, id);
+        }
+        return id;
+    }
+
+    private int internEventType(String name) {
+        Integer id = eventTypeIds.get(name);
+        if (id == null) {
+            id = eventTypeNames.size();
+            eventTypeNames.add(internString(name));
+            eventTypeIds.put(name, id);
+        }
+        return id;
+    }
+
+    /**
+     * Intern a stack with the frames from the bottom of the stack to the top. Frames without a method are skipped.
+     */
+    private int internStack(RecordedStackTrace stackTrace, Map<RecordedMethod, Integer> recordingMethodIds) {
+        List<RecordedFrame> recordedFrames = stackTrace.getFrames();
+        int[] stack = new int[recordedFrames.size()];
+        int depth = 0;
+        for (int i = recordedFrames.size() - 1; i >= 0; i--) {
+            RecordedFrame frame = recordedFrames.get(i);
+            RecordedMethod method = frame.getMethod();
+            if (method == null) {
+                continue;
+            }
+            Integer methodId = recordingMethodIds.get(method);
+            if (methodId == null) {
+                methodId = internMethod(method);
+                putInstance(recordingMethodIds, method, methodId);
+            }
+            stack[depth++] = internFrame(methodId, frame.getLineNumber());
+        }
+        StackKey key = new StackKey(depth == stack.length ? stack : Arrays.copyOf(stack, depth));
+        Integer id = stackIds.get(key);
+        if (id == null) {
+            id = stacks.size();
+            stacks.add(key.frames);
+            stackIds.put(key, id);
+        }
+        return id;
+    }
+
+    private int internMethod(RecordedMethod method) {
+        String typeName = method.getType().getName();
+        String key = typeName + '.' + method.getName() + method.getDescriptor();
+        Integer id = methodIds.get(key);
+        if (id == null) {
+            id = methods.size();
+            methods.add(new int[]{internString(typeName), internString(method.getName()),
+                    internString(method.getDescriptor())});
+            methodIds.put(key, id);
+        }
+        return id;
+    }
+
+    private int internFrame(int methodId, int lineNumber) {
+        Long key = ((long) methodId << 32) | (lineNumber & 0xffffffffL);
+        Integer id = frameIds.get(key);
+        if (id == null) {
+            id = frames.size();
+            frames.add(new int[]{methodId, lineNumber});
+            frameIds.put(key, id);
+        }
+        return id;
+    }
+
+    private int internThread(RecordedThread thread) {
+        String name = ThreadCache.getThreadName(thread);
+        RecordedThreadGroup threadGroup = thread.getThreadGroup();
+        String threadGroupName = threadGroup == null ? null : threadGroup.getName();
+        long javaThreadId = thread.getJavaThreadId();
+        String key = javaThreadId + ":" + name + ":" + threadGroupName;
+        Integer id = threadIds.get(key);
+        if (id == null) {
+            id = threads.size();
+            threads.add(new long[]{javaThreadId, internString(name),
+                    threadGroupName == null ? -1 : internString(threadGroupName)});
+            threadIds.put(key, id);
+        }
+        return id;
+    }
+
+    private static <T> void putInstance(Map<T, Integer> recordingIds, T instance, Integer id) {
+        if (recordingIds.size() >= MAX_INSTANCES) {
+            recordingIds.clear();
+        }
+        recordingIds.put(instance, id);
+    }
+
+    private static final class StackKey {
+        private final int[] frames;
+        private final int hash;
+
+        StackKey(int[] frames) {
+            this.frames = frames;
+            this.hash = Arrays.hashCode(frames);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof StackKey && Arrays.equals(frames, ((StackKey) o).frames);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
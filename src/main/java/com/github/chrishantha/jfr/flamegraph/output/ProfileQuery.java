@@ -0,0 +1,224 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Selects the events in a {@link ProfileCache} and passes them to output writers.
+ * <p>
+ * The events can be selected by event type, time range, thread and frame. The frame IDs of each stack are resolved
+ * when the stack is first used. The name of the thread can be added as the bottom frame of each stack. A query can be
+ * run more than once, and several queries can read the same cache concurrently. If the cache has an event index, only
+ * the events of the selected event types in the blocks overlapping the time range are read.
+ */
+final class ProfileQuery {
+
+    /**
+     * The frame ID of a frame which is not resolved yet. Excluded frames are resolved to -1.
+     */
+    private static final int UNRESOLVED = -2;
+
+    private final ProfileCache profileCache;
+    private final List<EventType> eventTypes;
+
+    private long startNanos = Long.MIN_VALUE;
+    private long endNanos = Long.MAX_VALUE;
+    private String threadName;
+    private ThreadFilter threadFilter;
+    private boolean threadFrames;
+    private String frameFilter;
+
+    private final long[] readCounts;
+    private final long[] consumedCounts;
+
+    /**
+     * @param profileCache The profile cache
+     * @param eventTypes   The selected event types, in the order of the output writers
+     */
+    ProfileQuery(ProfileCache profileCache, List<EventType> eventTypes) {
+        this.profileCache = profileCache;
+        this.eventTypes = eventTypes;
+        this.readCounts = new long[profileCache.getEventTypeCount()];
+        this.consumedCounts = new long[profileCache.getEventTypeCount()];
+    }
+
+    /**
+     * Select the events overlapping a time range.
+     *
+     * @param startNanos The start of the time range in nanoseconds since the epoch
+     * @param endNanos   The end of the time range in nanoseconds since the epoch
+     */
+    void setTimeRange(long startNanos, long endNanos) {
+        this.startNanos = startNanos;
+        this.endNanos = endNanos;
+    }
+
+    /**
+     * @param threadName Select the events of the threads with the name, or {@code null} to select all threads
+     */
+    void setThreadName(String threadName) {
+        this.threadName = threadName;
+    }
+
+    /**
+     * @param threadFilter Select the events of the threads matching the filter, or {@code null} to select all threads
+     */
+    void setThreadFilter(ThreadFilter threadFilter) {
+        this.threadFilter = threadFilter;
+    }
+
+    /**
+     * @param threadFrames Whether to add the name of the thread as the bottom frame of each stack
+     */
+    void setThreadFrames(boolean threadFrames) {
+        this.threadFrames = threadFrames;
+    }
+
+    /**
+     * @param frameFilter Select the stacks with a frame name containing the text, or {@code null} to select all
+     *                    stacks
+     */
+    void setFrameFilter(String frameFilter) {
+        this.frameFilter = frameFilter;
+    }
+
+    /**
+     * Pass the selected events to the output writers.
+     *
+     * @param frameNameCache          The cache to format the frame names
+     * @param flameGraphOutputWriters The output writer of each event type
+     * @throws IOException If the cache cannot be read
+     */
+    void run(FrameNameCache frameNameCache, FlameGraphOutputWriter[] flameGraphOutputWriters) throws IOException {
+        int eventTypeCount = profileCache.getEventTypeCount();
+        int[][] targets = new int[eventTypeCount][];
+        for (int eventType = 0; eventType < eventTypeCount; eventType++) {
+            String eventName = profileCache.getEventTypeName(eventType);
+            targets[eventType] = IntStream.range(0, eventTypes.size())
+                    .filter(target -> Arrays.asList(eventTypes.get(target).getEventNames()).contains(eventName))
+                    .toArray();
+        }
+        boolean[] selectedThreads = null;
+        if (threadName != null || (threadFilter != null && !threadFilter.isEmpty())) {
+            selectedThreads = new boolean[profileCache.getThreadCount()];
+            for (int thread = 0; thread < selectedThreads.length; thread++) {
+                String name = profileCache.getThreadName(thread);
+                selectedThreads[thread] = (threadName == null || threadName.equals(name))
+                        && (threadFilter == null || threadFilter.matches(name, profileCache.getThreadGroupName(thread)));
+            }
+        }
+        boolean[] threads = selectedThreads;
+        FrameTable frameTable = frameNameCache.getFrameTable();
+        int[] threadFrameIds = null;
+        if (threadFrames) {
+            threadFrameIds = new int[profileCache.getThreadCount()];
+            for (int thread = 0; thread < threadFrameIds.length; thread++) {
+                threadFrameIds[thread] = frameTable.intern(profileCache.getThreadName(thread));
+            }
+        }
+        int[] threadNameFrames = threadFrameIds;
+        FrameStack frameStack = new FrameStack(frameTable);
+        int[] frameIds = new int[profileCache.getFrameCount()];
+        Arrays.fill(frameIds, UNRESOLVED);
+        int[][] stackFrameIds = new int[profileCache.getStackCount()][];
+        boolean[] selectedStacks = new boolean[profileCache.getStackCount()];
+
+        ProfileCache.EventVisitor visitor = (eventType, stack, thread, eventStartNanos, eventEndNanos, value) -> {
+            readCounts[eventType]++;
+            int[] eventTargets = targets[eventType];
+            if (eventTargets.length == 0 || eventStartNanos > endNanos || eventEndNanos < startNanos) {
+                return;
+            }
+            if (threads != null && (thread < 0 || !threads[thread])) {
+                return;
+            }
+            int[] stackIds = stackFrameIds[stack];
+            if (stackIds == null) {
+                int[] frames = profileCache.getStack(stack);
+                frameStack.clear();
+                for (int frame : frames) {
+                    if (frameIds[frame] == UNRESOLVED) {
+                        frameIds[frame] = frameNameCache.getFrameId(profileCache.getFrameTypeName(frame),
+                                profileCache.getFrameMethodName(frame), profileCache.getFrameDescriptor(frame),
+                                profileCache.getFrameLineNumber(frame));
+                    }
+                    frameNameCache.push(frameStack, frameIds[frame]);
+                }
+                stackIds = frameStack.toFrameIds();
+                stackFrameIds[stack] = stackIds;
+                selectedStacks[stack] = frameNameCache.isSelected(frameStack)
+                        && (frameFilter == null || matchesFrameFilter(frameTable, stackIds));
+            }
+            if (!selectedStacks[stack]) {
+                return;
+            }
+            if (threadNameFrames != null && thread >= 0) {
+                frameStack.clear();
+                frameStack.push(threadNameFrames[thread]);
+                for (int frameId : stackIds) {
+                    frameStack.push(frameId);
+                }
+            } else {
+                frameStack.set(stackIds);
+            }
+            Instant startTime = Instant.ofEpochSecond(0, eventStartNanos);
+            Instant endTime = Instant.ofEpochSecond(0, eventEndNanos);
+            Duration duration = Duration.ofNanos(eventEndNanos - eventStartNanos);
+            for (int target : eventTargets) {
+                flameGraphOutputWriters[target].processEvent(startTime, endTime, duration, frameStack, value);
+            }
+            consumedCounts[eventType]++;
+        };
+        if (profileCache.hasEventIndex()) {
+            for (int eventType = 0; eventType < eventTypeCount; eventType++) {
+                if (targets[eventType].length > 0) {
+                    profileCache.readEvents(eventType, startNanos, endNanos, visitor);
+                }
+            }
+        } else {
+            profileCache.readEvents(visitor);
+        }
+    }
+
+    private boolean matchesFrameFilter(FrameTable frameTable, int[] stackIds) {
+        for (int frameId : stackIds) {
+            if (frameTable.getName(frameId).contains(frameFilter)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return The number of events of each event type in the cache read by the runs of this query
+     */
+    long[] getReadCounts() {
+        return readCounts;
+    }
+
+    /**
+     * @return The number of events of each event type in the cache passed to the output writers
+     */
+    long[] getConsumedCounts() {
+        return consumedCounts;
+    }
+}
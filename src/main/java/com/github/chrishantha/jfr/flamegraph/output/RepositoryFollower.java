@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.List;
+
+/**
+ * Follow a JFR repository. Each completed chunk file is converted once, and the output is written at each refresh
+ * interval if there are new events. Without a rolling window, the events are added to the same output writers. With a
+ * rolling window, the aggregate of each file is kept while the file has events in the window, and the output writers
+ * are created again from the aggregates. The window ends at the end of the latest chunk.
+ */
+final class RepositoryFollower {
+
+    private final ConversionContext conversionContext;
+    private final Path directory;
+    private final long refreshInterval;
+    private final long rollingWindow;
+
+    private FlameGraphOutputWriter[] runningWriters;
+
+    /**
+     * @param conversionContext The conversion of each file
+     * @param directory         The repository directory
+     * @param refreshInterval   The time between the outputs in nanoseconds
+     * @param rollingWindow     The length of the rolling window in nanoseconds, or zero to keep all events
+     */
+    RepositoryFollower(ConversionContext conversionContext, Path directory, long refreshInterval,
+                       long rollingWindow) {
+        this.conversionContext = conversionContext;
+        this.directory = directory;
+        this.refreshInterval = refreshInterval;
+        this.rollingWindow = rollingWindow;
+    }
+
+    /**
+     * Follow the repository until the thread is interrupted or the output cannot be written.
+     */
+    void follow(List<EventType> eventTypes) throws Exception {
+        FrameTable frameTable = new FrameTable();
+        RollingWindow window = rollingWindow > 0 ? new RollingWindow(rollingWindow) : null;
+        boolean changed = true;
+        long nextWriteNanos = System.nanoTime();
+        try (ChunkRepository chunkRepository = new ChunkRepository(directory, refreshInterval)) {
+            while (true) {
+                for (Path jfrPath : chunkRepository.poll(nextWriteNanos - System.nanoTime())) {
+                    // The file is aggregated before it is added to the output, so that a file which cannot be parsed
+                    // is parsed again in the next poll without adding its events twice
+                    long fileEndNanos;
+                    PartialAggregate partialAggregate;
+                    try {
+                        List<JFRChunk> chunks = JFRChunk.readChunks(jfrPath);
+                        fileEndNanos = chunks.stream().mapToLong(JFRChunk::getEndNanos).max()
+                                .orElse(Long.MIN_VALUE);
+                        if (window != null && window.isBefore(fileEndNanos)) {
+                            continue;
+                        }
+                        partialAggregate = PartialAggregate.aggregateFile(conversionContext, jfrPath, eventTypes,
+                                frameTable);
+                    } catch (IOException e) {
+                        System.err.println("Could not parse " + jfrPath + ", which is parsed again in the next poll: "
+                                + e.getMessage());
+                        chunkRepository.retry(jfrPath);
+                        continue;
+                    }
+                    if (window != null) {
+                        window.update(fileEndNanos);
+                        window.add(partialAggregate);
+                    } else {
+                        partialAggregate.writeTo(getRunningWriters(eventTypes, partialAggregate.startNanos,
+                                partialAggregate.endNanos));
+                    }
+                    changed = true;
+                }
+                if (System.nanoTime() - nextWriteNanos < 0) {
+                    continue;
+                }
+                nextWriteNanos = System.nanoTime() + refreshInterval;
+                if (!changed) {
+                    continue;
+                }
+                changed = false;
+                FlameGraphOutputWriter[] flameGraphOutputWriters = window != null
+                        ? window.createOutputWriters(conversionContext, eventTypes)
+                        : getRunningWriters(eventTypes, 0, 0);
+                conversionContext.writeOutput(eventTypes, flameGraphOutputWriters);
+                conversionContext.printEventCounts();
+            }
+        }
+    }
+
+    /**
+     * @return The output writers of all events, which are created with the time range of the first file
+     */
+    private FlameGraphOutputWriter[] getRunningWriters(List<EventType> eventTypes, long startNanos, long endNanos) {
+        if (runningWriters == null) {
+            runningWriters = conversionContext.createOutputWriters(eventTypes, startNanos, endNanos);
+        }
+        return runningWriters;
+    }
+}
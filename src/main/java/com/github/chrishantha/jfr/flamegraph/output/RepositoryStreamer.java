@@ -0,0 +1,186 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import com.sun.tools.attach.AttachNotSupportedException;
+import com.sun.tools.attach.VirtualMachine;
+import jdk.jfr.consumer.EventStream;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Stream the events of a running JVM from its JFR repository, starting with the next events flushed by the JVM. The
+ * output is written at the first flush after each refresh interval if there are new events. With a rolling window, the
+ * events of each refresh interval are aggregated separately, and the aggregates are kept while they have events in the
+ * window. The window ends at the end of the latest event. The stream is read until the JVM exits.
+ */
+final class RepositoryStreamer {
+
+    /**
+     * The system property with the JFR repository of a JVM
+     */
+    private static final String JFR_REPOSITORY_PROPERTY = "jdk.jfr.repository";
+
+    private final ConversionContext conversionContext;
+    private final Path repository;
+    private final long refreshInterval;
+    private final RollingWindow window;
+
+    private FlameGraphOutputWriter[] runningWriters;
+
+    /**
+     * Whether there are events which are not written
+     */
+    private boolean changed;
+
+    /**
+     * Whether the next event starts the aggregate of a new refresh interval
+     */
+    private boolean newAggregate = true;
+
+    /**
+     * @param conversionContext The conversion of the events
+     * @param repository        The repository directory
+     * @param refreshInterval   The time between the outputs in nanoseconds
+     * @param rollingWindow     The length of the rolling window in nanoseconds, or zero to keep all events
+     */
+    RepositoryStreamer(ConversionContext conversionContext, Path repository, long refreshInterval,
+                       long rollingWindow) {
+        this.conversionContext = conversionContext;
+        this.repository = repository;
+        this.refreshInterval = refreshInterval;
+        this.window = rollingWindow > 0 ? new RollingWindow(rollingWindow) : null;
+    }
+
+    /**
+     * Find the JFR repository of the stream mode.
+     *
+     * @param jfrdump A JFR repository directory or the process ID of a local JVM
+     * @return The repository directory
+     */
+    static Path findRepository(String jfrdump) throws IOException {
+        Path path = Paths.get(jfrdump);
+        if (Files.isDirectory(path)) {
+            return path;
+        }
+        if (!jfrdump.matches("\\d+")) {
+            throw new IllegalArgumentException(jfrdump + " is not a JFR repository directory or a process ID");
+        }
+        String repository;
+        try {
+            VirtualMachine virtualMachine = VirtualMachine.attach(jfrdump);
+            try {
+                repository = virtualMachine.getSystemProperties().getProperty(JFR_REPOSITORY_PROPERTY);
+            } finally {
+                virtualMachine.detach();
+            }
+        } catch (AttachNotSupportedException e) {
+            throw new IOException("Could not attach to the JVM " + jfrdump + ": " + e.getMessage(), e);
+        }
+        if (repository == null) {
+            throw new IllegalArgumentException("The JVM " + jfrdump + " does not have a JFR recording");
+        }
+        return Paths.get(repository);
+    }
+
+    /**
+     * Stream the events until the JVM exits.
+     */
+    void stream(List<EventType> eventTypes) throws IOException {
+        FrameTable frameTable = new FrameTable();
+        FrameNameCache frameNameCache = conversionContext.createFrameNameCache(frameTable);
+        ThreadCache threadCache = conversionContext.createThreadCache(frameTable);
+        FrameStack frameStack = new FrameStack(frameTable);
+        // The event types are added when the first event of each type is read
+        EventDispatcher eventDispatcher = new EventDispatcher(eventTypes, Collections.emptyList());
+        long[] nextWriteNanos = {System.nanoTime() + refreshInterval};
+
+        EventConsumer eventConsumer = (target, event, stack, value) -> {
+            long startNanos = JFRToFlameGraphWriter.toEpochNanos(event.getStartTime());
+            long endNanos = JFRToFlameGraphWriter.toEpochNanos(event.getEndTime());
+            changed = true;
+            if (window != null) {
+                window.update(endNanos);
+                if (newAggregate) {
+                    PartialAggregate partialAggregate = new PartialAggregate(eventTypes.size(), frameTable);
+                    partialAggregate.startNanos = startNanos;
+                    partialAggregate.endNanos = endNanos;
+                    window.add(partialAggregate);
+                    newAggregate = false;
+                }
+                PartialAggregate partialAggregate = window.getLast();
+                partialAggregate.startNanos = Math.min(partialAggregate.startNanos, startNanos);
+                partialAggregate.endNanos = Math.max(partialAggregate.endNanos, endNanos);
+                partialAggregate.stackAggregates[target].add(event.getStartTime(), event.getDuration(), stack, value);
+            } else {
+                if (runningWriters == null) {
+                    runningWriters = conversionContext.createOutputWriters(eventTypes, startNanos, endNanos);
+                }
+                runningWriters[target].processEvent(event.getStartTime(), event.getEndTime(), event.getDuration(),
+                        stack, value);
+            }
+        };
+
+        try (EventStream eventStream = EventStream.openRepository(repository)) {
+            // Only the events of the selected types are parsed
+            for (EventType eventType : eventTypes) {
+                for (String eventName : eventType.getEventNames()) {
+                    eventStream.onEvent(eventName, event -> conversionContext.consumeEvent(event, eventDispatcher,
+                            frameNameCache, threadCache, frameStack, eventConsumer));
+                }
+            }
+            eventStream.onFlush(() -> {
+                if (System.nanoTime() - nextWriteNanos[0] >= 0) {
+                    nextWriteNanos[0] = System.nanoTime() + refreshInterval;
+                    writeOutput(eventTypes, eventDispatcher);
+                }
+            });
+            eventStream.start();
+            // Write the events after the last refresh when the JVM exits
+            writeOutput(eventTypes, eventDispatcher);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * Write the output if there are events which are not written.
+     */
+    private void writeOutput(List<EventType> eventTypes, EventDispatcher eventDispatcher) {
+        if (!changed) {
+            return;
+        }
+        changed = false;
+        try {
+            if (window != null) {
+                conversionContext.writeOutput(eventTypes, window.createOutputWriters(conversionContext, eventTypes));
+                newAggregate = true;
+            } else {
+                conversionContext.writeOutput(eventTypes, runningWriters != null ? runningWriters
+                        : conversionContext.createOutputWriters(eventTypes, 0, 0));
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        conversionContext.printEventCounts(eventDispatcher);
+    }
+}
@@ -0,0 +1,97 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The aggregates of the events in a rolling window, which ends at the end of the latest event. An aggregate is kept
+ * while it has events in the window.
+ */
+final class RollingWindow {
+
+    private final long windowNanos;
+
+    /**
+     * The aggregates in the order of the events
+     */
+    private final Deque<PartialAggregate> partialAggregates = new ArrayDeque<>();
+
+    private long latestEndNanos = Long.MIN_VALUE;
+
+    /**
+     * @param windowNanos The length of the window in nanoseconds
+     */
+    RollingWindow(long windowNanos) {
+        this.windowNanos = windowNanos;
+    }
+
+    /**
+     * @return The end of the window in nanoseconds since the epoch, or {@link Long#MIN_VALUE} if there are no events
+     */
+    long getLatestEndNanos() {
+        return latestEndNanos;
+    }
+
+    /**
+     * Move the end of the window to the end of an event if the event is later.
+     */
+    void update(long endNanos) {
+        latestEndNanos = Math.max(latestEndNanos, endNanos);
+    }
+
+    /**
+     * @return Whether events which end at the given time are before the window
+     */
+    boolean isBefore(long endNanos) {
+        return latestEndNanos != Long.MIN_VALUE && endNanos < latestEndNanos - windowNanos;
+    }
+
+    void add(PartialAggregate partialAggregate) {
+        partialAggregates.addLast(partialAggregate);
+    }
+
+    /**
+     * @return The latest aggregate
+     */
+    PartialAggregate getLast() {
+        return partialAggregates.getLast();
+    }
+
+    /**
+     * Create the output writers of the window and write the events in the window to them. The aggregates without events
+     * in the window are removed.
+     */
+    FlameGraphOutputWriter[] createOutputWriters(ConversionContext conversionContext, List<EventType> eventTypes) {
+        if (latestEndNanos == Long.MIN_VALUE) {
+            return conversionContext.createOutputWriters(eventTypes, 0, 0);
+        }
+        long windowStartNanos = latestEndNanos - windowNanos;
+        partialAggregates.removeIf(partialAggregate -> partialAggregate.endNanos < windowStartNanos);
+        FlameGraphOutputWriter[] flameGraphOutputWriters = conversionContext.createOutputWriters(eventTypes,
+                windowStartNanos, latestEndNanos);
+        long startEpochSecond = Math.floorDiv(windowStartNanos, TimeUnit.SECONDS.toNanos(1));
+        for (PartialAggregate partialAggregate : partialAggregates) {
+            for (int i = 0; i < flameGraphOutputWriters.length; i++) {
+                partialAggregate.stackAggregates[i].writeTo(flameGraphOutputWriters[i], startEpochSecond);
+            }
+        }
+        return flameGraphOutputWriters;
+    }
+}
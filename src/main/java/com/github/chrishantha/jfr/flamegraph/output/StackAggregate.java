@@ -0,0 +1,167 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * A partial aggregate of stack traces, which can be built by a separate thread and written to a
+ * {@link FlameGraphOutputWriter} later.
+ * <p>
+ * Events with the same stack trace are merged when they start in the same second. The merged event is written with
+ * the start of that second as the start and end timestamps, the sum of the durations and the sum of the values.
+ * <p>
+ * The events are looked up with a reusable key, so only the first event of a stack trace in a second allocates.
+ */
+public final class StackAggregate {
+
+    private final FrameTable frameTable;
+    private final Map<StackKey, Sample> samples = new LinkedHashMap<>();
+    private final StackKey probe = new StackKey(new int[64]);
+
+    public StackAggregate(FrameTable frameTable) {
+        this.frameTable = frameTable;
+    }
+
+    /**
+     * Add an event.
+     *
+     * @param startTimestamp The start timestamp of the event
+     * @param duration       The duration of the event
+     * @param stack          The frames of the stack trace
+     * @param value          The value of the event
+     */
+    public void add(Instant startTimestamp, Duration duration, FrameStack stack, long value) {
+        probe.set(startTimestamp.getEpochSecond(), stack);
+        Sample sample = samples.get(probe);
+        if (sample == null) {
+            sample = new Sample();
+            samples.put(probe.copy(), sample);
+        }
+        sample.durationNanos += duration.toNanos();
+        sample.value += value;
+    }
+
+    /**
+     * Write all events in the order they were first added.
+     *
+     * @param flameGraphOutputWriter The output writer
+     */
+    public void writeTo(FlameGraphOutputWriter flameGraphOutputWriter) {
+        writeTo(flameGraphOutputWriter, Long.MIN_VALUE);
+    }
+
+    /**
+     * Write the events starting in or after a second in the order they were first added.
+     *
+     * @param flameGraphOutputWriter The output writer
+     * @param startEpochSecond       The first second in seconds since the epoch
+     */
+    public void writeTo(FlameGraphOutputWriter flameGraphOutputWriter, long startEpochSecond) {
+        FrameStack stack = new FrameStack(frameTable);
+        for (Map.Entry<StackKey, Sample> entry : samples.entrySet()) {
+            StackKey key = entry.getKey();
+            if (key.epochSecond < startEpochSecond) {
+                continue;
+            }
+            Sample sample = entry.getValue();
+            stack.set(key.frames);
+            Instant timestamp = Instant.ofEpochSecond(key.epochSecond);
+            flameGraphOutputWriter.processEvent(timestamp, timestamp, Duration.ofNanos(sample.durationNanos), stack,
+                    sample.value);
+        }
+    }
+
+    public boolean isEmpty() {
+        return samples.isEmpty();
+    }
+
+    private static final class Sample {
+        long durationNanos;
+        long value;
+    }
+
+    /**
+     * The second and the frame IDs of a stack trace. The frames of a stored key have the length of the stack.
+     */
+    private static final class StackKey {
+
+        long epochSecond;
+        int[] frames;
+        int depth;
+        int hashCode;
+
+        StackKey(int[] frames) {
+            this.frames = frames;
+        }
+
+        /**
+         * Set the key to a stack trace, reusing the frames array when it is large enough.
+         */
+        void set(long epochSecond, FrameStack stack) {
+            int stackDepth = stack.getDepth();
+            if (frames.length < stackDepth) {
+                frames = new int[Math.max(stackDepth, frames.length * 2)];
+            }
+            int hash = 1;
+            for (int i = 0; i < stackDepth; i++) {
+                int frameId = stack.getFrameId(i);
+                frames[i] = frameId;
+                hash = 31 * hash + frameId;
+            }
+            this.epochSecond = epochSecond;
+            this.depth = stackDepth;
+            this.hashCode = 31 * Long.hashCode(epochSecond) + hash;
+        }
+
+        StackKey copy() {
+            StackKey key = new StackKey(Arrays.copyOf(frames, depth));
+            key.epochSecond = epochSecond;
+            key.depth = depth;
+            key.hashCode = hashCode;
+            return key;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof StackKey)) {
+                return false;
+            }
+            StackKey other = (StackKey) o;
+            if (epochSecond != other.epochSecond || depth != other.depth) {
+                return false;
+            }
+            for (int i = 0; i < depth; i++) {
+                if (frames[i] != other.frames[i]) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+    }
+}
@@ -0,0 +1,175 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+/**
+ * Storage for the nodes of one or more {@link StackTree}s.
+ * <p>
+ * Each node has the frame ID, the parent, the first and last children and the next sibling, and the value, count and
+ * total of the stack traces. The children of a node are found through an open addressing table keyed by the parent
+ * node and the frame ID, where each slot has a node + 1, or zero if the slot is empty. The parent nodes of different
+ * trees are different, so several trees can share a store.
+ * <p>
+ * Subclasses keep the fields on the heap or in memory mapped files.
+ */
+public abstract class StackNodeStore {
+
+    static final int NONE = -1;
+
+    static final int FRAME_ID = 0;
+    static final int PARENT = 1;
+    static final int FIRST_CHILD = 2;
+    static final int LAST_CHILD = 3;
+    static final int NEXT_SIBLING = 4;
+    static final int INT_FIELDS = 5;
+
+    static final int VALUE = 0;
+    static final int COUNT = 1;
+    static final int TOTAL = 2;
+    static final int LONG_FIELDS = 3;
+
+    private int nodeCount;
+    private int childTableCapacity;
+
+    StackNodeStore() {
+    }
+
+    abstract int getInt(int node, int field);
+
+    abstract void setInt(int node, int field, int value);
+
+    abstract long getLong(int node, int field);
+
+    abstract void setLong(int node, int field, long value);
+
+    /**
+     * Make room for the given number of nodes.
+     */
+    abstract void ensureCapacity(int nodes);
+
+    abstract int getChildSlot(int index);
+
+    abstract void setChildSlot(int index, int value);
+
+    /**
+     * Replace the child table with an empty table.
+     *
+     * @param capacity The number of slots, which is a power of two
+     */
+    abstract void newChildTable(int capacity);
+
+    /**
+     * @return The number of nodes in all trees
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Add a root node, which does not have a parent or a frame.
+     */
+    int addRoot() {
+        return addNode(NONE, NONE);
+    }
+
+    /**
+     * Find a child node.
+     *
+     * @return The child node or -1 if the parent does not have a child with the frame ID
+     */
+    int findChild(int parent, int frameId) {
+        if (childTableCapacity == 0) {
+            return NONE;
+        }
+        int mask = childTableCapacity - 1;
+        int index = hash(parent, frameId) & mask;
+        int slot;
+        while ((slot = getChildSlot(index)) != 0) {
+            int node = slot - 1;
+            if (getInt(node, FRAME_ID) == frameId && getInt(node, PARENT) == parent) {
+                return node;
+            }
+            index = (index + 1) & mask;
+        }
+        return NONE;
+    }
+
+    /**
+     * Add a child node, which must not exist.
+     *
+     * @return The new node
+     */
+    int addChild(int parent, int frameId) {
+        int node = addNode(parent, frameId);
+        if (nodeCount * 2L > childTableCapacity) {
+            rehash();
+        } else {
+            insertChild(node);
+        }
+        return node;
+    }
+
+    private int addNode(int parent, int frameId) {
+        if (nodeCount == Integer.MAX_VALUE) {
+            throw new IllegalStateException("Too many stack nodes");
+        }
+        ensureCapacity(nodeCount + 1);
+        int node = nodeCount++;
+        setInt(node, FRAME_ID, frameId);
+        setInt(node, PARENT, parent);
+        setInt(node, FIRST_CHILD, NONE);
+        setInt(node, LAST_CHILD, NONE);
+        setInt(node, NEXT_SIBLING, NONE);
+        setLong(node, VALUE, 0);
+        setLong(node, COUNT, 0);
+        setLong(node, TOTAL, 0);
+        if (parent != NONE) {
+            int lastChild = getInt(parent, LAST_CHILD);
+            if (lastChild == NONE) {
+                setInt(parent, FIRST_CHILD, node);
+            } else {
+                setInt(lastChild, NEXT_SIBLING, node);
+            }
+            setInt(parent, LAST_CHILD, node);
+        }
+        return node;
+    }
+
+    private void rehash() {
+        childTableCapacity = Math.max(64, childTableCapacity * 2);
+        newChildTable(childTableCapacity);
+        for (int node = 0; node < nodeCount; node++) {
+            if (getInt(node, PARENT) != NONE) {
+                insertChild(node);
+            }
+        }
+    }
+
+    private void insertChild(int node) {
+        int mask = childTableCapacity - 1;
+        int index = hash(getInt(node, PARENT), getInt(node, FRAME_ID)) & mask;
+        while (getChildSlot(index) != 0) {
+            index = (index + 1) & mask;
+        }
+        setChildSlot(index, node + 1);
+    }
+
+    private static int hash(int parent, int frameId) {
+        int h = parent * 0x9E3779B9 + frameId;
+        h *= 0x85EBCA6B;
+        return h ^ (h >>> 15);
+    }
+}
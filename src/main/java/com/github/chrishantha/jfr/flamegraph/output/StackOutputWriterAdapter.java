@@ -0,0 +1,43 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Stack;
+
+/**
+ * An output writer which processes the stack trace of an event as a {@link Stack} of frame names. Popping the stack
+ * returns the frames from the bottom to the top.
+ * <p>
+ * Writers written for the {@link Stack} based {@code processEvent} method can extend this class instead of
+ * implementing {@link FlameGraphOutputWriter}. A new stack is created for each event.
+ */
+public abstract class StackOutputWriterAdapter implements FlameGraphOutputWriter {
+
+    @Override
+    public final void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, FrameStack stack,
+                                   long value) {
+        processEvent(startTimestamp, endTimestamp, duration, stack.toStack(), value);
+    }
+
+    /**
+     * Process the stack trace of an event. The value is additive: the same stack trace may be given once with the
+     * sum of the values of several events.
+     */
+    public abstract void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration,
+                                      Stack<String> stack, long value);
+}
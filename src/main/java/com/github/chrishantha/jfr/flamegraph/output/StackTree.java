@@ -0,0 +1,262 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.IOException;
+
+/**
+ * A prefix tree of stack traces.
+ * <p>
+ * Each node is a frame ID reached from the bottom of the stack. The nodes are kept in a {@link StackNodeStore} and
+ * the children of a node are found through an open addressing table keyed by the parent node and the frame ID.
+ * Memory grows with the number of unique paths instead of the total size of the stack traces. Several trees can share
+ * a store, which keeps the nodes on the heap or in memory mapped files.
+ * <p>
+ * Each node has two values: the sum of the values of the stack traces ending at the node, and the total of the
+ * values of the stack traces passing through the node. The root does not have a frame and does not have a total.
+ * Children are visited in the order they were added.
+ */
+public final class StackTree {
+
+    private static final int NONE = StackNodeStore.NONE;
+
+    private final StackNodeStore store;
+    private final int root;
+
+    private FrameTable frameTable;
+    private int nodeCount = 1;
+    private long totalValue;
+
+    /**
+     * Visits the nodes of the tree in depth first order.
+     */
+    public interface NodeVisitor {
+
+        /**
+         * Called before the children of the node are visited.
+         *
+         * @param node  The node
+         * @param depth The depth of the node. The root is at depth zero.
+         */
+        void enter(int node, int depth) throws IOException;
+
+        /**
+         * Called after the children of the node are visited.
+         *
+         * @param node  The node
+         * @param depth The depth of the node
+         */
+        void exit(int node, int depth) throws IOException;
+    }
+
+    /**
+     * Selects the nodes visited in a walk.
+     */
+    public interface NodeFilter {
+
+        /**
+         * @param node  The node, which is not the root
+         * @param depth The depth of the node
+         * @return Whether to visit the node and its children
+         */
+        boolean accept(int node, int depth);
+    }
+
+    public StackTree() {
+        this(1024);
+    }
+
+    /**
+     * @param initialCapacity The initial number of nodes
+     */
+    public StackTree(int initialCapacity) {
+        this(new HeapStackNodeStore(initialCapacity));
+    }
+
+    /**
+     * @param store The store of the nodes, which may be shared with other trees
+     */
+    public StackTree(StackNodeStore store) {
+        this.store = store;
+        this.root = store.addRoot();
+    }
+
+    /**
+     * Add a stack trace.
+     *
+     * @param stack The frames of the stack trace
+     * @param value The value added to the node of the top frame and to the totals of the nodes in the path
+     * @return The node of the top frame
+     */
+    public int addStack(FrameStack stack, long value) {
+        if (frameTable == null) {
+            frameTable = stack.getFrameTable();
+        } else if (frameTable != stack.getFrameTable()) {
+            throw new IllegalArgumentException("The stack uses a different frame table");
+        }
+        StackNodeStore store = this.store;
+        int node = root;
+        for (int i = 0; i < stack.getDepth(); i++) {
+            int frameId = stack.getFrameId(i);
+            int child = store.findChild(node, frameId);
+            if (child == NONE) {
+                child = store.addChild(node, frameId);
+                nodeCount++;
+            }
+            node = child;
+            store.setLong(node, StackNodeStore.TOTAL, store.getLong(node, StackNodeStore.TOTAL) + value);
+        }
+        store.setLong(node, StackNodeStore.VALUE, store.getLong(node, StackNodeStore.VALUE) + value);
+        store.setLong(node, StackNodeStore.COUNT, store.getLong(node, StackNodeStore.COUNT) + 1);
+        totalValue += value;
+        return node;
+    }
+
+    /**
+     * Walk the tree in depth first order without recursion.
+     *
+     * @param visitor The node visitor
+     */
+    public void walk(NodeVisitor visitor) throws IOException {
+        walk(visitor, null);
+    }
+
+    /**
+     * Walk the tree in depth first order without recursion. The nodes which are not accepted by the filter and their
+     * children are not visited.
+     *
+     * @param visitor The node visitor
+     * @param filter  The node filter, or {@code null} to visit all nodes
+     */
+    public void walk(NodeVisitor visitor, NodeFilter filter) throws IOException {
+        int node = root;
+        int depth = 0;
+        visitor.enter(node, depth);
+        while (true) {
+            int child = nextAccepted(getFirstChild(node), depth + 1, filter);
+            if (child != NONE) {
+                node = child;
+                depth++;
+                visitor.enter(node, depth);
+                continue;
+            }
+            while (true) {
+                visitor.exit(node, depth);
+                if (node == root) {
+                    return;
+                }
+                int sibling = nextAccepted(getNextSibling(node), depth, filter);
+                if (sibling != NONE) {
+                    node = sibling;
+                    visitor.enter(node, depth);
+                    break;
+                }
+                node = getParent(node);
+                depth--;
+            }
+        }
+    }
+
+    /**
+     * @return The node or its first sibling accepted by the filter, or -1
+     */
+    private int nextAccepted(int node, int depth, NodeFilter filter) {
+        if (filter != null) {
+            while (node != NONE && !filter.accept(node, depth)) {
+                node = getNextSibling(node);
+            }
+        }
+        return node;
+    }
+
+    /**
+     * @return The root node
+     */
+    public int getRoot() {
+        return root;
+    }
+
+    /**
+     * @return The number of nodes in the tree, including the root
+     */
+    public int getNodeCount() {
+        return nodeCount;
+    }
+
+    public int getFrameId(int node) {
+        return store.getInt(node, StackNodeStore.FRAME_ID);
+    }
+
+    /**
+     * @return The frame name of the node
+     */
+    public String getFrameName(int node) {
+        return frameTable.getName(getFrameId(node));
+    }
+
+    public int getParent(int node) {
+        return store.getInt(node, StackNodeStore.PARENT);
+    }
+
+    /**
+     * @return The child of the node with the frame ID or -1 if the node does not have the child
+     */
+    public int findChild(int node, int frameId) {
+        return store.findChild(node, frameId);
+    }
+
+    /**
+     * @return The first child of the node or -1 if the node does not have children
+     */
+    public int getFirstChild(int node) {
+        return store.getInt(node, StackNodeStore.FIRST_CHILD);
+    }
+
+    /**
+     * @return The next sibling of the node or -1 if it is the last child
+     */
+    public int getNextSibling(int node) {
+        return store.getInt(node, StackNodeStore.NEXT_SIBLING);
+    }
+
+    /**
+     * @return The sum of the values of the stack traces ending at the node
+     */
+    public long getValue(int node) {
+        return store.getLong(node, StackNodeStore.VALUE);
+    }
+
+    /**
+     * @return The number of stack traces ending at the node
+     */
+    public long getCount(int node) {
+        return store.getLong(node, StackNodeStore.COUNT);
+    }
+
+    /**
+     * @return The sum of the values of the stack traces passing through the node
+     */
+    public long getTotal(int node) {
+        return store.getLong(node, StackNodeStore.TOTAL);
+    }
+
+    /**
+     * @return The sum of the values of all stack traces
+     */
+    public long getTotalValue() {
+        return totalValue;
+    }
+}
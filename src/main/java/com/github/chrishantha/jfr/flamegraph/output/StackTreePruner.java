@@ -0,0 +1,165 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.IOException;
+import java.util.BitSet;
+
+/**
+ * Prune a {@link StackTree} when writing the output, so that the size of the output is bounded regardless of the
+ * number of unique stack traces.
+ * <p>
+ * A frame is pruned if it is deeper than the maximum depth, if its total is less than the minimum percent of the total
+ * of the tree, or if it is not in one of the top stack traces with the highest values. The totals of the pruned
+ * children of a frame are written as one child named {@link #OTHER}, so that the totals of the frames are kept. A
+ * frame which is kept only because it is below a top stack trace is not written as a stack trace itself, and its own
+ * value is added to its {@link #OTHER} child.
+ */
+final class StackTreePruner implements StackTree.NodeFilter {
+
+    /**
+     * The name of the frame with the pruned children of a frame
+     */
+    static final String OTHER = "[other]";
+
+    private final StackTree stackTree;
+
+    private final int maxDepth;
+
+    private final long minTotal;
+
+    /**
+     * The top stack traces and the frames below them, or {@code null} to keep all stack traces
+     */
+    private final BitSet topNodes;
+
+    /**
+     * The top stack traces, or {@code null} to keep all stack traces
+     */
+    private final BitSet topStacks;
+
+    /**
+     * @param stackTree  The stack tree
+     * @param minPercent The minimum total of a frame in percent of the total of the tree, or zero
+     * @param maxDepth   The maximum depth of a frame, or zero
+     * @param topPaths   The number of stack traces with the highest values to keep, or zero
+     */
+    StackTreePruner(StackTree stackTree, double minPercent, int maxDepth, int topPaths) throws IOException {
+        this.stackTree = stackTree;
+        this.maxDepth = maxDepth > 0 ? maxDepth : Integer.MAX_VALUE;
+        this.minTotal = minPercent > 0 ? (long) Math.ceil(stackTree.getTotalValue() * minPercent / 100) : 0;
+        if (topPaths > 0) {
+            topStacks = findTopStacks(topPaths);
+            topNodes = new BitSet();
+            int root = stackTree.getRoot();
+            for (int stack = topStacks.nextSetBit(0); stack >= 0; stack = topStacks.nextSetBit(stack + 1)) {
+                for (int node = stack; node != root && !topNodes.get(node); node = stackTree.getParent(node)) {
+                    topNodes.set(node);
+                }
+            }
+        } else {
+            topStacks = null;
+            topNodes = null;
+        }
+    }
+
+    @Override
+    public boolean accept(int node, int depth) {
+        return depth <= maxDepth && stackTree.getTotal(node) >= minTotal && (topNodes == null || topNodes.get(node));
+    }
+
+    /**
+     * @param node A node, which is accepted
+     * @return Whether the stack trace ending at the node is written, if the node has events
+     */
+    boolean isStackSelected(int node) {
+        return topStacks == null || node == stackTree.getRoot() || topStacks.get(node);
+    }
+
+    /**
+     * @param node  A node, which is accepted
+     * @param depth The depth of the node
+     * @return The sum of the totals of the children of the node which are not accepted, and the value of the node if
+     * the stack trace ending at the node is not selected
+     */
+    long getPrunedTotal(int node, int depth) {
+        long prunedTotal = isStackSelected(node) ? 0 : stackTree.getValue(node);
+        for (int child = stackTree.getFirstChild(node); child != -1; child = stackTree.getNextSibling(child)) {
+            if (!accept(child, depth + 1)) {
+                prunedTotal += stackTree.getTotal(child);
+            }
+        }
+        return prunedTotal;
+    }
+
+    /**
+     * Find the nodes of the stack traces with the highest values with a min-heap of the given size.
+     */
+    private BitSet findTopStacks(int topPaths) throws IOException {
+        int[] heap = new int[topPaths];
+        long[] heapValues = new long[topPaths];
+        int[] size = new int[1];
+        stackTree.walk(new StackTree.NodeVisitor() {
+            @Override
+            public void enter(int node, int depth) {
+                if (depth == 0 || stackTree.getCount(node) == 0) {
+                    return;
+                }
+                long value = stackTree.getValue(node);
+                if (size[0] < topPaths) {
+                    int i = size[0]++;
+                    // Sift up
+                    while (i > 0 && heapValues[(i - 1) / 2] > value) {
+                        heap[i] = heap[(i - 1) / 2];
+                        heapValues[i] = heapValues[(i - 1) / 2];
+                        i = (i - 1) / 2;
+                    }
+                    heap[i] = node;
+                    heapValues[i] = value;
+                } else if (value > heapValues[0]) {
+                    // Replace the lowest value and sift down
+                    int i = 0;
+                    while (true) {
+                        int child = 2 * i + 1;
+                        if (child >= topPaths) {
+                            break;
+                        }
+                        if (child + 1 < topPaths && heapValues[child + 1] < heapValues[child]) {
+                            child++;
+                        }
+                        if (heapValues[child] >= value) {
+                            break;
+                        }
+                        heap[i] = heap[child];
+                        heapValues[i] = heapValues[child];
+                        i = child;
+                    }
+                    heap[i] = node;
+                    heapValues[i] = value;
+                }
+            }
+
+            @Override
+            public void exit(int node, int depth) {
+            }
+        });
+        BitSet stacks = new BitSet();
+        for (int i = 0; i < size[0]; i++) {
+            stacks.set(heap[i]);
+        }
+        return stacks;
+    }
+}
@@ -0,0 +1,268 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.Locale;
+
+/**
+ * Create an SVG flame graph, without flamegraph.pl
+ * <p>
+ * The stack traces are aggregated into a {@link StackTree}. The rectangles are laid out from the tree when writing
+ * the output: the root is the bottom frame, which is named {@value #ROOT_NAME}, and the children of a node are placed
+ * from left to right in the order of the frame names, as in flamegraph.pl. The width of a frame is proportional to
+ * the total of the stack traces passing through it. Frames narrower than the minimum width, and their children, are
+ * not written, so that the size of the output depends on the width of the image instead of the number of stack
+ * traces.
+ */
+public class SvgOutputWriter implements FlameGraphOutputWriter {
+
+    static final String ROOT_NAME = "all";
+
+    private static final int FRAME_HEIGHT = 16;
+    private static final int FONT_SIZE = 12;
+    private static final double FONT_WIDTH = 0.59;
+    private static final int X_PAD = 10;
+    private static final int TOP_PAD = FONT_SIZE * 3;
+    private static final int BOTTOM_PAD = FONT_SIZE * 2 + 10;
+
+    /**
+     * The data model for the flame graph
+     */
+    private StackTree stackTree = new StackTree();
+    private int imageWidth = OutputWriterParameters.DEFAULT_SVG_WIDTH;
+    private double minWidth = OutputWriterParameters.DEFAULT_MIN_WIDTH;
+    private String title = OutputWriterParameters.DEFAULT_TITLE;
+
+    @Override
+    public void initialize(OutputWriterParameters parameters) {
+        StackNodeStore store = parameters.createMappedStackNodeStore();
+        if (store != null) {
+            stackTree = new StackTree(store);
+        }
+        imageWidth = parameters.svgWidth;
+        minWidth = parameters.minWidth;
+        title = parameters.title;
+    }
+
+    @Override
+    public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration, FrameStack stack, long value) {
+        stackTree.addStack(stack, value);
+    }
+
+    @Override
+    public void writeOutput(BufferedWriter bufferedWriter) throws IOException {
+        long rootTotal = stackTree.getTotalValue();
+        double plotWidth = imageWidth - 2 * X_PAD;
+        double scale = rootTotal > 0 ? plotWidth / rootTotal : 0;
+        // The smallest total of a frame which is written
+        double minTotal = scale > 0 ? minWidth / scale : Double.POSITIVE_INFINITY;
+        int maxDepth = getMaxDepth(minTotal);
+        int imageHeight = (maxDepth + 1) * FRAME_HEIGHT + TOP_PAD + BOTTOM_PAD;
+
+        StringBuilder builder = new StringBuilder(256);
+        builder.append("<?xml version=\"1.0\" standalone=\"no\"?>\n")
+                .append("<!DOCTYPE svg PUBLIC \"-//W3C//DTD SVG 1.1//EN\" ")
+                .append("\"http://www.w3.org/Graphics/SVG/1.1/DTD/svg11.dtd\">\n")
+                .append("<svg version=\"1.1\" width=\"").append(imageWidth).append("\" height=\"").append(imageHeight)
+                .append("\" viewBox=\"0 0 ").append(imageWidth).append(' ').append(imageHeight)
+                .append("\" xmlns=\"http://www.w3.org/2000/svg\">\n")
+                .append("<style type=\"text/css\">text { font-family: Verdana, sans-serif; font-size: ")
+                .append(FONT_SIZE).append("px; fill: rgb(0,0,0); }</style>\n")
+                .append("<rect x=\"0\" y=\"0\" width=\"100%\" height=\"100%\" fill=\"rgb(248,248,248)\"/>\n")
+                .append("<text x=\"").append(imageWidth / 2).append("\" y=\"").append(FONT_SIZE * 2)
+                .append("\" text-anchor=\"middle\" style=\"font-size: 17px\">");
+        appendEscaped(builder, title);
+        builder.append("</text>\n");
+        bufferedWriter.append(builder);
+
+        int root = stackTree.getRoot();
+        // The nodes to write, with the x position and depth of each node
+        int[] nodes = new int[64];
+        double[] xs = new double[64];
+        int[] depths = new int[64];
+        Integer[] children = new Integer[16];
+        Comparator<Integer> byName = Comparator.comparing(stackTree::getFrameName);
+        int size = 0;
+        nodes[size] = root;
+        xs[size] = X_PAD;
+        depths[size] = 0;
+        size++;
+        while (size > 0) {
+            size--;
+            int node = nodes[size];
+            double x = xs[size];
+            int depth = depths[size];
+            long total = node == root ? rootTotal : stackTree.getTotal(node);
+            double y = imageHeight - BOTTOM_PAD - (depth + 1) * FRAME_HEIGHT;
+            builder.setLength(0);
+            appendFrame(builder, node == root ? ROOT_NAME : stackTree.getFrameName(node), total, rootTotal,
+                    x, y, total * scale);
+            bufferedWriter.append(builder);
+
+            int childCount = 0;
+            for (int child = stackTree.getFirstChild(node); child != -1; child = stackTree.getNextSibling(child)) {
+                if (stackTree.getTotal(child) >= minTotal) {
+                    if (childCount == children.length) {
+                        children = Arrays.copyOf(children, childCount * 2);
+                    }
+                    children[childCount++] = child;
+                }
+            }
+            if (childCount == 0) {
+                continue;
+            }
+            Arrays.sort(children, 0, childCount, byName);
+            if (size + childCount > nodes.length) {
+                int length = Math.max(nodes.length * 2, size + childCount);
+                nodes = Arrays.copyOf(nodes, length);
+                xs = Arrays.copyOf(xs, length);
+                depths = Arrays.copyOf(depths, length);
+            }
+            // Push in reverse order, so that the frames are written from left to right
+            double childX = x;
+            for (int i = 0; i < childCount; i++) {
+                childX += stackTree.getTotal(children[i]) * scale;
+            }
+            for (int i = childCount - 1; i >= 0; i--) {
+                int child = children[i];
+                childX -= stackTree.getTotal(child) * scale;
+                nodes[size] = child;
+                xs[size] = childX;
+                depths[size] = depth + 1;
+                size++;
+            }
+        }
+        bufferedWriter.append("</svg>\n");
+    }
+
+    /**
+     * @return The maximum depth of the frames which are written
+     */
+    private int getMaxDepth(double minTotal) throws IOException {
+        int[] maxDepth = new int[1];
+        int[] prunedDepth = {Integer.MAX_VALUE};
+        stackTree.walk(new StackTree.NodeVisitor() {
+            @Override
+            public void enter(int node, int depth) {
+                if (depth >= prunedDepth[0]) {
+                    return;
+                }
+                if (depth > 0 && stackTree.getTotal(node) < minTotal) {
+                    prunedDepth[0] = depth;
+                    return;
+                }
+                maxDepth[0] = Math.max(maxDepth[0], depth);
+            }
+
+            @Override
+            public void exit(int node, int depth) {
+                if (depth == prunedDepth[0]) {
+                    prunedDepth[0] = Integer.MAX_VALUE;
+                }
+            }
+        });
+        return maxDepth[0];
+    }
+
+    private void appendFrame(StringBuilder builder, String name, long total, long rootTotal, double x, double y,
+                             double width) {
+        builder.append("<g><title>");
+        appendEscaped(builder, name);
+        builder.append(String.format(Locale.ROOT, " (%,d, %.2f%%)", total,
+                rootTotal > 0 ? total * 100.0 / rootTotal : 0.0));
+        builder.append("</title><rect x=\"");
+        appendDecimal(builder, x, 10);
+        builder.append("\" y=\"");
+        appendDecimal(builder, y, 10);
+        builder.append("\" width=\"");
+        appendDecimal(builder, width, 10);
+        builder.append("\" height=\"").append(FRAME_HEIGHT - 1).append("\" fill=\"");
+        appendColor(builder, name);
+        builder.append("\" rx=\"2\" ry=\"2\"/>");
+        // Fit the name in the frame, as flamegraph.pl does
+        int chars = (int) (width / (FONT_SIZE * FONT_WIDTH));
+        if (chars >= 3) {
+            builder.append("<text x=\"");
+            appendDecimal(builder, x + 3, 10);
+            builder.append("\" y=\"");
+            appendDecimal(builder, y + FRAME_HEIGHT - 5.5, 10);
+            builder.append("\">");
+            if (chars >= name.length()) {
+                appendEscaped(builder, name);
+            } else {
+                appendEscaped(builder, name.substring(0, chars - 2));
+                builder.append("..");
+            }
+            builder.append("</text>");
+        }
+        builder.append("</g>\n");
+    }
+
+    /**
+     * Append a color of the "hot" palette of flamegraph.pl. The color is derived from the name, so that a frame has
+     * the same color in each flame graph.
+     */
+    private static void appendColor(StringBuilder builder, String name) {
+        int hash = name.hashCode();
+        int red = 205 + (hash & 0xff) * 50 / 255;
+        int green = ((hash >>> 8) & 0xff) * 230 / 255;
+        int blue = ((hash >>> 16) & 0xff) * 55 / 255;
+        builder.append("rgb(").append(red).append(',').append(green).append(',').append(blue).append(')');
+    }
+
+    /**
+     * Append a non-negative number rounded to the given fraction without using a formatter.
+     */
+    private static void appendDecimal(StringBuilder builder, double value, int fraction) {
+        long scaled = Math.round(value * fraction);
+        builder.append(scaled / fraction);
+        long remainder = scaled % fraction;
+        if (remainder != 0) {
+            builder.append('.');
+            for (int digit = fraction / 10; digit > 0; digit /= 10) {
+                builder.append(remainder / digit % 10);
+            }
+        }
+    }
+
+    private static void appendEscaped(StringBuilder builder, String text) {
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            switch (c) {
+                case '&':
+                    builder.append("&amp;");
+                    break;
+                case '<':
+                    builder.append("&lt;");
+                    break;
+                case '>':
+                    builder.append("&gt;");
+                    break;
+                case '"':
+                    builder.append("&quot;");
+                    break;
+                default:
+                    builder.append(c);
+            }
+        }
+    }
+}
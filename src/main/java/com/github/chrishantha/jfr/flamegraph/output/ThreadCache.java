@@ -0,0 +1,151 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedThread;
+import jdk.jfr.consumer.RecordedThreadGroup;
+
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+/**
+ * Resolves the threads of events and caches whether each thread is selected by a {@link ThreadFilter} and the frame
+ * ID of its name.
+ * <p>
+ * The JFR parser shares {@link RecordedThread} instances between the events of a chunk, so threads are first looked
+ * up by identity. Threads seen in a previous chunk are found again by their Java thread ID and name, so that the
+ * filter is evaluated once for each thread. The events of a thread are resolved without any allocation or name
+ * formatting.
+ * <p>
+ * The cache of the instances is cleared when it reaches the maximum size. This class is not thread safe, but several
+ * caches can share a frame table.
+ */
+public final class ThreadCache {
+
+    /**
+     * Maximum number of cached thread instances
+     */
+    private static final int MAX_SIZE = 1 << 16;
+
+    /**
+     * The field with the thread of the execution samples
+     */
+    static final String SAMPLED_THREAD_FIELD = "sampledThread";
+
+    /**
+     * The thread of the events without a thread
+     */
+    private static final ThreadEntry NO_THREAD = new ThreadEntry(null, false, -1);
+
+    private final FrameTable frameTable;
+    private final ThreadFilter threadFilter;
+    private final boolean threadFrames;
+
+    private final Map<jdk.jfr.EventType, Boolean> sampledThreadTypes = new IdentityHashMap<>();
+    private final Map<RecordedThread, ThreadEntry> threadsByIdentity = new IdentityHashMap<>();
+    private final Map<Long, ThreadEntry> threadsById = new HashMap<>();
+
+    private ThreadEntry thread;
+
+    private static final class ThreadEntry {
+
+        final String name;
+        final boolean selected;
+        final int frameId;
+
+        ThreadEntry(String name, boolean selected, int frameId) {
+            this.name = name;
+            this.selected = selected;
+            this.frameId = frameId;
+        }
+    }
+
+    /**
+     * @param frameTable   The frame table for the thread names
+     * @param threadFilter The filter of the threads
+     * @param threadFrames Whether to intern the thread names as frames
+     */
+    public ThreadCache(FrameTable frameTable, ThreadFilter threadFilter, boolean threadFrames) {
+        this.frameTable = frameTable;
+        this.threadFilter = threadFilter;
+        this.threadFrames = threadFrames;
+    }
+
+    /**
+     * Resolve the thread of an event. Execution samples have the thread in the {@code sampledThread} field and other
+     * events have it in the {@code eventThread} field.
+     *
+     * @param event The event
+     * @return Whether the thread of the event is selected
+     */
+    public boolean select(RecordedEvent event) {
+        jdk.jfr.EventType type = event.getEventType();
+        Boolean sampledThread = sampledThreadTypes.get(type);
+        if (sampledThread == null) {
+            sampledThread = type.getField(SAMPLED_THREAD_FIELD) != null;
+            sampledThreadTypes.put(type, sampledThread);
+        }
+        RecordedThread recordedThread = sampledThread ? event.getThread(SAMPLED_THREAD_FIELD) : event.getThread();
+        thread = recordedThread == null ? NO_THREAD : getThreadEntry(recordedThread);
+        return thread.selected || (recordedThread == null && threadFilter.isEmpty());
+    }
+
+    /**
+     * @return The frame ID of the name of the last selected thread, or -1 if the thread names are not frames or the
+     * event does not have a thread
+     */
+    public int getThreadFrameId() {
+        return thread.frameId;
+    }
+
+    private ThreadEntry getThreadEntry(RecordedThread recordedThread) {
+        ThreadEntry threadEntry = threadsByIdentity.get(recordedThread);
+        if (threadEntry != null) {
+            return threadEntry;
+        }
+        String name = getThreadName(recordedThread);
+        long javaThreadId = recordedThread.getJavaThreadId();
+        threadEntry = threadsById.get(javaThreadId);
+        // A thread can be renamed between chunks
+        if (threadEntry == null || !threadEntry.name.equals(name)) {
+            RecordedThreadGroup threadGroup = recordedThread.getThreadGroup();
+            boolean selected = threadFilter.matches(name, threadGroup == null ? null : threadGroup.getName());
+            threadEntry = new ThreadEntry(name, selected, threadFrames ? frameTable.intern(name) : -1);
+            if (threadsById.size() >= MAX_SIZE) {
+                threadsById.clear();
+            }
+            threadsById.put(javaThreadId, threadEntry);
+        }
+        if (threadsByIdentity.size() >= MAX_SIZE) {
+            threadsByIdentity.clear();
+        }
+        threadsByIdentity.put(recordedThread, threadEntry);
+        return threadEntry;
+    }
+
+    /**
+     * @return The Java name of the thread, or the OS name for threads which are not Java threads
+     */
+    static String getThreadName(RecordedThread recordedThread) {
+        String name = recordedThread.getJavaName();
+        if (name == null) {
+            name = recordedThread.getOSName();
+        }
+        return name == null ? "" : name;
+    }
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.util.regex.Pattern;
+
+/**
+ * Selects threads by the name of the thread and the name of its thread group. The names are matched with regular
+ * expressions, which must match the whole name.
+ */
+public final class ThreadFilter {
+
+    private final Pattern threadNamePattern;
+    private final Pattern threadGroupPattern;
+
+    /**
+     * @param threadNameRegex  The regular expression of the thread names, or {@code null} to select all thread names
+     * @param threadGroupRegex The regular expression of the thread group names, or {@code null} to select all thread
+     *                         groups
+     */
+    public ThreadFilter(String threadNameRegex, String threadGroupRegex) {
+        this.threadNamePattern = threadNameRegex == null ? null : Pattern.compile(threadNameRegex);
+        this.threadGroupPattern = threadGroupRegex == null ? null : Pattern.compile(threadGroupRegex);
+    }
+
+    /**
+     * @return Whether all threads are selected
+     */
+    public boolean isEmpty() {
+        return threadNamePattern == null && threadGroupPattern == null;
+    }
+
+    /**
+     * @param threadName      The name of the thread, or {@code null} if the event does not have a thread
+     * @param threadGroupName The name of the thread group, or {@code null} if the thread does not have a group
+     * @return Whether the thread is selected
+     */
+    public boolean matches(String threadName, String threadGroupName) {
+        if (threadNamePattern != null && (threadName == null || !threadNamePattern.matcher(threadName).matches())) {
+            return false;
+        }
+        return threadGroupPattern == null
+                || (threadGroupName != null && threadGroupPattern.matcher(threadGroupName).matches());
+    }
+}
@@ -22,6 +22,8 @@ import junit.framework.TestSuite;
 
 import java.io.File;
 import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collections;
 
 /**
  * Unit tests for the main Application.
@@ -56,7 +58,7 @@ public class ApplicationTest extends TestCase {
         String[] args = {"-f", tmp.toString(), "-o", tmp.toString()};
         parseCommands(args);
         assertTrue(tmp.exists());
-        assertEquals(tmp, jfrToFlameGraphWriter.jfrdump);
+        assertEquals(Collections.singletonList(tmp.toString()), jfrToFlameGraphWriter.jfrdumps);
         assertEquals(tmp, jfrToFlameGraphWriter.outputFile);
         assertFalse(jfrToFlameGraphWriter.ignoreLineNumbers);
     }
@@ -76,13 +78,27 @@ public class ApplicationTest extends TestCase {
     public void testEventTypeOption() throws Exception {
         String[] args = {"-f", "temp", "-e", "allocation-tlab"};
         parseCommands(args);
-        assertEquals(EventType.ALLOCATION_IN_NEW_TLAB, jfrToFlameGraphWriter.eventType);
+        assertEquals(Collections.singletonList(EventType.ALLOCATION_IN_NEW_TLAB), jfrToFlameGraphWriter.eventTypes);
     }
 
     public void testEventTypeOptionDefaultValue() throws Exception {
         String[] args = {"-f", "temp"};
         parseCommands(args);
-        assertEquals(EventType.METHOD_PROFILING_SAMPLE, jfrToFlameGraphWriter.eventType);
+        assertEquals(Collections.singletonList(EventType.METHOD_PROFILING_SAMPLE), jfrToFlameGraphWriter.eventTypes);
+    }
+
+    public void testMultipleEventTypesOption() throws Exception {
+        String[] args = {"-f", "temp", "-e", "cpu,exceptions", "-e", "io"};
+        parseCommands(args);
+        assertEquals(Arrays.asList(EventType.METHOD_PROFILING_SAMPLE, EventType.JAVA_EXCEPTION, EventType.IO),
+                jfrToFlameGraphWriter.eventTypes);
+    }
+
+    public void testMultipleJfrFilesOption() throws Exception {
+        String[] args = {"-f", "a.jfr,b.jfr", "-f", "recordings", "-fp"};
+        parseCommands(args);
+        assertEquals(Arrays.asList("a.jfr", "b.jfr", "recordings"), jfrToFlameGraphWriter.jfrdumps);
+        assertTrue(jfrToFlameGraphWriter.fileNamePrefix);
     }
 
 }
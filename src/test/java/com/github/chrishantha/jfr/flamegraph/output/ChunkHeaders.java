@@ -0,0 +1,70 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Synthetic JFR chunks for the tests. A chunk is a header with the fields used by the parser and a payload of zeros.
+ */
+final class ChunkHeaders {
+
+    /**
+     * The size of a chunk header written by the JVM
+     */
+    static final int HEADER_SIZE = 68;
+
+    private ChunkHeaders() {
+    }
+
+    /**
+     * @return A finished chunk with the given time range and payload size
+     */
+    static byte[] chunk(long startNanos, long durationNanos, int payloadSize) {
+        return chunk(startNanos, durationNanos, payloadSize, 0, HEADER_SIZE + payloadSize);
+    }
+
+    /**
+     * @param state        The file state, which is zero for a finished chunk
+     * @param declaredSize The size in the header, which is zero for a chunk being written
+     * @return A chunk with the given header fields
+     */
+    static byte[] chunk(long startNanos, long durationNanos, int payloadSize, int state, long declaredSize) {
+        ByteBuffer buffer = ByteBuffer.allocate(HEADER_SIZE + payloadSize);
+        buffer.putInt(0, JFRChunk.MAGIC);
+        buffer.putShort(4, (short) 2);
+        buffer.putLong(8, declaredSize);
+        buffer.putLong(32, startNanos);
+        buffer.putLong(40, durationNanos);
+        buffer.put(ChunkRepository.STATE_OFFSET, (byte) state);
+        return buffer.array();
+    }
+
+    /**
+     * @return The chunks one after the other
+     */
+    static byte[] concat(byte[]... chunks) {
+        int length = 0;
+        for (byte[] chunk : chunks) {
+            length += chunk.length;
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        for (byte[] chunk : chunks) {
+            buffer.put(chunk);
+        }
+        return buffer.array();
+    }
+}
@@ -0,0 +1,164 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Unit tests for the chunk index and its sidecar file.
+ */
+public class ChunkIndexTest extends TestCase {
+
+    private static final FileTime MODIFIED_TIME = FileTime.fromMillis(1_500_000_000_000L);
+
+    private Path jfrPath;
+    private Path sidecarPath;
+
+    @Override
+    protected void setUp() throws Exception {
+        jfrPath = Files.createTempFile("recording_", ".jfr");
+        sidecarPath = jfrPath.resolveSibling(jfrPath.getFileName() + ChunkIndex.SIDECAR_SUFFIX);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(jfrPath);
+        Files.deleteIfExists(sidecarPath);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ChunkIndexTest.class);
+    }
+
+    private void writeRecording(FileTime modifiedTime, byte[]... chunks) throws IOException {
+        Files.write(jfrPath, ChunkHeaders.concat(chunks));
+        Files.setLastModifiedTime(jfrPath, modifiedTime);
+    }
+
+    private static List<Long> getStartNanos(List<JFRChunk> chunks) {
+        List<Long> startNanos = new ArrayList<>();
+        for (JFRChunk chunk : chunks) {
+            startNanos.add(chunk.getStartNanos());
+        }
+        return startNanos;
+    }
+
+    public void testReadChunks() throws IOException {
+        writeRecording(MODIFIED_TIME, ChunkHeaders.chunk(1000, 500, 32), ChunkHeaders.chunk(1500, 500, 64));
+        ChunkIndex chunkIndex = ChunkIndex.load(jfrPath, false);
+        assertFalse(Files.exists(sidecarPath));
+        List<JFRChunk> chunks = chunkIndex.getChunks();
+        assertEquals(2, chunks.size());
+        assertEquals(0, chunks.get(0).getOffset());
+        assertEquals(ChunkHeaders.HEADER_SIZE + 32, chunks.get(0).getSize());
+        assertEquals(ChunkHeaders.HEADER_SIZE + 32, chunks.get(1).getOffset());
+        assertEquals(ChunkHeaders.HEADER_SIZE + 64, chunks.get(1).getSize());
+        assertEquals(1000, chunkIndex.getStartNanos());
+        assertEquals(2000, chunkIndex.getEndNanos());
+    }
+
+    public void testSidecarIsReused() throws IOException {
+        writeRecording(MODIFIED_TIME, ChunkHeaders.chunk(1000, 500, 32), ChunkHeaders.chunk(1500, 500, 32));
+        assertEquals(Arrays.asList(1000L, 1500L), getStartNanos(ChunkIndex.load(jfrPath, true).getChunks()));
+        assertTrue(Files.exists(sidecarPath));
+
+        // The sidecar file is used while the size and the modification time do not change
+        writeRecording(MODIFIED_TIME, ChunkHeaders.chunk(3000, 500, 32), ChunkHeaders.chunk(3500, 500, 32));
+        assertEquals(Arrays.asList(1000L, 1500L), getStartNanos(ChunkIndex.load(jfrPath, true).getChunks()));
+        assertEquals(Arrays.asList(3000L, 3500L), getStartNanos(ChunkIndex.load(jfrPath, false).getChunks()));
+    }
+
+    public void testSidecarIsInvalidatedByModifiedTime() throws IOException {
+        writeRecording(MODIFIED_TIME, ChunkHeaders.chunk(1000, 500, 32));
+        ChunkIndex.load(jfrPath, true);
+        writeRecording(FileTime.fromMillis(MODIFIED_TIME.toMillis() + 1000), ChunkHeaders.chunk(3000, 500, 32));
+        assertEquals(Collections.singletonList(3000L), getStartNanos(ChunkIndex.load(jfrPath, true).getChunks()));
+    }
+
+    public void testSidecarIsInvalidatedBySize() throws IOException {
+        writeRecording(MODIFIED_TIME, ChunkHeaders.chunk(1000, 500, 32));
+        ChunkIndex.load(jfrPath, true);
+        writeRecording(MODIFIED_TIME, ChunkHeaders.chunk(1000, 500, 32), ChunkHeaders.chunk(1500, 500, 32));
+        assertEquals(Arrays.asList(1000L, 1500L), getStartNanos(ChunkIndex.load(jfrPath, true).getChunks()));
+        // The sidecar file is written again
+        writeRecording(MODIFIED_TIME, ChunkHeaders.chunk(5000, 500, 32), ChunkHeaders.chunk(5500, 500, 32));
+        assertEquals(Arrays.asList(1000L, 1500L), getStartNanos(ChunkIndex.load(jfrPath, true).getChunks()));
+    }
+
+    public void testCorruptedSidecarIsWrittenAgain() throws IOException {
+        writeRecording(MODIFIED_TIME, ChunkHeaders.chunk(1000, 500, 32));
+        Files.write(sidecarPath, new byte[]{1, 2, 3});
+        assertEquals(Collections.singletonList(1000L), getStartNanos(ChunkIndex.load(jfrPath, true).getChunks()));
+        assertTrue(Files.size(sidecarPath) > 3);
+    }
+
+    public void testGetChunksInTimeRange() throws IOException {
+        writeRecording(MODIFIED_TIME, ChunkHeaders.chunk(1000, 500, 32), ChunkHeaders.chunk(1500, 500, 32),
+                ChunkHeaders.chunk(2000, 500, 32),
+                // A chunk being written does not have a duration and a size
+                ChunkHeaders.chunk(2500, 0, 32, 1, 0));
+        ChunkIndex chunkIndex = ChunkIndex.load(jfrPath, false);
+        assertEquals(Collections.singletonList(1500L), getStartNanos(chunkIndex.getChunks(1600, 1700)));
+        // The time range and the chunks include both ends
+        assertEquals(Arrays.asList(1000L, 1500L), getStartNanos(chunkIndex.getChunks(1500, 1500)));
+        assertEquals(Collections.emptyList(), getStartNanos(chunkIndex.getChunks(0, 999)));
+        // The chunk being written overlaps any time after its start
+        assertEquals(Collections.singletonList(2500L), getStartNanos(chunkIndex.getChunks(3000, 4000)));
+        assertEquals(Arrays.asList(2000L, 2500L), getStartNanos(chunkIndex.getChunks(2400, Long.MAX_VALUE)));
+        assertEquals(4, chunkIndex.getChunks(Long.MIN_VALUE, Long.MAX_VALUE).size());
+        assertEquals(ChunkHeaders.HEADER_SIZE + 32, chunkIndex.getChunks().get(3).getSize());
+    }
+
+    public void testChunksAfterTimeRangeForDurationEvents() throws IOException {
+        writeRecording(MODIFIED_TIME, ChunkHeaders.chunk(1000, 500, 32), ChunkHeaders.chunk(1500, 500, 32),
+                ChunkHeaders.chunk(2000, 500, 32));
+        ChunkIndex chunkIndex = ChunkIndex.load(jfrPath, false);
+        // Samples are in the chunk of their time
+        assertEquals(Collections.singletonList(1500L), getStartNanos(chunkIndex.getChunks(1600, 1700,
+                Collections.singletonList(EventType.METHOD_PROFILING_SAMPLE))));
+        // An event with a duration starting in the time range can end in any later chunk
+        assertEquals(Arrays.asList(1500L, 2000L), getStartNanos(chunkIndex.getChunks(1600, 1700,
+                Arrays.asList(EventType.METHOD_PROFILING_SAMPLE, EventType.IO))));
+        assertEquals(Collections.emptyList(), getStartNanos(chunkIndex.getChunks(2600, 2700,
+                Collections.singletonList(EventType.JAVA_MONITOR_BLOCKED))));
+        assertEquals(1700, ChunkIndex.getSelectionEndNanos(1700,
+                Collections.singletonList(EventType.ALLOCATION_IN_NEW_TLAB)));
+        assertEquals(Long.MAX_VALUE, ChunkIndex.getSelectionEndNanos(1700,
+                Collections.singletonList(EventType.IO)));
+    }
+
+    public void testEmptyFile() throws IOException {
+        writeRecording(MODIFIED_TIME);
+        ChunkIndex chunkIndex = ChunkIndex.load(jfrPath, true);
+        assertEquals(0, chunkIndex.getChunks().size());
+        assertEquals(0, chunkIndex.getStartNanos());
+        assertEquals(0, chunkIndex.getEndNanos());
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+/**
+ * Unit tests for finding the completed chunk files in a JFR repository.
+ */
+public class ChunkRepositoryTest extends TestCase {
+
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("jfr_repository_");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> paths = Files.list(directory)) {
+            for (Path path : (Iterable<Path>) paths::iterator) {
+                Files.delete(path);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ChunkRepositoryTest.class);
+    }
+
+    public void testChunkIsCompletedInFinishedState() throws IOException {
+        Path path = directory.resolve("chunk.jfr");
+        // The JVM writes the duration and the size before the chunk is finished
+        Files.write(path, ChunkHeaders.chunk(1000, 500, 32, 2, ChunkHeaders.HEADER_SIZE + 32));
+        try (ChunkRepository chunkRepository = new ChunkRepository(directory, 0)) {
+            assertFalse(ChunkRepository.isFinished(path));
+            assertEquals(Collections.emptyList(), chunkRepository.findCompletedFiles());
+
+            Files.write(path, ChunkHeaders.chunk(1000, 500, 32));
+            assertTrue(ChunkRepository.isFinished(path));
+            assertEquals(Collections.singletonList(path), chunkRepository.findCompletedFiles());
+            // Each completed file is returned once
+            assertEquals(Collections.emptyList(), chunkRepository.findCompletedFiles());
+        }
+    }
+
+    public void testSizeMustMatchFile() throws IOException {
+        Path path = directory.resolve("chunk.jfr");
+        Files.write(path, ChunkHeaders.chunk(1000, 500, 32, 0, ChunkHeaders.HEADER_SIZE + 64));
+        assertFalse(ChunkRepository.isFinished(path));
+        Files.write(path, ChunkHeaders.chunk(1000, 500, 32, 0, 0));
+        assertFalse(ChunkRepository.isFinished(path));
+        // A second chunk which is not finished
+        Files.write(path, ChunkHeaders.concat(ChunkHeaders.chunk(1000, 500, 32),
+                ChunkHeaders.chunk(1500, 0, 32, 2, ChunkHeaders.HEADER_SIZE + 32)));
+        assertFalse(ChunkRepository.isFinished(path));
+        Files.write(path, ChunkHeaders.concat(ChunkHeaders.chunk(1000, 500, 32), ChunkHeaders.chunk(1500, 500, 32)));
+        assertTrue(ChunkRepository.isFinished(path));
+    }
+
+    public void testRetry() throws IOException {
+        Path path = directory.resolve("chunk.jfr");
+        Files.write(path, ChunkHeaders.chunk(1000, 500, 32));
+        try (ChunkRepository chunkRepository = new ChunkRepository(directory, 0)) {
+            assertEquals(Collections.singletonList(path), chunkRepository.findCompletedFiles());
+            chunkRepository.retry(path);
+            assertEquals(Collections.singletonList(path), chunkRepository.findCompletedFiles());
+        }
+    }
+}
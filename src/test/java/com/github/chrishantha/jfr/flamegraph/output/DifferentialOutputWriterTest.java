@@ -0,0 +1,77 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for the differential output.
+ */
+public class DifferentialOutputWriterTest extends OutputWriterTestCase {
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(DifferentialOutputWriterTest.class);
+    }
+
+    private DifferentialOutputWriter createWriter(OutputType outputType) {
+        DifferentialOutputWriter writer = new DifferentialOutputWriter(outputType);
+        writer.initialize(new OutputWriterParameters());
+        FlameGraphOutputWriter baseline = writer.getBaselineWriter();
+        processEvent(baseline, 2, "main", "run", "work");
+        processEvent(baseline, 2, "main", "sleep");
+        processEvent(writer, 6, "main", "run", "work");
+        processEvent(writer, 2, "main", "run", "parse");
+        return writer;
+    }
+
+    public void testFoldedOutput() throws IOException {
+        // The baseline is normalized to the total of the target: 4 to 8
+        assertEquals("main;run;work 4 6\nmain;run;parse 0 2\nmain;sleep 4 0\n",
+                writeOutput(createWriter(OutputType.FOLDED)));
+    }
+
+    public void testJsonOutput() throws IOException {
+        assertEquals("{\"name\":\"root\",\"value\":8,\"delta\":0,\"children\":["
+                        + "{\"name\":\"main\",\"value\":8,\"delta\":0,\"children\":["
+                        + "{\"name\":\"run\",\"value\":8,\"delta\":4,\"children\":["
+                        + "{\"name\":\"work\",\"value\":6,\"delta\":2},"
+                        + "{\"name\":\"parse\",\"value\":2,\"delta\":2}]},"
+                        + "{\"name\":\"sleep\",\"value\":0,\"delta\":-4}]}]}",
+                writeOutput(createWriter(OutputType.JSON)));
+    }
+
+    public void testEmptyBaseline() throws IOException {
+        DifferentialOutputWriter writer = new DifferentialOutputWriter(OutputType.FOLDED);
+        writer.initialize(new OutputWriterParameters());
+        processEvent(writer, 3, "main", "run");
+        assertEquals("main;run 0 3\n", writeOutput(writer));
+    }
+
+    public void testSvgIsNotSupported() {
+        try {
+            new DifferentialOutputWriter(OutputType.SVG);
+            fail("The svg output type is not supported");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+}
@@ -0,0 +1,156 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Unit tests for dispatching the events of a recording to the selected event types.
+ */
+public class EventDispatcherTest extends TestCase {
+
+    private static final int EXCEPTION_COUNT = 20;
+
+    private static final int SLEEP_COUNT = 5;
+
+    private static final String EXCEPTION_EVENT = "jdk.JavaExceptionThrow";
+
+    private static final String SLEEP_EVENT = "jdk.ThreadSleep";
+
+    private Path jfrPath;
+
+    @Override
+    protected void setUp() throws Exception {
+        jfrPath = Files.createTempFile("events_", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(EXCEPTION_EVENT).withStackTrace();
+            recording.enable(SLEEP_EVENT).withThreshold(Duration.ZERO);
+            recording.start();
+            for (int i = 0; i < EXCEPTION_COUNT; i++) {
+                try {
+                    throw new IllegalStateException("Exception " + i);
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+            }
+            for (int i = 0; i < SLEEP_COUNT; i++) {
+                Thread.sleep(1);
+            }
+            recording.stop();
+            recording.dump(jfrPath);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(jfrPath);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(EventDispatcherTest.class);
+    }
+
+    /**
+     * Dispatch the events of the recording and count the events dispatched to each target.
+     *
+     * @param recordingEventTypes Whether the event types of the recording are given to the dispatcher
+     * @return The counts by event type name
+     */
+    private Map<String, long[]> dispatchEvents(List<EventType> eventTypes, boolean recordingEventTypes,
+                                               long[] targetCounts) throws IOException {
+        Map<String, long[]> eventCounts = new TreeMap<>();
+        try (RecordingFile recording = new RecordingFile(jfrPath)) {
+            List<jdk.jfr.EventType> types = recordingEventTypes ? recording.readEventTypes()
+                    : Collections.emptyList();
+            EventDispatcher eventDispatcher = new EventDispatcher(eventTypes, types);
+            while (recording.hasMoreEvents()) {
+                RecordedEvent event = recording.readEvent();
+                int entry = eventDispatcher.dispatch(event);
+                // The same event type has the same entry
+                assertEquals(entry, eventDispatcher.dispatch(event));
+                int[] targets = eventDispatcher.getTargets(entry);
+                EventType.ValueAccessor[] valueAccessors = eventDispatcher.getValueAccessors(entry);
+                assertEquals(targets.length, valueAccessors.length);
+                for (int i = 0; i < targets.length; i++) {
+                    targetCounts[targets[i]] += valueAccessors[i].getValue(event);
+                }
+                if (targets.length > 0) {
+                    eventDispatcher.consumed(entry);
+                }
+            }
+            eventDispatcher.addCounts(eventCounts);
+        }
+        return eventCounts;
+    }
+
+    public void testEventTypesOfRecording() throws IOException {
+        try (RecordingFile recording = new RecordingFile(jfrPath)) {
+            // The table of the event types grows past its initial size
+            assertTrue(recording.readEventTypes().size() > 64);
+        }
+        long[] targetCounts = new long[1];
+        Map<String, long[]> eventCounts = dispatchEvents(Collections.singletonList(EventType.JAVA_EXCEPTION), true,
+                targetCounts);
+        assertTrue(targetCounts[0] >= EXCEPTION_COUNT);
+        // Each event is dispatched twice
+        assertEquals(2 * targetCounts[0], eventCounts.get(EXCEPTION_EVENT)[0]);
+        assertEquals(targetCounts[0], eventCounts.get(EXCEPTION_EVENT)[1]);
+        // The events of other types are counted as read
+        assertTrue(eventCounts.get(SLEEP_EVENT)[0] >= 2 * SLEEP_COUNT);
+        assertEquals(0, eventCounts.get(SLEEP_EVENT)[1]);
+    }
+
+    public void testEventTypesResolvedWhenFirstSeen() throws IOException {
+        long[] resolvedCounts = new long[1];
+        Map<String, long[]> resolvedEventCounts = dispatchEvents(
+                Collections.singletonList(EventType.JAVA_EXCEPTION), false, resolvedCounts);
+        long[] targetCounts = new long[1];
+        Map<String, long[]> eventCounts = dispatchEvents(Collections.singletonList(EventType.JAVA_EXCEPTION), true,
+                targetCounts);
+        assertTrue(resolvedCounts[0] >= EXCEPTION_COUNT);
+        assertEquals(targetCounts[0], resolvedCounts[0]);
+        assertEquals(eventCounts.keySet(), resolvedEventCounts.keySet());
+    }
+
+    public void testEventNameWithSeveralTargets() throws IOException {
+        long[] targetCounts = new long[3];
+        Map<String, long[]> eventCounts = dispatchEvents(Arrays.asList(EventType.JAVA_EXCEPTION,
+                EventType.METHOD_PROFILING_SAMPLE, EventType.JAVA_EXCEPTION), false, targetCounts);
+        assertTrue(targetCounts[0] >= EXCEPTION_COUNT);
+        assertEquals(0, targetCounts[1]);
+        assertEquals(targetCounts[0], targetCounts[2]);
+        // An event matching several targets is consumed once
+        assertEquals(targetCounts[0], eventCounts.get(EXCEPTION_EVENT)[1]);
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+
+/**
+ * Unit tests for the flame graph server and its query parameters.
+ */
+public class FlameGraphServerTest extends TestCase {
+
+    private static final int EXCEPTION_COUNT = 20;
+
+    private Path directory;
+    private Path jfrPath;
+    private ProfileCache profileCache;
+    private FlameGraphServer flameGraphServer;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("jfr_flame_graph_server_");
+        jfrPath = directory.resolve("exceptions.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.JavaExceptionThrow").withStackTrace();
+            recording.start();
+            throwExceptions();
+            recording.stop();
+            recording.dump(jfrPath);
+        }
+        try (ProfileCacheWriter profileCacheWriter = new ProfileCacheWriter(jfrPath)) {
+            try (RecordingFile recording = new RecordingFile(jfrPath)) {
+                profileCacheWriter.addRecording(recording);
+            }
+            profileCacheWriter.write();
+        }
+        profileCache = ProfileCache.open(jfrPath);
+        assertNotNull(profileCache);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        if (flameGraphServer != null) {
+            flameGraphServer.stop(0);
+        }
+        Files.deleteIfExists(ProfileCache.getCachePath(jfrPath));
+        Files.deleteIfExists(jfrPath);
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(FlameGraphServerTest.class);
+    }
+
+    private static void throwExceptions() {
+        for (int i = 0; i < EXCEPTION_COUNT; i++) {
+            try {
+                throw new IllegalStateException("Exception " + i);
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    private void startServer(long maxCachedBytes) throws IOException {
+        if (flameGraphServer != null) {
+            flameGraphServer.stop(0);
+        }
+        flameGraphServer = new FlameGraphServer(profileCache,
+                frameTable -> new FrameNameCache(frameTable, true, true, true, false), new OutputWriterParameters(),
+                new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 2, maxCachedBytes);
+        flameGraphServer.start();
+    }
+
+    private HttpURLConnection request(String method, String pathAndQuery) throws IOException {
+        InetSocketAddress address = flameGraphServer.getAddress();
+        URL url = new URL("http", address.getHostString(), address.getPort(), pathAndQuery);
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setRequestMethod(method);
+        return connection;
+    }
+
+    private static String readBody(HttpURLConnection connection) throws IOException {
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        try (InputStream in = connection.getResponseCode() < 400 ? connection.getInputStream()
+                : connection.getErrorStream()) {
+            byte[] buffer = new byte[8192];
+            int read;
+            while ((read = in.read(buffer)) >= 0) {
+                body.write(buffer, 0, read);
+            }
+        }
+        return new String(body.toByteArray(), StandardCharsets.UTF_8);
+    }
+
+    private int getStatus(String pathAndQuery) throws IOException {
+        HttpURLConnection connection = request("GET", pathAndQuery);
+        readBody(connection);
+        return connection.getResponseCode();
+    }
+
+    /**
+     * @return The sum of the values of the stacks thrown by {@link #throwExceptions()} in the folded output
+     */
+    private static long getThrownCount(String folded) {
+        long thrown = 0;
+        for (String line : folded.split("\\R")) {
+            if (line.contains("FlameGraphServerTest.throwExceptions()")) {
+                thrown += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        return thrown;
+    }
+
+    public void testEmptyQuery() {
+        assertTrue(FlameGraphServer.parseQuery(null).isEmpty());
+        assertTrue(FlameGraphServer.parseQuery("").isEmpty());
+    }
+
+    public void testQueryIsDecoded() {
+        Map<String, String> query = FlameGraphServer.parseQuery("thread=pool-1%20thread&frame=a.B.c%28%29&type");
+        assertEquals("pool-1 thread", query.get("thread"));
+        assertEquals("a.B.c()", query.get("frame"));
+        assertEquals("", query.get("type"));
+    }
+
+    public void testSameQueryInAnyOrder() {
+        assertEquals(FlameGraphServer.parseQuery("event=cpu&start=10&end=20").toString(),
+                FlameGraphServer.parseQuery("end=20&event=cpu&start=10").toString());
+    }
+
+    public void testFoldedOutputIsStreamed() throws IOException {
+        startServer(Long.MAX_VALUE);
+        HttpURLConnection connection = request("GET", FlameGraphServer.PATH + "?event=exceptions");
+        String body = readBody(connection);
+        assertEquals(200, connection.getResponseCode());
+        assertEquals("text/plain; charset=UTF-8", connection.getContentType());
+        // The response is sent in chunks, without the length of the output
+        assertEquals("chunked", connection.getHeaderField("Transfer-Encoding"));
+        assertEquals(EXCEPTION_COUNT, getThrownCount(body));
+    }
+
+    public void testContentTypes() throws IOException {
+        startServer(Long.MAX_VALUE);
+        HttpURLConnection json = request("GET", FlameGraphServer.PATH + "?event=exceptions&type=json");
+        assertTrue(readBody(json).startsWith("{\"name\":\"root\""));
+        assertEquals("application/json; charset=UTF-8", json.getContentType());
+
+        HttpURLConnection svg = request("GET", FlameGraphServer.PATH + "?event=exceptions&type=svg");
+        assertTrue(readBody(svg).contains("<svg"));
+        assertEquals("image/svg+xml; charset=UTF-8", svg.getContentType());
+    }
+
+    public void testBadRequests() throws IOException {
+        startServer(Long.MAX_VALUE);
+        assertEquals(400, getStatus(FlameGraphServer.PATH + "?type=xml"));
+        assertEquals(400, getStatus(FlameGraphServer.PATH + "?event=unknown"));
+        assertEquals(400, getStatus(FlameGraphServer.PATH + "?start=yesterday"));
+        assertEquals(404, getStatus(FlameGraphServer.PATH + "/other"));
+
+        HttpURLConnection post = request("POST", FlameGraphServer.PATH);
+        assertEquals(405, post.getResponseCode());
+        readBody(post);
+    }
+
+    public void testFailedQuery() throws IOException {
+        startServer(Long.MAX_VALUE);
+        // The events cannot be read without the cache file
+        Files.delete(ProfileCache.getCachePath(jfrPath));
+        HttpURLConnection connection = request("GET", FlameGraphServer.PATH + "?event=exceptions");
+        String body = readBody(connection);
+        assertEquals(500, connection.getResponseCode());
+        assertTrue(body.startsWith("Could not create the flamegraph"));
+    }
+
+    public void testRepeatedQueryIsCached() throws IOException {
+        startServer(Long.MAX_VALUE);
+        HttpURLConnection first = request("GET", FlameGraphServer.PATH + "?event=exceptions&type=folded");
+        String body = readBody(first);
+        assertEquals(200, first.getResponseCode());
+
+        // The response is read from memory, so the cache file is not needed
+        Files.delete(ProfileCache.getCachePath(jfrPath));
+        HttpURLConnection second = request("GET", FlameGraphServer.PATH + "?type=folded&event=exceptions");
+        assertEquals(body, readBody(second));
+        assertEquals(200, second.getResponseCode());
+        assertEquals("text/plain; charset=UTF-8", second.getContentType());
+        assertEquals(body.getBytes(StandardCharsets.UTF_8).length, second.getContentLengthLong());
+        assertEquals(500, getStatus(FlameGraphServer.PATH + "?event=exceptions&type=json"));
+    }
+
+    public void testLeastRecentlyUsedResponseIsRemoved() throws IOException {
+        startServer(Long.MAX_VALUE);
+        HttpURLConnection connection = request("GET", FlameGraphServer.PATH + "?event=exceptions");
+        int size = readBody(connection).getBytes(StandardCharsets.UTF_8).length;
+
+        // The responses have the same size, and two of them fit in the memory
+        startServer(2L * size);
+        String query = FlameGraphServer.PATH + "?event=exceptions&n=";
+        assertEquals(200, getStatus(query + 1));
+        assertEquals(200, getStatus(query + 2));
+        assertEquals(200, getStatus(query + 1));
+        assertEquals(200, getStatus(query + 3));
+
+        Files.delete(ProfileCache.getCachePath(jfrPath));
+        assertEquals(200, getStatus(query + 1));
+        assertEquals(200, getStatus(query + 3));
+        assertEquals(500, getStatus(query + 2));
+    }
+}
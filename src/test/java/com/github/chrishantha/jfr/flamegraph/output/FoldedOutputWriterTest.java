@@ -0,0 +1,58 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for the folded output.
+ */
+public class FoldedOutputWriterTest extends OutputWriterTestCase {
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(FoldedOutputWriterTest.class);
+    }
+
+    public void testAggregateStacks() throws IOException {
+        FoldedOutputWriter writer = new FoldedOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        processEvent(writer, 1, "main", "run", "work");
+        processEvent(writer, 2, "main", "sleep");
+        processEvent(writer, 3, "main", "run", "work");
+        processEvent(writer, 4, "main", "run");
+        assertEquals("main;run 4\nmain;run;work 4\nmain;sleep 2\n", writeOutput(writer));
+    }
+
+    public void testZeroValue() throws IOException {
+        FoldedOutputWriter writer = new FoldedOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        processEvent(writer, 0, "main", "allocate");
+        processEvent(writer, 5, "main", "run");
+        assertEquals("main;allocate 0\nmain;run 5\n", writeOutput(writer));
+    }
+
+    public void testEmptyOutput() throws IOException {
+        FoldedOutputWriter writer = new FoldedOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        assertEquals("", writeOutput(writer));
+    }
+}
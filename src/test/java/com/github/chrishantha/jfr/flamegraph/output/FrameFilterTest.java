@@ -0,0 +1,100 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Unit tests for the frame filter and the filtered frames of the frame name cache.
+ */
+public class FrameFilterTest extends TestCase {
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(FrameFilterTest.class);
+    }
+
+    public void testMatchPrefixes() {
+        FrameFilter frameFilter = new FrameFilter(Collections.singletonList("com.example"),
+                Arrays.asList("java.lang.reflect", "jdk.internal.reflect"),
+                Arrays.asList("org.springframework", "org.springframework.aop", "com.example.Tree.visit"));
+        assertFalse(frameFilter.isEmpty());
+        assertTrue(frameFilter.hasIncludes());
+
+        assertTrue(frameFilter.match("java.lang.reflect.Method", "invoke").isExcluded());
+        assertFalse(frameFilter.match("java.lang.Thread", "run").isExcluded());
+        assertNull(frameFilter.match("java.lang.Thread", "run").getCollapsePattern());
+
+        // The longest collapse pattern is used
+        assertEquals("org.springframework.aop",
+                frameFilter.match("org.springframework.aop.framework.ReflectiveMethodInvocation", "proceed")
+                        .getCollapsePattern());
+        assertEquals("org.springframework",
+                frameFilter.match("org.springframework.web.servlet.DispatcherServlet", "doService")
+                        .getCollapsePattern());
+
+        // The method name is a part of the qualified name
+        FrameFilter.Match match = frameFilter.match("com.example.Tree", "visit");
+        assertTrue(match.isIncluded());
+        assertEquals("com.example.Tree.visit", match.getCollapsePattern());
+        assertNull(frameFilter.match("com.example.Tree", "size").getCollapsePattern());
+    }
+
+    public void testEmptyFilter() {
+        FrameFilter frameFilter = new FrameFilter(Collections.emptyList(), Collections.emptyList(),
+                Collections.emptyList());
+        assertTrue(frameFilter.isEmpty());
+        assertFalse(frameFilter.hasIncludes());
+    }
+
+    public void testEmptyPattern() {
+        try {
+            new FrameFilter(Collections.singletonList(""), Collections.emptyList(), Collections.emptyList());
+            fail("An empty pattern is not valid");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    public void testFilteredStack() {
+        FrameFilter frameFilter = new FrameFilter(Collections.singletonList("com.example"),
+                Collections.singletonList("java.lang.reflect"), Collections.singletonList("com.example.Tree.visit"));
+        FrameTable frameTable = new FrameTable();
+        FrameNameCache frameNameCache = new FrameNameCache(frameTable, false, false, true, false,
+                FrameNameCache.DEFAULT_MAX_SIZE, frameFilter);
+        FrameStack stack = new FrameStack(frameTable);
+        frameNameCache.push(stack, frameNameCache.getFrameId("java.lang.Thread", "run", "()V", 1));
+        frameNameCache.push(stack, frameNameCache.getFrameId("java.lang.reflect.Method", "invoke", "()V", 2));
+        frameNameCache.push(stack, frameNameCache.getFrameId("com.example.Tree", "visit", "()V", 3));
+        frameNameCache.push(stack, frameNameCache.getFrameId("com.example.Tree", "visit", "()V", 4));
+        frameNameCache.push(stack, frameNameCache.getFrameId("com.example.Tree", "visit", "()V", 4));
+        frameNameCache.push(stack, frameNameCache.getFrameId("java.lang.Math", "max", "()V", 5));
+        assertEquals(Arrays.asList("java.lang.Thread.run():1", "com.example.Tree.visit", "java.lang.Math.max():5"),
+                Arrays.asList(stack.toArray()));
+        assertTrue(frameNameCache.isSelected(stack));
+
+        stack.clear();
+        frameNameCache.push(stack, frameNameCache.getFrameId("java.lang.Thread", "run", "()V", 1));
+        assertFalse(frameNameCache.isSelected(stack));
+    }
+}
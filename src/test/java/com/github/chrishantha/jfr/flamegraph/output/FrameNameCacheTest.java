@@ -0,0 +1,188 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordedFrame;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Unit tests for formatting and caching the frame names.
+ */
+public class FrameNameCacheTest extends TestCase {
+
+    private static final String PUT_DESCRIPTOR = "(Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object;";
+
+    private static final String MAIN_DESCRIPTOR = "([Ljava/lang/String;I)V";
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(FrameNameCacheTest.class);
+    }
+
+    public void testFormatMethod() {
+        FrameNameCache frameNameCache = createCache(false, false, false);
+        assertEquals("java.util.HashMap.put(Object, Object)",
+                frameNameCache.formatMethod("java.util.HashMap", "put", PUT_DESCRIPTOR));
+        assertEquals("com.example.Main.main(String[], int)",
+                frameNameCache.formatMethod("com.example.Main", "main", MAIN_DESCRIPTOR));
+    }
+
+    public void testFormatMethodWithSimpleNames() {
+        FrameNameCache frameNameCache = createCache(true, false, false);
+        assertEquals("HashMap.put(Object, Object)",
+                frameNameCache.formatMethod("java.util.HashMap", "put", PUT_DESCRIPTOR));
+    }
+
+    public void testFormatMethodWithHiddenArguments() {
+        FrameNameCache frameNameCache = createCache(false, true, false);
+        assertEquals("java.util.HashMap.put()", frameNameCache.formatMethod("java.util.HashMap", "put",
+                PUT_DESCRIPTOR));
+    }
+
+    public void testFormatMethodWithReturnValue() {
+        FrameNameCache frameNameCache = createCache(false, false, true);
+        assertEquals("Object java.util.HashMap.put(Object, Object)",
+                frameNameCache.formatMethod("java.util.HashMap", "put", PUT_DESCRIPTOR));
+        assertEquals("void com.example.Main.main(String[], int)",
+                frameNameCache.formatMethod("com.example.Main", "main", MAIN_DESCRIPTOR));
+        assertEquals("int[] HashMap.get()", createCache(true, true, true).formatMethod("java.util.HashMap", "get",
+                "(I)[I"));
+    }
+
+    public void testFormatMethodWithoutParameters() {
+        // A descriptor without the parameters does not have the return value either
+        assertEquals("java.util.HashMap.put()", createCache(false, false, true).formatMethod("java.util.HashMap",
+                "put", ""));
+        assertEquals("HashMap.put()", createCache(true, false, false).formatMethod("java.util.HashMap", "put",
+                "Ljava/lang/Object;"));
+    }
+
+    public void testDecodeDescriptors() {
+        assertEquals(Arrays.asList("int", "long", "long[]", "java.lang.String[][]", "boolean"),
+                FrameNameCache.decodeDescriptors("IJ[J[[Ljava.lang.String;Z", ""));
+        // The array size is added to the first dimension
+        assertEquals(Collections.singletonList("byte[16][]"), FrameNameCache.decodeDescriptors("[[B", "16"));
+    }
+
+    public void testLineNumbersAreInterned() {
+        FrameTable frameTable = new FrameTable();
+        FrameNameCache frameNameCache = new FrameNameCache(frameTable, false, true, true, false);
+        int frameId = frameNameCache.getFrameId("java.util.HashMap", "put", PUT_DESCRIPTOR, 10);
+        assertEquals("HashMap.put():10", frameTable.getName(frameId));
+        assertEquals(frameId, frameNameCache.getFrameId("java.util.HashMap", "put", PUT_DESCRIPTOR, 10));
+        assertEquals(1, frameNameCache.getHits());
+        assertEquals(1, frameNameCache.getMisses());
+
+        // More lines than the initial size of the line number table
+        int[] frameIds = new int[20];
+        for (int line = 0; line < frameIds.length; line++) {
+            frameIds[line] = frameNameCache.getFrameId("java.util.HashMap", "put", PUT_DESCRIPTOR, line + 100);
+        }
+        for (int line = 0; line < frameIds.length; line++) {
+            assertEquals("HashMap.put():" + (line + 100), frameTable.getName(frameIds[line]));
+            assertEquals(frameIds[line], frameNameCache.getFrameId("java.util.HashMap", "put", PUT_DESCRIPTOR,
+                    line + 100));
+        }
+        assertEquals(21, frameNameCache.size());
+        assertEquals(21, frameNameCache.getMisses());
+    }
+
+    public void testIgnoreLineNumbers() {
+        FrameTable frameTable = new FrameTable();
+        FrameNameCache frameNameCache = new FrameNameCache(frameTable, true, true, true, false);
+        int frameId = frameNameCache.getFrameId("java.util.HashMap", "put", PUT_DESCRIPTOR, 10);
+        assertEquals("HashMap.put()", frameTable.getName(frameId));
+        assertEquals(frameId, frameNameCache.getFrameId("java.util.HashMap", "put", PUT_DESCRIPTOR, 20));
+        assertEquals(1, frameNameCache.size());
+    }
+
+    public void testCacheIsClearedAtMaxSize() {
+        FrameTable frameTable = new FrameTable();
+        FrameNameCache frameNameCache = new FrameNameCache(frameTable, false, true, true, false, 2);
+        int first = frameNameCache.getFrameId("java.util.HashMap", "put", PUT_DESCRIPTOR, 1);
+        frameNameCache.getFrameId("java.util.HashMap", "put", PUT_DESCRIPTOR, 2);
+        assertEquals(2, frameNameCache.size());
+
+        frameNameCache.getFrameId("java.util.HashMap", "put", PUT_DESCRIPTOR, 3);
+        assertEquals(1, frameNameCache.size());
+        // The frame is formatted again and the frame table returns the same ID
+        assertEquals(first, frameNameCache.getFrameId("java.util.HashMap", "put", PUT_DESCRIPTOR, 1));
+        assertEquals(4, frameNameCache.getMisses());
+        assertEquals(2, frameNameCache.size());
+        assertEquals(3, frameTable.size());
+    }
+
+    public void testMethodsByIdentityCountTowardMaxSize() throws IOException {
+        Path jfrPath = Files.createTempFile("jfr_frame_names_", ".jfr");
+        try {
+            try (Recording recording = new Recording()) {
+                recording.enable("jdk.JavaExceptionThrow").withStackTrace();
+                recording.start();
+                try {
+                    throw new IllegalStateException("Exception");
+                } catch (IllegalStateException e) {
+                    // expected
+                }
+                recording.stop();
+                recording.dump(jfrPath);
+            }
+            FrameTable frameTable = new FrameTable();
+            FrameNameCache frameNameCache = new FrameNameCache(frameTable, true, true, true, false, 4);
+            int frames = 0;
+            for (RecordedEvent event : RecordingFile.readAllEvents(jfrPath)) {
+                for (RecordedFrame frame : event.getStackTrace().getFrames()) {
+                    int frameId = frameNameCache.getFrameId(frame);
+                    assertTrue(frameNameCache.size() <= 4);
+                    if (frameId >= 0) {
+                        assertEquals(frameId, frameNameCache.getFrameId(frame.getMethod().getType().getName(),
+                                frame.getMethod().getName(), frame.getMethod().getDescriptor(), 0));
+                    }
+                    frames++;
+                }
+            }
+            assertTrue(frames > 4);
+        } finally {
+            Files.delete(jfrPath);
+        }
+    }
+
+    public void testMaxSizeMustBePositive() {
+        try {
+            new FrameNameCache(new FrameTable(), false, false, false, false, 0);
+            fail("A cache without capacity was created");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Maximum size must be positive", e.getMessage());
+        }
+    }
+
+    private static FrameNameCache createCache(boolean useSimpleNames, boolean hideArguments,
+                                              boolean showReturnValue) {
+        return new FrameNameCache(new FrameTable(), true, useSimpleNames, hideArguments, showReturnValue);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.BufferedWriter;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Stack;
+
+/**
+ * Unit tests for the frame stack passed to output writers.
+ */
+public class FrameStackTest extends TestCase {
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(FrameStackTest.class);
+    }
+
+    private static FrameStack createStack(String... frames) {
+        FrameTable frameTable = new FrameTable();
+        FrameStack stack = new FrameStack(frameTable, 1);
+        for (String frame : frames) {
+            stack.push(frameTable.intern(frame));
+        }
+        return stack;
+    }
+
+    public void testFramesFromBottom() {
+        FrameStack stack = createStack("main", "run", "work");
+        assertEquals(3, stack.getDepth());
+        assertEquals("main", stack.getFrame(0));
+        assertEquals("work", stack.getFrame(2));
+        stack.clear();
+        assertEquals(0, stack.getDepth());
+    }
+
+    public void testToStackPopsFromBottom() {
+        Stack<String> stack = createStack("main", "run", "work").toStack();
+        assertEquals("main", stack.pop());
+        assertEquals("run", stack.pop());
+        assertEquals("work", stack.pop());
+        assertTrue(stack.empty());
+    }
+
+    public void testLegacyOutputWriter() {
+        final List<String> frames = new ArrayList<>();
+        FlameGraphOutputWriter legacyWriter = new StackOutputWriterAdapter() {
+            @Override
+            public void initialize(OutputWriterParameters parameters) {
+            }
+
+            @Override
+            public void processEvent(Instant startTimestamp, Instant endTimestamp, Duration duration,
+                                     Stack<String> stack, long value) {
+                while (!stack.empty()) {
+                    frames.add(stack.pop());
+                }
+            }
+
+            @Override
+            public void writeOutput(BufferedWriter bufferedWriter) {
+            }
+        };
+        Instant now = Instant.now();
+        legacyWriter.processEvent(now, now, Duration.ZERO, createStack("main", "run"), 1);
+        assertEquals(2, frames.size());
+        assertEquals("main", frames.get(0));
+        assertEquals("run", frames.get(1));
+    }
+}
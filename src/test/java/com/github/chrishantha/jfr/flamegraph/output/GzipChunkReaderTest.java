@@ -0,0 +1,192 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Unit tests for decompressing a gzip compressed JFR file one chunk at a time.
+ */
+public class GzipChunkReaderTest extends TestCase {
+
+    private Path directory;
+    private Path gzipPath;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("jfr_chunks_");
+        gzipPath = Files.createTempFile("recording_", ".jfr.gz");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        for (Path path : listChunkFiles()) {
+            Files.delete(path);
+        }
+        Files.delete(directory);
+        Files.delete(gzipPath);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(GzipChunkReaderTest.class);
+    }
+
+    public void testChunksAreSplit() throws Exception {
+        byte[] first = payload(ChunkHeaders.chunk(1000, 500, 32), 1);
+        byte[] second = payload(ChunkHeaders.chunk(1500, 500, 100), 2);
+        writeGzip(ChunkHeaders.concat(first, second));
+        try (GzipChunkReader reader = new GzipChunkReader(gzipPath, directory, 1, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            GzipChunkReader.Chunk chunk = reader.next();
+            assertChunk(chunk, 0, 0, first.length, 1000);
+            assertTrue(Arrays.equals(first, Files.readAllBytes(chunk.getPath())));
+            Files.delete(chunk.getPath());
+
+            chunk = reader.next();
+            assertChunk(chunk, 1, first.length, second.length, 1500);
+            assertTrue(Arrays.equals(second, Files.readAllBytes(chunk.getPath())));
+            Files.delete(chunk.getPath());
+
+            assertNull(reader.next());
+            assertNull(reader.next());
+        }
+    }
+
+    public void testChunkInProgressUsesRestOfFile() throws Exception {
+        byte[] first = ChunkHeaders.chunk(1000, 500, 32);
+        // The JVM writes the size when the chunk is finished
+        byte[] second = ChunkHeaders.chunk(1500, 0, 80, 1, 0);
+        writeGzip(ChunkHeaders.concat(first, second));
+        try (GzipChunkReader reader = new GzipChunkReader(gzipPath, directory, 2, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            Files.delete(reader.next().getPath());
+            GzipChunkReader.Chunk chunk = reader.next();
+            assertChunk(chunk, 1, first.length, second.length, 1500);
+            assertEquals(second.length, Files.size(chunk.getPath()));
+            Files.delete(chunk.getPath());
+            assertNull(reader.next());
+        }
+    }
+
+    public void testTruncatedChunk() throws Exception {
+        byte[] chunk = ChunkHeaders.chunk(1000, 500, 32);
+        writeGzip(Arrays.copyOf(chunk, chunk.length - 10));
+        try (GzipChunkReader reader = new GzipChunkReader(gzipPath, directory, 1, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            reader.next();
+            fail("The truncated chunk was read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Unexpected end of file in chunk 0"));
+        }
+        // The partial chunk file is deleted
+        assertEquals(0, listChunkFiles().size());
+    }
+
+    public void testNotJfrFile() throws Exception {
+        writeGzip(new byte[ChunkHeaders.HEADER_SIZE]);
+        try (GzipChunkReader reader = new GzipChunkReader(gzipPath, directory, 1, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            reader.next();
+            fail("A file without the chunk magic was read");
+        } catch (IOException e) {
+            assertTrue(e.getMessage(), e.getMessage().startsWith("Not a JFR chunk at offset 0"));
+        }
+    }
+
+    public void testChunksOutsideTimeRangeAreNotWritten() throws Exception {
+        byte[] first = ChunkHeaders.chunk(1000, 500, 32);
+        byte[] second = ChunkHeaders.chunk(1500, 500, 32);
+        byte[] third = ChunkHeaders.chunk(2000, 500, 32);
+        writeGzip(ChunkHeaders.concat(first, second, third));
+        try (GzipChunkReader reader = new GzipChunkReader(gzipPath, directory, 3, 1600, 1800)) {
+            GzipChunkReader.Chunk chunk = reader.next();
+            assertChunk(chunk, 0, 0, first.length, 1000);
+            assertNull(chunk.getPath());
+
+            chunk = reader.next();
+            assertChunk(chunk, 1, first.length, second.length, 1500);
+            assertNotNull(chunk.getPath());
+            Files.delete(chunk.getPath());
+
+            chunk = reader.next();
+            assertChunk(chunk, 2, first.length + second.length, third.length, 2000);
+            assertNull(chunk.getPath());
+            assertNull(reader.next());
+        }
+    }
+
+    public void testCloseDeletesChunksNotRead() throws Exception {
+        byte[] chunk = ChunkHeaders.chunk(1000, 500, 32);
+        writeGzip(ChunkHeaders.concat(chunk, chunk, chunk));
+        Path firstPath;
+        try (GzipChunkReader reader = new GzipChunkReader(gzipPath, directory, 3, Long.MIN_VALUE, Long.MAX_VALUE)) {
+            firstPath = reader.next().getPath();
+            // Wait for the other chunks to be written
+            long deadline = System.nanoTime() + 10_000_000_000L;
+            while (listChunkFiles().size() < 3 && System.nanoTime() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+        // The caller deletes the chunk returned by the reader
+        assertEquals(Arrays.asList(firstPath), listChunkFiles());
+    }
+
+    public void testIsGzip() throws Exception {
+        writeGzip(ChunkHeaders.chunk(1000, 500, 32));
+        assertTrue(GzipChunkReader.isGzip(gzipPath));
+        Files.write(gzipPath, ChunkHeaders.chunk(1000, 500, 32));
+        assertFalse(GzipChunkReader.isGzip(gzipPath));
+    }
+
+    private void assertChunk(GzipChunkReader.Chunk chunk, int index, long offset, long size, long startNanos) {
+        assertNotNull(chunk);
+        assertEquals(index, chunk.getChunk().getIndex());
+        assertEquals(offset, chunk.getChunk().getOffset());
+        assertEquals(size, chunk.getChunk().getSize());
+        assertEquals(startNanos, chunk.getChunk().getStartNanos());
+    }
+
+    /**
+     * Fill the payload of a chunk, so that the chunks of a file can be told apart.
+     */
+    private static byte[] payload(byte[] chunk, int value) {
+        Arrays.fill(chunk, ChunkHeaders.HEADER_SIZE, chunk.length, (byte) value);
+        return chunk;
+    }
+
+    private void writeGzip(byte[] bytes) throws IOException {
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(gzipPath))) {
+            out.write(bytes);
+        }
+    }
+
+    private List<Path> listChunkFiles() throws IOException {
+        try (Stream<Path> paths = Files.list(directory)) {
+            return paths.collect(Collectors.toList());
+        }
+    }
+}
@@ -0,0 +1,154 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Unit tests for splitting the events into time intervals.
+ */
+public class IntervalOutputWriterTest extends TestCase {
+
+    private static final long ORIGIN_SECONDS = 1000;
+
+    private static final long INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(10);
+
+    private FrameTable frameTable;
+    private FrameStack frameStack;
+    private File outputDirectory;
+
+    @Override
+    protected void setUp() throws Exception {
+        frameTable = new FrameTable();
+        frameStack = new FrameStack(frameTable);
+        outputDirectory = Files.createTempDirectory("intervals_").toFile();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        File[] files = outputDirectory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                Files.delete(file.toPath());
+            }
+        }
+        Files.delete(outputDirectory.toPath());
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(IntervalOutputWriterTest.class);
+    }
+
+    private IntervalOutputWriter createWriter(long endMillis) {
+        IntervalOutputWriter writer = new IntervalOutputWriter(OutputType.FOLDED, INTERVAL_NANOS,
+                TimeUnit.SECONDS.toNanos(ORIGIN_SECONDS), TimeUnit.MILLISECONDS.toNanos(endMillis), outputDirectory);
+        writer.initialize(new OutputWriterParameters());
+        return writer;
+    }
+
+    private void processEvent(FlameGraphOutputWriter writer, long startMillis, long endMillis, long value,
+                              String... frames) {
+        frameStack.clear();
+        for (String frame : frames) {
+            frameStack.push(frameTable.intern(frame));
+        }
+        Instant startTimestamp = Instant.ofEpochMilli(startMillis);
+        Instant endTimestamp = Instant.ofEpochMilli(endMillis);
+        writer.processEvent(startTimestamp, endTimestamp, Duration.between(startTimestamp, endTimestamp), frameStack,
+                value);
+    }
+
+    private String writeOutput(FlameGraphOutputWriter writer) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        try (BufferedWriter bufferedWriter = new BufferedWriter(stringWriter)) {
+            writer.writeOutput(bufferedWriter);
+        }
+        return stringWriter.toString().replace(System.lineSeparator(), "\n")
+                .replace(outputDirectory.getPath() + File.separator, "");
+    }
+
+    private String readInterval(String fileName) throws IOException {
+        return new String(Files.readAllBytes(new File(outputDirectory, fileName).toPath()), StandardCharsets.UTF_8)
+                .replace(System.lineSeparator(), "\n");
+    }
+
+    public void testEventsAreSplitIntoIntervals() throws IOException {
+        IntervalOutputWriter writer = createWriter(1025_000);
+        processEvent(writer, 1001_000, 1001_000, 1, "main", "run");
+        processEvent(writer, 1009_999, 1009_999, 2, "main", "run");
+        // The interval of an event is the interval of its start
+        processEvent(writer, 1010_000, 1012_000, 3, "main", "sleep");
+        processEvent(writer, 1024_000, 1024_500, 4, "main", "run");
+        assertEquals("1000 1010 flamegraph-1000-1010.folded\n"
+                        + "1010 1020 flamegraph-1010-1020.folded\n"
+                        + "1020 1025 flamegraph-1020-1025.folded\n",
+                writeOutput(writer));
+        assertEquals("main;run 3\n", readInterval("flamegraph-1000-1010.folded"));
+        assertEquals("main;sleep 3\n", readInterval("flamegraph-1010-1020.folded"));
+        assertEquals("main;run 4\n", readInterval("flamegraph-1020-1025.folded"));
+    }
+
+    public void testIntervalsWithoutEventsAreNotWritten() throws IOException {
+        IntervalOutputWriter writer = createWriter(1040_000);
+        processEvent(writer, 1001_000, 1001_000, 1, "main");
+        processEvent(writer, 1035_000, 1035_000, 1, "main");
+        assertEquals("1000 1010 flamegraph-1000-1010.folded\n"
+                + "1030 1040 flamegraph-1030-1040.folded\n", writeOutput(writer));
+        assertEquals(2, outputDirectory.list().length);
+    }
+
+    public void testEndIsRoundedUpToSeconds() throws IOException {
+        IntervalOutputWriter writer = createWriter(1024_300);
+        processEvent(writer, 1021_000, 1021_000, 1, "main");
+        assertEquals("1020 1025 flamegraph-1020-1025.folded\n", writeOutput(writer));
+    }
+
+    public void testEndIsExtendedByLaterEvents() throws IOException {
+        IntervalOutputWriter writer = createWriter(1015_000);
+        processEvent(writer, 1012_000, 1017_500, 1, "main");
+        assertEquals("1010 1018 flamegraph-1010-1018.folded\n", writeOutput(writer));
+    }
+
+    public void testEventsBeforeOrigin() throws IOException {
+        IntervalOutputWriter writer = createWriter(1010_000);
+        processEvent(writer, 999_500, 999_500, 1, "main");
+        assertEquals("990 1000 flamegraph-990-1000.folded\n", writeOutput(writer));
+    }
+
+    public void testIntervalMustBePositive() {
+        try {
+            new IntervalOutputWriter(OutputType.FOLDED, 0, 0, 0, outputDirectory);
+            fail("A writer without an interval was created");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Interval must be positive", e.getMessage());
+        }
+    }
+}
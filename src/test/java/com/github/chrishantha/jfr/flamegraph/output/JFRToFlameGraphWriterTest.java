@@ -0,0 +1,112 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.Recording;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.stream.Stream;
+
+/**
+ * Unit tests for converting a JFR file with several chunks.
+ */
+public class JFRToFlameGraphWriterTest extends TestCase {
+
+    private static final int CHUNK_COUNT = 3;
+
+    private Path directory;
+    private Path jfrPath;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("jfr_flame_graph_writer_");
+        jfrPath = directory.resolve("chunks.jfr");
+        // A JFR file with the chunks of several recordings one after the other
+        Path chunkPath = directory.resolve("chunk.jfr");
+        for (int i = 0; i < CHUNK_COUNT; i++) {
+            try (Recording recording = new Recording()) {
+                recording.enable("jdk.JavaExceptionThrow").withStackTrace();
+                recording.start();
+                throwExceptions(10 * (i + 1));
+                recording.stop();
+                recording.dump(chunkPath);
+            }
+            Files.write(jfrPath, Files.readAllBytes(chunkPath), StandardOpenOption.CREATE, StandardOpenOption.APPEND);
+        }
+        Files.delete(chunkPath);
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                Files.delete(file);
+            }
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(JFRToFlameGraphWriterTest.class);
+    }
+
+    private static void throwExceptions(int count) {
+        for (int i = 0; i < count; i++) {
+            try {
+                throw new IllegalStateException("Exception " + i);
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    private String convert(OutputType outputType, int threads) throws Exception {
+        File outputFile = directory.resolve(outputType + "-" + threads + ".out").toFile();
+        JFRToFlameGraphWriter jfrToFlameGraphWriter = new JFRToFlameGraphWriter(new OutputWriterParameters());
+        jfrToFlameGraphWriter.jfrdumps = Collections.singletonList(jfrPath.toString());
+        jfrToFlameGraphWriter.eventTypes = Collections.singletonList(EventType.JAVA_EXCEPTION);
+        jfrToFlameGraphWriter.outputType = outputType;
+        jfrToFlameGraphWriter.outputFile = outputFile;
+        jfrToFlameGraphWriter.threads = threads;
+        jfrToFlameGraphWriter.process();
+        return new String(Files.readAllBytes(outputFile.toPath()), StandardCharsets.UTF_8);
+    }
+
+    public void testParallelFoldedOutputIsSequentialOutput() throws Exception {
+        assertEquals(CHUNK_COUNT, JFRChunk.readChunks(jfrPath).size());
+        String sequential = convert(OutputType.FOLDED, 1);
+        assertTrue(sequential.contains("JFRToFlameGraphWriterTest.throwExceptions"));
+        assertEquals(sequential, convert(OutputType.FOLDED, CHUNK_COUNT));
+    }
+
+    public void testParallelJsonOutputIsSequentialOutput() throws Exception {
+        String sequential = convert(OutputType.JSON, 1);
+        assertTrue(sequential.contains("JFRToFlameGraphWriterTest.throwExceptions"));
+        assertEquals(sequential, convert(OutputType.JSON, CHUNK_COUNT));
+    }
+}
@@ -0,0 +1,74 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+import java.io.StringWriter;
+
+/**
+ * Unit tests for the JSON output.
+ */
+public class JsonOutputWriterTest extends OutputWriterTestCase {
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(JsonOutputWriterTest.class);
+    }
+
+    public void testNestedFrames() throws IOException {
+        JsonOutputWriter writer = new JsonOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        processEvent(writer, 1, "main", "run");
+        processEvent(writer, 2, "main", "<init>");
+        assertEquals("{\"name\":\"root\",\"value\":0,\"children\":[{\"name\":\"main\",\"value\":3,\"children\":["
+                + "{\"name\":\"run\",\"value\":1},{\"name\":\"\\u003cinit\\u003e\",\"value\":2}]}]}", writeOutput(writer));
+    }
+
+    public void testValuesAreSummed() throws IOException {
+        // The value of a frame is the sum of the values of the events, such as the allocated bytes, not the count
+        JsonOutputWriter writer = new JsonOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        processEvent(writer, 4096, "main", "alloc");
+        processEvent(writer, 1024, "main", "alloc");
+        processEvent(writer, 512, "main");
+        assertEquals("{\"name\":\"root\",\"value\":0,\"children\":[{\"name\":\"main\",\"value\":5632,"
+                + "\"children\":[{\"name\":\"alloc\",\"value\":5120}]}]}", writeOutput(writer));
+    }
+
+    public void testEscapeString() throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        JsonOutputWriter.writeString(stringWriter, "a\"b\\c\nd\u0001");
+        assertEquals("\"a\\\"b\\\\c\\nd\\u0001\"", stringWriter.toString());
+    }
+
+    public void testDeepStack() throws IOException {
+        JsonOutputWriter writer = new JsonOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        String[] frames = new String[100000];
+        for (int i = 0; i < frames.length; i++) {
+            frames[i] = "f" + i;
+        }
+        processEvent(writer, 1, frames);
+        String output = writeOutput(writer);
+        assertTrue(output.endsWith("{\"name\":\"f99999\",\"value\":1}" + new String(new char[99999]).replace("\0", "]}")
+                + "]}"));
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.TestCase;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.time.Duration;
+import java.time.Instant;
+
+/**
+ * The base of the output writer tests. The stacks of the events are given as frame names from the bottom of the stack.
+ */
+abstract class OutputWriterTestCase extends TestCase {
+
+    protected FrameTable frameTable;
+    private FrameStack frameStack;
+
+    @Override
+    protected void setUp() throws Exception {
+        frameTable = new FrameTable();
+        frameStack = new FrameStack(frameTable);
+    }
+
+    /**
+     * Pass an event to the writer.
+     *
+     * @param value  The value of the event
+     * @param frames The frame names from the bottom of the stack to the top
+     */
+    protected void processEvent(FlameGraphOutputWriter writer, long value, String... frames) {
+        frameStack.clear();
+        for (String frame : frames) {
+            frameStack.push(frameTable.intern(frame));
+        }
+        Instant now = Instant.now();
+        writer.processEvent(now, now, Duration.ZERO, frameStack, value);
+    }
+
+    /**
+     * @return The output of the writer with "\n" line separators
+     */
+    protected static String writeOutput(FlameGraphOutputWriter writer) throws IOException {
+        StringWriter stringWriter = new StringWriter();
+        try (BufferedWriter bufferedWriter = new BufferedWriter(stringWriter)) {
+            writer.writeOutput(bufferedWriter);
+        }
+        return stringWriter.toString().replace(System.lineSeparator(), "\n");
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.PrintStream;
+
+/**
+ * Unit tests for the estimates of the preview mode.
+ */
+public class PreviewEstimateTest extends OutputWriterTestCase {
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(PreviewEstimateTest.class);
+    }
+
+    public void testEstimate() {
+        // The ratio of the values to the sizes is 2, and the chunks differ by one from the ratio
+        double[] estimate = PreviewEstimate.estimate(new long[]{1, 3}, new long[]{1, 1}, 4, 4);
+        assertEquals(8.0, estimate[0], 1e-9);
+        assertEquals(1.96 * Math.sqrt(8), estimate[1], 1e-9);
+    }
+
+    public void testEstimateWithoutVariance() {
+        double[] estimate = PreviewEstimate.estimate(new long[]{2, 4}, new long[]{1, 2}, 4, 6);
+        assertEquals(12.0, estimate[0], 1e-9);
+        assertEquals(0.0, estimate[1], 1e-9);
+    }
+
+    public void testEstimateOfAllChunks() {
+        double[] estimate = PreviewEstimate.estimate(new long[]{1, 3}, new long[]{1, 1}, 2, 2);
+        assertEquals(4.0, estimate[0], 1e-9);
+        assertEquals(0.0, estimate[1], 1e-9);
+    }
+
+    public void testEstimateOfOneChunk() {
+        double[] estimate = PreviewEstimate.estimate(new long[]{3}, new long[]{1}, 3, 3);
+        assertEquals(9.0, estimate[0], 1e-9);
+        assertTrue(Double.isNaN(estimate[1]));
+    }
+
+    public void testScaledOutput() throws IOException {
+        // Two of three chunks of the same size are sampled
+        PreviewEstimate previewEstimate = new PreviewEstimate(frameTable, 3, 30, new long[]{10, 10});
+        FlameGraphOutputWriter writer = OutputType.FOLDED.createFlameGraphOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        FlameGraphOutputWriter chunkWriter = previewEstimate.createChunkWriter(0, writer);
+        processEvent(chunkWriter, 1, "main", "run");
+        processEvent(chunkWriter, 1, "main", "run");
+        processEvent(previewEstimate.createChunkWriter(1, writer), 2, "main", "sleep");
+        // The rounding errors of the scaled values are carried over, so that the total is 6
+        assertEquals("main;run 3\nmain;sleep 3\n", writeOutput(writer));
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        previewEstimate.print(new PrintStream(out, true), "cpu", 1);
+        String[] lines = out.toString().split("\\R");
+        assertEquals(4, lines.length);
+        assertTrue(lines[0].startsWith("Preview of cpu from 2 of 3 chunks"));
+        assertTrue(lines[2].trim().startsWith("6 "));
+        assertTrue(lines[2].endsWith("Total"));
+        assertTrue(lines[3].endsWith("run"));
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordingFile;
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.util.Collections;
+
+/**
+ * Unit tests for writing and reading the profile cache of a recording.
+ */
+public class ProfileCacheTest extends TestCase {
+
+    private static final int EXCEPTION_COUNT = 50;
+
+    private Path directory;
+    private Path jfrPath;
+
+    @Override
+    protected void setUp() throws Exception {
+        directory = Files.createTempDirectory("jfr_profile_cache_");
+        jfrPath = directory.resolve("exceptions.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("jdk.JavaExceptionThrow").withStackTrace();
+            recording.start();
+            throwExceptions();
+            recording.stop();
+            recording.dump(jfrPath);
+        }
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Files.deleteIfExists(ProfileCache.getCachePath(jfrPath));
+        Files.deleteIfExists(jfrPath);
+        Files.deleteIfExists(directory);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ProfileCacheTest.class);
+    }
+
+    private static void throwExceptions() {
+        for (int i = 0; i < EXCEPTION_COUNT; i++) {
+            try {
+                throw new IllegalStateException("Exception " + i);
+            } catch (IllegalStateException e) {
+                // expected
+            }
+        }
+    }
+
+    private void writeCache() throws IOException {
+        try (ProfileCacheWriter profileCacheWriter = new ProfileCacheWriter(jfrPath)) {
+            try (RecordingFile recording = new RecordingFile(jfrPath)) {
+                profileCacheWriter.addRecording(recording);
+            }
+            profileCacheWriter.addTimeRange(1000, 2000);
+            profileCacheWriter.write();
+        }
+    }
+
+    /**
+     * Replace a long in the header of the cache.
+     */
+    private void putHeaderLong(int offset, long value) throws IOException {
+        try (FileChannel channel = FileChannel.open(ProfileCache.getCachePath(jfrPath), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Long.BYTES);
+            buffer.putLong(0, value);
+            channel.write(buffer, offset);
+        }
+    }
+
+    public void testRoundTrip() throws IOException {
+        writeCache();
+        ProfileCache profileCache = ProfileCache.open(jfrPath);
+        assertNotNull(profileCache);
+        assertEquals(1000, profileCache.getStartNanos());
+        assertEquals(2000, profileCache.getEndNanos());
+        assertTrue(profileCache.getEventCount() >= EXCEPTION_COUNT);
+        assertEquals(1, profileCache.getEventTypeCount());
+        assertEquals("jdk.JavaExceptionThrow", profileCache.getEventTypeName(0));
+
+        FrameNameCache frameNameCache = new FrameNameCache(new FrameTable(), true, true, true, false);
+        FlameGraphOutputWriter writer = OutputType.FOLDED.createFlameGraphOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        ProfileQuery profileQuery = new ProfileQuery(profileCache,
+                Collections.singletonList(EventType.JAVA_EXCEPTION));
+        profileQuery.run(frameNameCache, new FlameGraphOutputWriter[]{writer});
+        assertEquals(profileCache.getEventCount(), profileQuery.getConsumedCounts()[0]);
+
+        StringWriter stringWriter = new StringWriter();
+        try (BufferedWriter bufferedWriter = new BufferedWriter(stringWriter)) {
+            writer.writeOutput(bufferedWriter);
+        }
+        long thrown = 0;
+        for (String line : stringWriter.toString().split("\\R")) {
+            if (line.contains("ProfileCacheTest.throwExceptions()")) {
+                thrown += Long.parseLong(line.substring(line.lastIndexOf(' ') + 1));
+            }
+        }
+        assertEquals(EXCEPTION_COUNT, thrown);
+    }
+
+    public void testTimeRangeOfQuery() throws IOException {
+        writeCache();
+        ProfileCache profileCache = ProfileCache.open(jfrPath);
+        assertNotNull(profileCache);
+        ProfileQuery profileQuery = new ProfileQuery(profileCache,
+                Collections.singletonList(EventType.JAVA_EXCEPTION));
+        // No events before the epoch
+        profileQuery.setTimeRange(Long.MIN_VALUE, 0);
+        profileQuery.run(new FrameNameCache(new FrameTable(), false, false, false, false),
+                new FlameGraphOutputWriter[]{OutputType.FOLDED.createFlameGraphOutputWriter()});
+        assertEquals(0, profileQuery.getConsumedCounts()[0]);
+    }
+
+    public void testQueryWithEventIndex() throws IOException {
+        writeCache();
+        ProfileCache profileCache = ProfileCache.open(jfrPath);
+        assertNotNull(profileCache);
+        profileCache.createEventIndex();
+        assertTrue(profileCache.hasEventIndex());
+        ProfileQuery profileQuery = new ProfileQuery(profileCache,
+                Collections.singletonList(EventType.JAVA_EXCEPTION));
+        profileQuery.run(new FrameNameCache(new FrameTable(), false, false, false, false),
+                new FlameGraphOutputWriter[]{OutputType.FOLDED.createFlameGraphOutputWriter()});
+        assertEquals(profileCache.getEventCount(), profileQuery.getConsumedCounts()[0]);
+
+        // The blocks of events before the epoch are not read
+        profileQuery = new ProfileQuery(profileCache, Collections.singletonList(EventType.JAVA_EXCEPTION));
+        profileQuery.setTimeRange(Long.MIN_VALUE, 0);
+        profileQuery.run(new FrameNameCache(new FrameTable(), false, false, false, false),
+                new FlameGraphOutputWriter[]{OutputType.FOLDED.createFlameGraphOutputWriter()});
+        assertEquals(0, profileQuery.getReadCounts()[0]);
+
+        // The events of other event types are not read
+        profileQuery = new ProfileQuery(profileCache, Collections.singletonList(EventType.METHOD_PROFILING_SAMPLE));
+        profileQuery.run(new FrameNameCache(new FrameTable(), false, false, false, false),
+                new FlameGraphOutputWriter[]{OutputType.FOLDED.createFlameGraphOutputWriter()});
+        assertEquals(0, profileQuery.getReadCounts()[0]);
+    }
+
+    public void testStaleCacheIsNotUsed() throws IOException {
+        writeCache();
+        FileTime lastModified = Files.getLastModifiedTime(jfrPath);
+        Files.setLastModifiedTime(jfrPath, FileTime.fromMillis(lastModified.toMillis() + 10000));
+        assertNull(ProfileCache.open(jfrPath));
+
+        Files.setLastModifiedTime(jfrPath, lastModified);
+        assertNotNull(ProfileCache.open(jfrPath));
+
+        // Another chunk makes the recording larger
+        Files.write(jfrPath, new byte[1], StandardOpenOption.APPEND);
+        Files.setLastModifiedTime(jfrPath, lastModified);
+        assertNull(ProfileCache.open(jfrPath));
+    }
+
+    public void testWrongVersionIsNotUsed() throws IOException {
+        writeCache();
+        try (FileChannel channel = FileChannel.open(ProfileCache.getCachePath(jfrPath), StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
+            buffer.putInt(0, ProfileCache.VERSION + 1);
+            channel.write(buffer, Integer.BYTES);
+        }
+        assertNull(ProfileCache.open(jfrPath));
+    }
+
+    public void testMissingCache() throws IOException {
+        assertNull(ProfileCache.open(jfrPath));
+    }
+
+    public void testTruncatedEventsAreNotUsed() throws IOException {
+        writeCache();
+        Path cachePath = ProfileCache.getCachePath(jfrPath);
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.WRITE)) {
+            channel.truncate(channel.size() - 1);
+        }
+        assertNull(ProfileCache.open(jfrPath));
+    }
+
+    public void testTruncatedTablesAreNotUsed() throws IOException {
+        writeCache();
+        // Cut the file in the tables, and make the header match the size of the file
+        Path cachePath = ProfileCache.getCachePath(jfrPath);
+        long tablesSize = 16;
+        try (FileChannel channel = FileChannel.open(cachePath, StandardOpenOption.WRITE)) {
+            channel.truncate(ProfileCache.HEADER_SIZE + tablesSize);
+        }
+        putHeaderLong(40, tablesSize);
+        putHeaderLong(48, 0);
+        assertNull(ProfileCache.open(jfrPath));
+    }
+}
@@ -0,0 +1,96 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for pruning the output.
+ */
+public class StackTreePrunerTest extends OutputWriterTestCase {
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(StackTreePrunerTest.class);
+    }
+
+    private String writeOutput(OutputType outputType, OutputWriterParameters parameters) throws IOException {
+        FlameGraphOutputWriter writer = outputType.createFlameGraphOutputWriter();
+        writer.initialize(parameters);
+        processEvent(writer, 60, "main", "run", "work");
+        processEvent(writer, 20, "main", "run", "parse");
+        processEvent(writer, 10, "main", "run", "parse", "read");
+        processEvent(writer, 6, "main", "sleep");
+        processEvent(writer, 4, "main");
+        return writeOutput(writer);
+    }
+
+    public void testNoPruning() throws IOException {
+        assertEquals("main 4\nmain;run;work 60\nmain;run;parse 20\nmain;run;parse;read 10\nmain;sleep 6\n",
+                writeOutput(OutputType.FOLDED, new OutputWriterParameters()));
+    }
+
+    public void testMinPercent() throws IOException {
+        OutputWriterParameters parameters = new OutputWriterParameters();
+        parameters.minPercent = 15;
+        assertEquals("main 4\nmain;[other] 6\nmain;run;work 60\nmain;run;parse 20\nmain;run;parse;[other] 10\n",
+                writeOutput(OutputType.FOLDED, parameters));
+    }
+
+    public void testMaxDepth() throws IOException {
+        OutputWriterParameters parameters = new OutputWriterParameters();
+        parameters.maxDepth = 2;
+        assertEquals("main 4\nmain;run;[other] 90\nmain;sleep 6\n", writeOutput(OutputType.FOLDED, parameters));
+    }
+
+    public void testTopPaths() throws IOException {
+        OutputWriterParameters parameters = new OutputWriterParameters();
+        parameters.topPaths = 2;
+        // The own value of main is not in the top stack traces
+        assertEquals("main;[other] 10\nmain;run;work 60\nmain;run;parse 20\nmain;run;parse;[other] 10\n",
+                writeOutput(OutputType.FOLDED, parameters));
+    }
+
+    public void testTopPathsOfRecursiveStacks() throws IOException {
+        OutputWriterParameters parameters = new OutputWriterParameters();
+        parameters.topPaths = 1;
+        FlameGraphOutputWriter writer = OutputType.FOLDED.createFlameGraphOutputWriter();
+        writer.initialize(parameters);
+        processEvent(writer, 1, "fib");
+        processEvent(writer, 2, "fib", "fib");
+        processEvent(writer, 3, "fib", "fib", "fib");
+        processEvent(writer, 4, "fib", "fib", "fib", "fib");
+        assertEquals("fib;[other] 1\nfib;fib;[other] 2\nfib;fib;fib;[other] 3\nfib;fib;fib;fib 4\n",
+                writeOutput(writer));
+    }
+
+    public void testJsonOutput() throws IOException {
+        OutputWriterParameters parameters = new OutputWriterParameters();
+        parameters.maxDepth = 2;
+        parameters.minPercent = 10;
+        assertEquals("{\"name\":\"root\",\"value\":0,\"children\":["
+                        + "{\"name\":\"main\",\"value\":100,\"children\":["
+                        + "{\"name\":\"run\",\"value\":90,\"children\":["
+                        + "{\"name\":\"[other]\",\"value\":90}]},"
+                        + "{\"name\":\"[other]\",\"value\":6}]}]}",
+                writeOutput(OutputType.JSON, parameters));
+    }
+}
@@ -0,0 +1,116 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.Stream;
+
+/**
+ * Unit tests for the stack tree and the node stores.
+ */
+public class StackTreeTest extends TestCase {
+
+    private FrameTable frameTable;
+    private FrameStack frameStack;
+    private Path directory;
+
+    @Override
+    protected void setUp() throws Exception {
+        frameTable = new FrameTable();
+        frameStack = new FrameStack(frameTable);
+        directory = Files.createTempDirectory("stack_tree_test");
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        try (Stream<Path> files = Files.list(directory)) {
+            files.map(Path::toFile).forEach(File::delete);
+        }
+        Files.delete(directory);
+    }
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(StackTreeTest.class);
+    }
+
+    private void addStack(StackTree stackTree, long value, String... frames) {
+        frameStack.clear();
+        for (String frame : frames) {
+            frameStack.push(frameTable.intern(frame));
+        }
+        stackTree.addStack(frameStack, value);
+    }
+
+    private static String toText(StackTree stackTree) throws IOException {
+        StringBuilder builder = new StringBuilder();
+        stackTree.walk(new StackTree.NodeVisitor() {
+            @Override
+            public void enter(int node, int depth) {
+                builder.append(depth == 0 ? "root" : stackTree.getFrameName(node)).append(' ')
+                        .append(stackTree.getValue(node)).append(' ').append(stackTree.getTotal(node)).append('(');
+            }
+
+            @Override
+            public void exit(int node, int depth) {
+                builder.append(')');
+            }
+        });
+        return builder.toString();
+    }
+
+    private void addStacks(StackTree stackTree) {
+        for (int i = 0; i < 1000; i++) {
+            addStack(stackTree, i, "main", "run" + (i % 10), "work" + (i % 7));
+        }
+        addStack(stackTree, 5, "main");
+    }
+
+    public void testMappedStore() throws IOException {
+        StackTree heapTree = new StackTree(2);
+        StackTree mappedTree = new StackTree(new MappedStackNodeStore(directory));
+        addStacks(heapTree);
+        addStacks(mappedTree);
+        assertEquals(heapTree.getNodeCount(), mappedTree.getNodeCount());
+        assertEquals(heapTree.getTotalValue(), mappedTree.getTotalValue());
+        assertEquals(toText(heapTree), toText(mappedTree));
+        try (Stream<Path> files = Files.list(directory)) {
+            assertEquals("Mapped files are deleted", 0, files.count());
+        }
+    }
+
+    public void testSharedStore() throws IOException {
+        StackNodeStore store = new MappedStackNodeStore(directory);
+        StackTree first = new StackTree(store);
+        StackTree second = new StackTree(store);
+        addStack(first, 1, "main", "run");
+        addStack(second, 2, "main", "sleep");
+        addStack(first, 3, "main", "run");
+        assertEquals("root 0 0(main 0 4(run 4 4()))", toText(first));
+        assertEquals("root 0 0(main 0 2(sleep 2 2()))", toText(second));
+        assertEquals(3, first.getNodeCount());
+        assertEquals(6, store.getNodeCount());
+    }
+}
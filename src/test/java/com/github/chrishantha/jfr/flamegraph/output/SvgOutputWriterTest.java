@@ -0,0 +1,79 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestSuite;
+
+import java.io.IOException;
+
+/**
+ * Unit tests for the SVG output.
+ */
+public class SvgOutputWriterTest extends OutputWriterTestCase {
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(SvgOutputWriterTest.class);
+    }
+
+    private static int countFrames(String svg) {
+        return svg.split("<g>", -1).length - 1;
+    }
+
+    public void testFramesAreLaidOut() throws IOException {
+        SvgOutputWriter writer = new SvgOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        processEvent(writer, 3, "main", "run");
+        processEvent(writer, 1, "main", "sleep");
+        String svg = writeOutput(writer);
+        assertEquals(4, countFrames(svg));
+        assertTrue(svg.contains("<title>all (4, 100.00%)</title>"));
+        assertTrue(svg.contains("<title>run (3, 75.00%)</title><rect x=\"10\" y=\"36\" width=\"885\""));
+        assertTrue(svg.contains("<title>sleep (1, 25.00%)</title><rect x=\"895\" y=\"36\" width=\"295\""));
+        assertTrue(svg.endsWith("</svg>\n"));
+    }
+
+    public void testNarrowFramesArePruned() throws IOException {
+        SvgOutputWriter writer = new SvgOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        processEvent(writer, 100000, "main", "run");
+        processEvent(writer, 1, "main", "rare", "deep");
+        String svg = writeOutput(writer);
+        assertEquals(3, countFrames(svg));
+        assertFalse(svg.contains("rare"));
+        // The image height is for the depth of the frames written
+        assertTrue(svg.contains("height=\"118\""));
+    }
+
+    public void testNamesAreEscaped() throws IOException {
+        SvgOutputWriter writer = new SvgOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        processEvent(writer, 1, "java.util.List<E>.add(\"a\" & b)");
+        String svg = writeOutput(writer);
+        assertTrue(svg.contains("java.util.List&lt;E&gt;.add(&quot;a&quot; &amp; b)"));
+    }
+
+    public void testEmptyOutput() throws IOException {
+        SvgOutputWriter writer = new SvgOutputWriter();
+        writer.initialize(new OutputWriterParameters());
+        String svg = writeOutput(writer);
+        assertEquals(1, countFrames(svg));
+        assertTrue(svg.contains("<title>all (0, 0.00%)</title>"));
+    }
+}
@@ -0,0 +1,63 @@
+/*
+ * Copyright 2015 M. Isuru Tharanga Chrishantha Perera
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.github.chrishantha.jfr.flamegraph.output;
+
+import junit.framework.Test;
+import junit.framework.TestCase;
+import junit.framework.TestSuite;
+
+/**
+ * Unit tests for the thread filter.
+ */
+public class ThreadFilterTest extends TestCase {
+
+    /**
+     * @return the suite of tests being tested
+     */
+    public static Test suite() {
+        return new TestSuite(ThreadFilterTest.class);
+    }
+
+    public void testEmptyFilter() {
+        ThreadFilter threadFilter = new ThreadFilter(null, null);
+        assertTrue(threadFilter.isEmpty());
+        assertTrue(threadFilter.matches("main", "main"));
+        assertTrue(threadFilter.matches(null, null));
+    }
+
+    public void testThreadName() {
+        ThreadFilter threadFilter = new ThreadFilter("nioEventLoopGroup-\\d+-\\d+", null);
+        assertFalse(threadFilter.isEmpty());
+        assertTrue(threadFilter.matches("nioEventLoopGroup-2-1", "main"));
+        // The whole name must match
+        assertFalse(threadFilter.matches("nioEventLoopGroup-2-1-worker", "main"));
+        assertFalse(threadFilter.matches(null, null));
+    }
+
+    public void testThreadGroup() {
+        ThreadFilter threadFilter = new ThreadFilter(null, "main");
+        assertTrue(threadFilter.matches("ForkJoinPool.commonPool-worker-1", "main"));
+        assertFalse(threadFilter.matches("Reference Handler", "system"));
+        assertFalse(threadFilter.matches("Reference Handler", null));
+    }
+
+    public void testThreadNameAndGroup() {
+        ThreadFilter threadFilter = new ThreadFilter("ForkJoinPool.*", "main");
+        assertTrue(threadFilter.matches("ForkJoinPool.commonPool-worker-1", "main"));
+        assertFalse(threadFilter.matches("ForkJoinPool.commonPool-worker-1", "system"));
+        assertFalse(threadFilter.matches("main", "main"));
+    }
+}